@@ -48,4 +48,36 @@ public abstract class Axiom extends DomainElement
    *          the label for that branch.
   */
   public abstract String getLabel(int which);
+
+  /** To get the heads of the atoms the preconditions of this axiom refer to,
+   *  so that what it proves can be remembered until one of them changes. See
+   *  {@link State#setAxiomTablingEnabled(boolean)}.
+   *
+   *  @return
+   *          the heads, or <code>null</code> if they are not known, in which
+   *          case this axiom is taken to depend on all the atoms. This default
+   *          implementation returns <code>null</code>.
+  */
+  public int[] getDependencies()
+  {
+    return null;
+  }
+
+  /** To get the heads of the atoms whose addition to the state can make this
+   *  axiom prove fewer atoms: those under a negation, in a
+   *  <code>ForAll</code> logical expression or in a branch marked
+   *  <code>:first</code>, and those in every branch but the last, since each
+   *  branch is only tried when the ones before it fail. What a recursive
+   *  axiom proves through them is not tabled. See
+   *  {@link State#setAxiomTablingEnabled(boolean)}.
+   *
+   *  @return
+   *          the heads, or <code>null</code> if they are not known, in which
+   *          case all the heads this axiom depends on are taken to be among
+   *          them. This default implementation returns <code>null</code>.
+  */
+  public int[] getNegativeDependencies()
+  {
+    return null;
+  }
 }
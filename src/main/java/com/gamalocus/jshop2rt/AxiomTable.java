@@ -0,0 +1,488 @@
+package com.gamalocus.jshop2rt;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+/** This class remembers what the axioms of a domain prove in a state of the
+ *  world, so that an atom that is proven over and over again while the state
+ *  does not change is only proven once (i.e., the axioms are tabled). See
+ *  {@link State#setAxiomTablingEnabled(boolean)}.
+ *
+ *  <p>
+ *  For each head proven by axioms, the table maps the atoms that have been
+ *  asked for (with their variables, so that <code>(at ?x b)</code> and
+ *  <code>(at a b)</code> are different questions) to the instances of the
+ *  heads of the axioms that unify with them, in the order the axioms prove
+ *  them, without the duplicates. The atoms in the state of the world itself
+ *  are not tabled, since they are already indexed.
+ *
+ *  <p>
+ *  When an atom with a given head is added to or deleted from the state, the
+ *  tables of the heads whose axioms depend on it, as given by
+ *  {@link Axiom#getDependencies()}, are thrown away.
+ *
+ *  <p>
+ *  An atom that is asked for again while it is being proven (i.e., through a
+ *  recursive axiom) gets the instances found so far, along with those found
+ *  while it is being used. The outermost atom of such a cycle is then proven
+ *  again, along with all the atoms that were proven with what was known so far
+ *  about it, until no new instances are found. This way, recursive axioms such
+ *  as reachability in a graph with cycles are proven in finite time, and each
+ *  atom is proven only a few times however many ways it can be reached.
+ *
+ *  <p>
+ *  The instances of an atom are only ever added to, so an instance proven
+ *  through a negation or a later branch of an axiom while the atoms it
+ *  depends on were only partly proven would be kept even if it would not be
+ *  proven once they are. That is why the heads that depend on themselves
+ *  through such atoms, as given by {@link Axiom#getNegativeDependencies()},
+ *  are not tabled, and neither are the other heads in their cycles: their
+ *  atoms are proven by the axioms each time they are asked for, just as when
+ *  tabling is off.
+ */
+class AxiomTable
+{
+  /** What is known about an atom that has been asked for.
+  */
+  private static class Entry
+  {
+    /** The atom.
+    */
+    final Predicate p;
+
+    /** The instances of the heads of the axioms that unify with the atom. It
+     *  only grows, even while the atom is being proven.
+    */
+    final ArrayList<Term> answers = new ArrayList<Term>();
+
+    /** The instances in <code>answers</code>, to leave the duplicates out.
+    */
+    final HashSet<Term> known = new HashSet<Term>();
+
+    /** Where the atom is in the stack of the atoms being proven, or -1 if it
+     *  is not being proven right now.
+    */
+    int depth;
+
+    /** The smallest depth of an atom being proven whose instances were used
+     *  to prove this one, while they were not complete.
+    */
+    int low;
+
+    /** Whether or not the atom was asked for again while it was being proven
+     *  this time around.
+    */
+    boolean used;
+
+    /** Whether or not the atom has been proven, along with all the atoms it
+     *  was proven with.
+    */
+    boolean complete;
+
+    Entry(Predicate pIn)
+    {
+      p = pIn;
+      depth = -1;
+    }
+  }
+
+  /** For each head, the heads of the atoms proven by axioms whose tables
+   *  must be thrown away when an atom with this head is added or deleted.
+  */
+  private final int[][] dependents;
+
+  /** The heads of the atoms proven by axioms that depend on every head, since
+   *  they refer to atoms whose heads are not known until run time.
+  */
+  private final int[] dependOnAll;
+
+  /** The heads proven by axioms that are tabled.
+  */
+  private final BitSet tabled;
+
+  /** For each head proven by axioms, how many times its table has been
+   *  thrown away.
+  */
+  private final int[] epoch;
+
+  /** For each head proven by axioms, the value of <code>epoch</code> when its
+   *  table was made.
+  */
+  private final int[] tableEpoch;
+
+  /** For each head proven by axioms, the table of the atoms that have been
+   *  asked for, or <code>null</code> if none has.
+  */
+  private final Map<Predicate, Entry>[] tables;
+
+  /** The atoms being proven, the innermost last.
+  */
+  private final ArrayList<Entry> proving = new ArrayList<Entry>();
+
+  /** The atoms that have been proven with what was known so far about an
+   *  atom that is still being proven, so that they are proven again along
+   *  with it until nothing new is found.
+  */
+  private final ArrayList<Entry> incomplete = new ArrayList<Entry>();
+
+  /** The number of instances found so far, to tell when proving the atoms
+   *  again finds nothing new.
+  */
+  private int found = 0;
+
+  /** To make an empty table for the axioms of a domain.
+   *
+   *  @param axioms
+   *          the axioms, indexed first by the head of the atoms they prove.
+  */
+  AxiomTable(Axiom[][] axioms)
+  {
+    epoch = new int[axioms.length];
+    tableEpoch = new int[axioms.length];
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    final Map<Predicate, Entry>[] t = new Map[axioms.length];
+    tables = t;
+
+    //-- The heads some of whose axioms do not tell what they depend on are
+    //-- taken to depend on all the heads.
+    final BitSet[] dependsOn = dependencies(axioms);
+    final BitSet all = new BitSet();
+    for (int h = 0; h < axioms.length; h++)
+    {
+      if (axioms[h] != null && axioms[h].length > 0 && dependsOn[h] == null)
+      {
+        all.set(h);
+        dependsOn[h] = new BitSet();
+        dependsOn[h].set(0, axioms.length);
+      }
+    }
+
+    //-- Turn that around, so that the heads to be thrown away can be found
+    //-- right away when an atom is added or deleted.
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    final ArrayList<Integer>[] lists = new ArrayList[axioms.length];
+    for (int h = 0; h < axioms.length; h++)
+    {
+      if (dependsOn[h] == null)
+        continue;
+      for (int x = dependsOn[h].nextSetBit(0); x >= 0 && x < axioms.length; x = dependsOn[h].nextSetBit(x + 1))
+      {
+        if (lists[x] == null)
+          lists[x] = new ArrayList<Integer>();
+        lists[x].add(h);
+      }
+    }
+    dependents = new int[axioms.length][];
+    for (int x = 0; x < axioms.length; x++)
+      dependents[x] = toArray(lists[x]);
+
+    final ArrayList<Integer> allList = new ArrayList<Integer>();
+    for (int h = all.nextSetBit(0); h >= 0; h = all.nextSetBit(h + 1))
+      allList.add(h);
+    dependOnAll = toArray(allList);
+
+    tabled = tabled(axioms, dependsOn);
+  }
+
+  /** To find the heads proven by axioms that can be tabled, i.e., those that
+   *  do not depend on themselves through an atom whose addition to the state
+   *  can make one of the axioms in the cycle prove fewer atoms.
+   *
+   *  @param axioms
+   *          the axioms, indexed first by the head of the atoms they prove.
+   *  @param dependsOn
+   *          for each head proven by axioms, the heads it depends on, directly
+   *          or through other axioms.
+   *  @return
+   *          the heads that can be tabled.
+  */
+  private static BitSet tabled(Axiom[][] axioms, BitSet[] dependsOn)
+  {
+    final BitSet retVal = new BitSet();
+    for (int h = 0; h < axioms.length; h++)
+    {
+      if (dependsOn[h] == null)
+        continue;
+
+      //-- The heads in the same cycle as this one.
+      final BitSet cycle = new BitSet();
+      for (int g = dependsOn[h].nextSetBit(0); g >= 0 && g < axioms.length; g = dependsOn[h].nextSetBit(g + 1))
+      {
+        if (dependsOn[g] != null && dependsOn[g].get(h))
+          cycle.set(g);
+      }
+
+      boolean monotone = true;
+      for (int g = cycle.nextSetBit(0); g >= 0 && monotone; g = cycle.nextSetBit(g + 1))
+      {
+        for (Axiom ax : axioms[g])
+        {
+          final int[] neg = ax.getNegativeDependencies();
+          if (neg == null)
+          {
+            monotone = false;
+            break;
+          }
+          for (int x : neg)
+            monotone &= !cycle.get(x);
+        }
+      }
+
+      if (monotone)
+        retVal.set(h);
+    }
+    return retVal;
+  }
+
+  /** To tell whether or not the atoms with a given head are tabled.
+   *
+   *  @param head
+   *          the head.
+   *  @return
+   *          <code>true</code> if the head is proven by axioms and can be
+   *          tabled, <code>false</code> otherwise, in which case the atoms
+   *          with this head are proven by the axioms each time they are asked
+   *          for.
+  */
+  boolean isTabled(int head)
+  {
+    return tabled.get(head);
+  }
+
+  /** To find, for each head proven by axioms, the heads of all the atoms its
+   *  axioms refer to, directly or through other axioms.
+   *
+   *  @param axioms
+   *          the axioms, indexed first by the head of the atoms they prove.
+   *  @return
+   *          the heads, indexed by the head proven by the axioms.
+   *          <code>null</code> for the heads not proven by any axiom, and for
+   *          those some of whose axioms do not tell what they depend on.
+  */
+  static BitSet[] dependencies(Axiom[][] axioms)
+  {
+    final BitSet[] dependsOn = new BitSet[axioms.length];
+    for (int h = 0; h < axioms.length; h++)
+    {
+      if (axioms[h] == null || axioms[h].length == 0)
+        continue;
+
+      BitSet deps = new BitSet();
+      final ArrayList<Integer> todo = new ArrayList<Integer>();
+      todo.add(h);
+      final BitSet visited = new BitSet();
+      visited.set(h);
+      while (!todo.isEmpty() && deps != null)
+      {
+        final int g = todo.remove(todo.size() - 1);
+        for (Axiom ax : axioms[g])
+        {
+          final int[] d = ax.getDependencies();
+          if (d == null)
+          {
+            deps = null;
+            break;
+          }
+          for (int x : d)
+          {
+            deps.set(x);
+            if (x < axioms.length && axioms[x] != null && axioms[x].length > 0 && !visited.get(x))
+            {
+              visited.set(x);
+              todo.add(x);
+            }
+          }
+        }
+      }
+      dependsOn[h] = deps;
+    }
+    return dependsOn;
+  }
+
+  /** To turn a list of integers into an array, an empty one if the list is
+   *  <code>null</code>.
+  */
+  static int[] toArray(ArrayList<Integer> list)
+  {
+    if (list == null)
+      return new int[0];
+    final int[] a = new int[list.size()];
+    for (int i = 0; i < a.length; i++)
+      a[i] = list.get(i);
+    return a;
+  }
+
+  /** To throw away the tables that depend on the atoms with a given head,
+   *  because one of them has been added to or deleted from the state.
+  */
+  void changed(int head)
+  {
+    for (int h : (head >= 0 && head < dependents.length) ? dependents[head] : dependOnAll)
+      epoch[h]++;
+  }
+
+  /** To throw away all the tables, because the state has been emptied.
+  */
+  void clear()
+  {
+    for (int h = 0; h < epoch.length; h++)
+      epoch[h]++;
+  }
+
+  /** To get the instances of the heads of the axioms that unify with a given
+   *  atom, proving it first if needed.
+   *
+   *  @param state
+   *          the state of the world the atom is proven in.
+   *  @param p
+   *          the atom.
+   *  @return
+   *          the instances, in the order the axioms prove them. If the atom is
+   *          being proven, the list may still grow while it is being used.
+  */
+  ArrayList<Term> answers(State state, Predicate p)
+  {
+    final int head = p.getHead();
+    Map<Predicate, Entry> table = tables[head];
+    if (table == null)
+    {
+      table = tables[head] = new HashMap<Predicate, Entry>();
+      tableEpoch[head] = epoch[head];
+    }
+    else if (tableEpoch[head] != epoch[head])
+    {
+      table.clear();
+      tableEpoch[head] = epoch[head];
+    }
+
+    Entry entry = table.get(p);
+    if (entry != null)
+    {
+      //-- If the atom has not been proven yet, whatever uses what is known
+      //-- about it so far is not complete until it is.
+      if (!entry.complete)
+      {
+        final Entry top = proving.get(proving.size() - 1);
+        if (entry.depth >= 0)
+        {
+          entry.used = true;
+          top.low = Math.min(top.low, entry.depth);
+        }
+        else
+          top.low = Math.min(top.low, entry.low);
+      }
+      return entry.answers;
+    }
+
+    entry = new Entry(p);
+    table.put(p, entry);
+    final int depth = proving.size();
+    final int mark = incomplete.size();
+
+    boolean done = false;
+    try
+    {
+      prove(state, entry);
+
+      //-- If the atom was used while it was being proven, prove it again
+      //-- along with all the atoms that used it, until no new instances are
+      //-- found.
+      if (entry.low == depth && (entry.used || incomplete.size() > mark))
+      {
+        int before;
+        do
+        {
+          before = found;
+          prove(state, entry);
+          for (int i = mark; i < incomplete.size(); i++)
+          {
+            final Entry e = incomplete.get(i);
+            prove(state, e);
+            entry.low = Math.min(entry.low, e.low);
+          }
+        }
+        while (found != before && entry.low == depth);
+      }
+      done = true;
+    }
+    finally
+    {
+      if (!done)
+      {
+        //-- Nothing proven along with the atom can be trusted.
+        for (int i = mark; i < incomplete.size(); i++)
+          forget(incomplete.get(i));
+        forget(entry);
+        truncate(mark);
+      }
+      else if (entry.low < depth)
+      {
+        //-- The atom was proven with what was known so far about an atom
+        //-- further out, so it is proven again along with that one, as are
+        //-- the atoms proven along with it.
+        for (int i = mark; i < incomplete.size(); i++)
+          incomplete.get(i).low = entry.low;
+        incomplete.add(entry);
+        final Entry top = proving.get(proving.size() - 1);
+        top.low = Math.min(top.low, entry.low);
+      }
+      else
+      {
+        for (int i = mark; i < incomplete.size(); i++)
+          incomplete.get(i).complete = true;
+        entry.complete = true;
+        truncate(mark);
+      }
+    }
+
+    return entry.answers;
+  }
+
+  /** To prove an atom once, with what is known so far about the atoms being
+   *  proven, adding the instances that are not known yet.
+  */
+  private void prove(State state, Entry entry)
+  {
+    entry.depth = entry.low = proving.size();
+    entry.used = false;
+    proving.add(entry);
+    try
+    {
+      final State.MyIterator it = state.axiomIterator(entry.p);
+      Term t;
+      while ((t = it.nextAxiomInstance(entry.p)) != null)
+      {
+        if (entry.known.add(t))
+        {
+          entry.answers.add(t);
+          found++;
+        }
+      }
+    }
+    finally
+    {
+      proving.remove(proving.size() - 1);
+      entry.depth = -1;
+    }
+  }
+
+  /** To take an atom that has not been proven out of its table.
+  */
+  private void forget(Entry entry)
+  {
+    final Map<Predicate, Entry> table = tables[entry.p.getHead()];
+    if (table.get(entry.p) == entry)
+      table.remove(entry.p);
+  }
+
+  /** To drop the atoms proven along with an atom that has been proven.
+  */
+  private void truncate(int size)
+  {
+    while (incomplete.size() > size)
+      incomplete.remove(incomplete.size() - 1);
+  }
+}
@@ -0,0 +1,112 @@
+package com.gamalocus.jshop2rt;
+
+/** A binding that is being built by unification, which can be reused for
+ *  one candidate after another. Every variable symbol that is bound is
+ *  recorded on a trail, so that when a unification fails halfway through,
+ *  only the variable symbols it bound need to be unbound again. This way,
+ *  trying candidates that do not unify allocates nothing: a new array is made
+ *  only when a binding is actually taken out of the frame.
+ *
+ *  See {@link Predicate#findUnifier(Term, BindingFrame)}.
+*/
+public class BindingFrame
+{
+  /** The terms the variable symbols are bound to, indexed by the integers
+   *  associated with the variable symbols.
+  */
+  private final Term[] values;
+
+  /** The indices of the variable symbols bound so far, in the order they
+   *  were bound.
+  */
+  private final int[] trail;
+
+  /** The number of variable symbols bound so far.
+  */
+  private int top;
+
+  /** To initialize an empty frame.
+   *
+   *  @param size
+   *          the number of variable symbols.
+  */
+  public BindingFrame(int size)
+  {
+    values = new Term[size];
+    trail = new int[size];
+  }
+
+  /** To bind a variable symbol that is not bound yet.
+   *
+   *  @param var
+   *          the index of the variable symbol.
+   *  @param t
+   *          the term to bind it to.
+  */
+  public void bind(int var, Term t)
+  {
+    values[var] = t;
+    trail[top++] = var;
+  }
+
+  /** To get what a variable symbol is bound to.
+   *
+   *  @param var
+   *          the index of the variable symbol.
+   *  @return
+   *          the term it is bound to, or <code>null</code> if it is not bound.
+  */
+  public Term get(int var)
+  {
+    return values[var];
+  }
+
+  /** To get the terms the variable symbols are bound to. The array is owned
+   *  by this frame.
+  */
+  Term[] values()
+  {
+    return values;
+  }
+
+  /** To get the number of variable symbols this frame can hold.
+  */
+  public int size()
+  {
+    return values.length;
+  }
+
+  /** To remember how far the trail goes right now.
+   *
+   *  @return
+   *          the mark to be passed to <code>undo</code>.
+  */
+  public int mark()
+  {
+    return top;
+  }
+
+  /** To unbind the variable symbols bound since a given mark.
+   *
+   *  @param mark
+   *          the mark returned by <code>mark</code>.
+  */
+  public void undo(int mark)
+  {
+    while (top > mark)
+      values[trail[--top]] = null;
+  }
+
+  /** To take the binding out of this frame, which is left empty.
+   *
+   *  @return
+   *          a new array with the binding, indexed by the integers associated
+   *          with the variable symbols.
+  */
+  public Term[] take()
+  {
+    final Term[] retVal = values.clone();
+    undo(0);
+    return retVal;
+  }
+}
@@ -0,0 +1,325 @@
+package com.gamalocus.jshop2rt;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import com.gamalocus.jshop2rt.Predicate.Namespace;
+
+/** This class keeps track of the atoms added to and deleted from the current
+ *  state of the world while logging is enabled, so that the state can be
+ *  reset to what it was before, and so that the modifications can be
+ *  reported. See {@link State#setJournalMode(Mode)}.
+ */
+public abstract class ChangeJournal implements Serializable
+{
+  private static final long serialVersionUID = -2519713950843187214L;
+
+  /** The kinds of journal there are.
+   */
+  public enum Mode
+  {
+    /** Nothing is recorded, so logging costs nothing, but the state can not
+     *  be reset.
+     */
+    NONE,
+
+    /** The changes are recorded in an array, with no information about where
+     *  they were made from.
+     */
+    COMPACT,
+
+    /** The net changes are recorded along with where in the code each of
+     *  them was made from. This is expensive, since a stack trace must be
+     *  captured for each change.
+     */
+    DEBUG;
+  }
+
+  /** To create an empty journal of a given kind.
+   */
+  public static ChangeJournal create(Mode mode)
+  {
+    switch (mode)
+    {
+      case NONE:
+        return new NoJournal();
+      case COMPACT:
+        return new CompactJournal();
+      case DEBUG:
+        return new DebugJournal();
+      default:
+        throw new IllegalArgumentException(String.valueOf(mode));
+    }
+  }
+
+  /** @return the kind of this journal.
+   */
+  public abstract Mode getMode();
+
+  /** To record that an atom was added to the state.
+   */
+  public abstract void added(Predicate p);
+
+  /** To record that an atom was deleted from the state.
+   */
+  public abstract void removed(Predicate p);
+
+  /** To undo all the recorded changes on the given state, and empty the
+   *  journal. Logging must be disabled on the state while doing this.
+   */
+  public abstract void reset(State state);
+
+  /** @return the net changes recorded, one per line, as "+" or "-" followed
+   *          by the atom, sorted by atom.
+   */
+  public abstract ArrayList<String> getModifications(Domain domain);
+
+  /** To sort the modifications by atom, ignoring whether they are additions
+   *  or deletions.
+   */
+  protected static ArrayList<String> sort(ArrayList<String> mods)
+  {
+    Collections.sort(mods, new Comparator<String>() {
+      public int compare(String o1, String o2)
+      {
+        return o1.substring(1).compareTo(o2.substring(1));
+      }
+    });
+    return mods;
+  }
+
+  /** The journal that records nothing.
+   */
+  static class NoJournal extends ChangeJournal
+  {
+    private static final long serialVersionUID = 2086392786474185338L;
+
+    @Override
+    public Mode getMode()
+    {
+      return Mode.NONE;
+    }
+
+    @Override
+    public void added(Predicate p)
+    {
+    }
+
+    @Override
+    public void removed(Predicate p)
+    {
+    }
+
+    @Override
+    public void reset(State state)
+    {
+    }
+
+    @Override
+    public ArrayList<String> getModifications(Domain domain)
+    {
+      return new ArrayList<String>();
+    }
+  }
+
+  /** The journal that records the changes in an array that is reused once it
+   *  has been reset. Since changes during planning are undone in the reverse
+   *  order they were made, a change that undoes the last change recorded just
+   *  takes it off the end of the array, so the array never holds much more
+   *  than the changes along the current branch of the search.
+   */
+  static class CompactJournal extends ChangeJournal
+  {
+    private static final long serialVersionUID = 4309175585637416217L;
+
+    /** The atoms added or deleted, in the order of the changes.
+     */
+    private Predicate[] atoms = new Predicate[64];
+
+    /** For each change, whether the atom was added (as opposed to deleted).
+     */
+    private boolean[] adds = new boolean[64];
+
+    /** The number of changes recorded.
+     */
+    private int size;
+
+    @Override
+    public Mode getMode()
+    {
+      return Mode.COMPACT;
+    }
+
+    @Override
+    public void added(Predicate p)
+    {
+      record(p, true);
+    }
+
+    @Override
+    public void removed(Predicate p)
+    {
+      record(p, false);
+    }
+
+    private void record(Predicate p, boolean add)
+    {
+      //-- If this change undoes the last one, just forget about both.
+      if (size > 0 && adds[size - 1] != add &&
+          (atoms[size - 1] == p || atoms[size - 1].equals(p)))
+      {
+        atoms[--size] = null;
+        return;
+      }
+
+      if (size == atoms.length)
+      {
+        Predicate[] newAtoms = new Predicate[size * 2];
+        boolean[] newAdds = new boolean[size * 2];
+        System.arraycopy(atoms, 0, newAtoms, 0, size);
+        System.arraycopy(adds, 0, newAdds, 0, size);
+        atoms = newAtoms;
+        adds = newAdds;
+      }
+
+      atoms[size] = p;
+      adds[size++] = add;
+    }
+
+    @Override
+    public void reset(State state)
+    {
+      //-- Undo the changes in the reverse order they were made.
+      while (size > 0)
+      {
+        size--;
+        if (adds[size])
+          state.del(atoms[size]);
+        else
+          state.add(atoms[size]);
+        atoms[size] = null;
+      }
+    }
+
+    @Override
+    public ArrayList<String> getModifications(Domain domain)
+    {
+      //-- Find the net change for each atom.
+      Map<Predicate, Boolean> net = new LinkedHashMap<Predicate, Boolean>();
+      for (int i = 0; i < size; i++)
+      {
+        if (net.remove(atoms[i]) == null)
+          net.put(atoms[i], adds[i]);
+      }
+
+      ArrayList<String> mods = new ArrayList<String>();
+      for (Entry<Predicate, Boolean> e : net.entrySet())
+      {
+        mods.add((e.getValue() ? "+" : "-") + e.getKey().toString(domain, Namespace.LOGICAL_PREDICATE));
+      }
+      return sort(mods);
+    }
+  }
+
+  /** The journal that records the net change for each atom, along with where
+   *  it was made from.
+   */
+  static class DebugJournal extends ChangeJournal
+  {
+    private static final long serialVersionUID = 5640563186281376931L;
+
+    /** Log of elements added during planning.
+     */
+    private final Map<Predicate, String> addedAtoms = new HashMap<Predicate, String>();
+
+    /** Log of elements removed during planning.
+     */
+    private final Map<Predicate, String> removedAtoms = new HashMap<Predicate, String>();
+
+    @Override
+    public Mode getMode()
+    {
+      return Mode.DEBUG;
+    }
+
+    @Override
+    public void added(Predicate p)
+    {
+      if (removedAtoms.remove(p) == null)
+      {
+        addedAtoms.put(p, getCallLocation(State.class));
+      }
+    }
+
+    @Override
+    public void removed(Predicate p)
+    {
+      if (addedAtoms.remove(p) == null)
+      {
+        removedAtoms.put(p, getCallLocation(State.class));
+      }
+    }
+
+    @Override
+    public void reset(State state)
+    {
+      for (Predicate p : addedAtoms.keySet())
+      {
+        state.del(p);
+      }
+      addedAtoms.clear();
+
+      for (Predicate p : removedAtoms.keySet())
+      {
+        state.add(p);
+      }
+      removedAtoms.clear();
+    }
+
+    @Override
+    public ArrayList<String> getModifications(Domain domain)
+    {
+      ArrayList<String> mods = new ArrayList<String>();
+      for (Entry<Predicate, String> e : addedAtoms.entrySet())
+      {
+        mods.add("+" + e.getKey().toString(domain, Namespace.LOGICAL_PREDICATE) + " at " + e.getValue());
+      }
+      for (Entry<Predicate, String> e : removedAtoms.entrySet())
+      {
+        mods.add("-" + e.getKey().toString(domain, Namespace.LOGICAL_PREDICATE) + " at " + e.getValue());
+      }
+      return sort(mods);
+    }
+
+    /**
+     * Get description of location of first caller outside of the given border class.
+     */
+    private static String getCallLocation(Class<?> border)
+    {
+      StackTraceElement stack[] = new Throwable().getStackTrace();
+      final String borderName = border.getName();
+
+      // Forward the pointer until we find the border.
+      int i;
+      for (i = 0; i < stack.length &&
+        !stack[i].getClassName().equals(borderName); ++i) {}
+
+      // Forward the pointer past the border.
+      for (; i < stack.length &&
+        stack[i].getClassName().equals(borderName); ++i) {}
+
+      return i == stack.length ? "unknown position" :
+        String.format("%s.%s(%s:%d)",
+            stack[i].getClassName(),
+            stack[i].getMethodName(),
+            stack[i].getFileName(),
+            stack[i].getLineNumber());
+    }
+  }
+}
@@ -0,0 +1,24 @@
+package com.gamalocus.jshop2rt;
+
+import java.io.Serializable;
+
+/**
+ * Estimates the cost of the cheapest plan that can still be found from a
+ * given point in the search, for the branch-and-bound mode of the planner.
+ * See {@link JSHOP2#setBranchAndBound(boolean, CostLowerBound)}.
+ *
+ * The estimate must be admissible: it must never be more than the cost of
+ * any plan that extends the current one. Otherwise, the cheapest plan may be
+ * pruned.
+ */
+public interface CostLowerBound extends Serializable
+{
+	/**
+	 * @param planCost The cost of the plan so far. Must not be modified.
+	 * @param tasks The task network still to be achieved. Must not be modified.
+	 * @param state The current state of the world. Must not be modified.
+	 * @return A lower bound on the cost of any complete plan that extends the
+	 * plan so far. May be <code>planCost</code> itself.
+	 */
+	Cost getLowerBound(Cost planCost, TaskList tasks, State state);
+}
@@ -57,11 +57,11 @@ public class DelAddAtomic extends DelAddElement
     if (s.isProtected(p))
       return false;
 
-    //-- To store the index of the deleted atom.
-    int index;
+    //-- To store the deleted atom and where it was deleted from.
+    NumberedPredicate deleted;
 
     //-- Try to delete the atom from the current state of the world.
-    if ((index = s.del(p)) != -1)
+    if ((deleted = s.delUndoable(p)) != null)
       //-- If the atom was really deleted from the current state of the world
       //-- (i.e., it was there before), add it to the list of deleted atoms
       //-- so that in case of a backtrack it can be added back. Also keep track
@@ -72,7 +72,7 @@ public class DelAddAtomic extends DelAddElement
       //-- the data structures should look exactly as they were before the
       //-- backtracked decision (to apply the operator this atomic delete/add
       //-- element is associated with) was made.
-      delAddList[0].add(new NumberedPredicate(p, index));
+      delAddList[0].add(deleted);
 
     return true;
   }
@@ -91,4 +91,11 @@ public class DelAddAtomic extends DelAddElement
   {
     return "new DelAddAtomic(" + atom.toCode(label) + ")";
   }
+
+  /** To make this atomic delete/add element for a given domain.
+  */
+  DelAddElement toRuntime(InterpretedDomain owner)
+  {
+    return new DelAddAtomic(owner.predicate(atom));
+  }
 }
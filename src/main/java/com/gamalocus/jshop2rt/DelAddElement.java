@@ -64,4 +64,15 @@ public abstract class DelAddElement extends CompileTimeObject implements Seriali
    *          the number of variables.
   */
   public abstract void setVarCount(int varCount);
+
+  /** To make the delete/add element that represents this one at run time,
+   *  the same as the one the code produced by <code>toCode</code> makes,
+   *  without producing any code. See {@link InterpretedDomain}.
+   *
+   *  @param owner
+   *          the domain the delete/add element is made for.
+   *  @return
+   *          the delete/add element.
+  */
+  abstract DelAddElement toRuntime(InterpretedDomain owner);
 }
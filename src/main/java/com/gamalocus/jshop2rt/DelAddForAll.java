@@ -149,11 +149,11 @@ public class DelAddForAll extends DelAddElement
         if (s.isProtected(p))
           return false;
 
-        //-- To store the index of the deleted atom.
-        int index;
+        //-- To store the deleted atom and where it was deleted from.
+        NumberedPredicate deleted;
 
         //-- Try to delete the atom from the current state of the world.
-        if ((index = s.del(p)) != -1)
+        if ((deleted = s.delUndoable(p)) != null)
           //-- If the atom was really deleted from the current state of the
           //-- world (i.e., it was there before), add it to the list of deleted
           //-- atoms so that in case of a backtrack it can be added back. Also
@@ -164,7 +164,7 @@ public class DelAddForAll extends DelAddElement
           //-- backtrack happens, the data structures should look exactly as
           //-- they were before the backtracked decision (to apply the operator
           //-- this ForAll delete/add element is associated with) was made.
-          delAddList[0].add(new NumberedPredicate(p, index));
+          delAddList[0].add(deleted);
       }
     }
 
@@ -247,4 +247,17 @@ public class DelAddForAll extends DelAddElement
   {
     return "new DelAddForAll(" + exp.toCode(label) + ", atoms" + cnt + ")";
   }
+
+  /** To make this <code>ForAll</code> delete/add element for a given domain,
+   *  with its precondition made for an empty binding, as the code produced by
+   *  <code>getInitCode</code> does.
+  */
+  DelAddElement toRuntime(InterpretedDomain owner)
+  {
+    Predicate[] atomsOut = new Predicate[atoms.length];
+    for (int i = 0; i < atoms.length; i++)
+      atomsOut[i] = owner.predicate(atoms[i]);
+
+    return new DelAddForAll(exp.toPrecondition(owner, new Term[exp.getVarCount()]), atomsOut);
+  }
 }
@@ -77,4 +77,12 @@ public class DelAddProtection extends DelAddElement
   {
     return "new DelAddProtection(" + atom.toCode(label) + ")";
   }
+
+  /** To make this <code>Protection</code> delete/add element for a given
+   *  domain.
+  */
+  DelAddElement toRuntime(InterpretedDomain owner)
+  {
+    return new DelAddProtection(owner.predicate(atom));
+  }
 }
@@ -92,11 +92,26 @@ public abstract class Domain implements Serializable
    */
   private TermVariable[] termVariables;
 
+  /** The factory that interns the ground terms of this domain, so that
+   *  there is only one copy of each of them at run time.
+   */
+  private final TermFactory termFactory = new TermFactory();
+
   /**
    * Counter for unique constant ids.
    */
   private int maxTermConstantIndex = 0;
 
+  /** To return the factory that interns the ground terms of this domain.
+   *
+   *  @return
+   *          the factory.
+   */
+  public TermFactory getTermFactory()
+  {
+    return termFactory;
+  }
+
   /** To return the correponding existing variable symbol.
    *
    *  @param index
@@ -59,6 +59,47 @@ public abstract class DomainElement implements Serializable
   */
   public abstract Precondition getIterator(State state, Term[] binding, int which);
 
+  /** This function does the same thing as
+   *  {@link #getIterator(State, Term[], int)}, except that it uses the
+   *  iterator kept in a given pool for the given depth, if there is one that
+   *  can be used with the given binding, instead of making a new one. If a
+   *  new one has to be made, it is kept in the pool for next time.
+   *
+   *  @param binding
+   *          current binding.
+   *  @param which
+   *          which precondition to use (ignored if this element is an
+   *          operator, since operators have only one precondition).
+   *  @param pool
+   *          the pool of iterators of the planner.
+   *  @param depth
+   *          the depth of the stack frame that is going to use the iterator.
+   *          The iterator previously returned for this depth must no longer
+   *          be in use.
+   *  @return
+   *          an object of type Precondition which can be used later on to get
+   *          the bindings one by one.
+  */
+  public Precondition getIterator(State state, Term[] binding, int which,
+                                  PreconditionPool pool, int depth)
+  {
+    Precondition p = pool.get(depth, this, which);
+
+    //-- If there is an iterator that can be used again, reset it and return it.
+    if (p != null && p.setUnifier(binding))
+    {
+      p.reset(state);
+      return p;
+    }
+
+    //-- Otherwise, make a new one, and keep it for next time.
+    p = getIterator(state, binding, which);
+    if (p != null)
+      pool.put(depth, this, which, p);
+
+    return p;
+  }
+
   /** This function returns the substitution that unifies the head of this
    *  element with a given predicate.
    *
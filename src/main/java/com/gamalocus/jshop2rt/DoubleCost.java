@@ -5,7 +5,7 @@ package com.gamalocus.jshop2rt;
  * 
  * @author j0rg3n
  */
-public class DoubleCost implements Cost
+public class DoubleCost implements NumericCost
 {
 	private double value;
 	
@@ -29,6 +29,21 @@ public class DoubleCost implements Cost
 		value -= ((TermNumber)t).getNumber();
 	}
 
+	public void add(double amount)
+	{
+		value += amount;
+	}
+
+	public void remove(double amount)
+	{
+		value -= amount;
+	}
+
+	public double getValue()
+	{
+		return value;
+	}
+
 	public int compareTo(Cost o)
 	{
 		return Double.compare(value, ((DoubleCost)o).value);
@@ -1,5 +1,6 @@
 package com.gamalocus.jshop2rt;
 
+import java.util.BitSet;
 import java.util.Vector;
 
 /** Each axiom at compile time is represented as an instance of this class.
@@ -54,6 +55,15 @@ public class InternalAxiom extends InternalElement
       pre.setVarCount(getHead().getVarCount());
   }
 
+  /** To reorder the conjuncts in the preconditions, given that the variables
+   *  in the head are bound.
+  */
+  public void reorderConjuncts(BitSet axiomHeads)
+  {
+    for (LogicalPrecondition pre : branches)
+      pre.reorderConjuncts(getHeadVars(), axiomHeads);
+  }
+
   /** This function produces the Java code needed to implement this axiom.
   */
   public String toCode(String label)
@@ -93,6 +103,9 @@ public class InternalAxiom extends InternalElement
     //-- Close the function definition
     s += "\t\t}" + endl;
 
+    //-- The function that unifies the head of this axiom with a task or an atom.
+    s += getUnifyCode();
+
     //-- The function that returns an iterator that can be used to find all the
     //-- bindings that satisfy a given precondition of this axiom and return
     //-- them one-by-one.
@@ -127,6 +140,18 @@ public class InternalAxiom extends InternalElement
     //-- Reset the precondition and return it.
     s += endl + "\t\t\tp.reset(state);" + endl + endl + "\t\t\treturn p;" + endl;
 
+    //-- The function that returns the heads of the atoms the branches of this
+    //-- axiom refer to, if they are all known.
+    s += "\t\t}" + endl + endl + "\t\t@Override" + endl;
+    s += "\t\tpublic int[] getDependencies()" + endl + "\t\t{" + endl;
+    s += "\t\t\treturn " + toCode(getDependencies()) + ";" + endl;
+
+    //-- The function that returns the heads of the atoms that can make this
+    //-- axiom prove fewer atoms, if they are all known.
+    s += "\t\t}" + endl + endl + "\t\t@Override" + endl;
+    s += "\t\tpublic int[] getNegativeDependencies()" + endl + "\t\t{" + endl;
+    s += "\t\t\treturn " + toCode(getNegativeDependencies()) + ";" + endl;
+
     //-- This function returns the label of a given branch of this axiom.
     s += "\t\t}" + endl + endl + "\t\tpublic String getLabel(int which)" + endl;
 
@@ -145,4 +170,87 @@ public class InternalAxiom extends InternalElement
     //-- resulting string.
     return s + "\t\t}" + endl + "\t}" + endl + endl;
   }
+
+  /** This function makes the axiom this object represents at run time, the
+   *  same as the class produced by <code>toCode</code>, without producing any
+   *  code. See {@link InterpretedDomain}.
+  */
+  Axiom toAxiom(InterpretedDomain owner, String label)
+  {
+    return new InterpretedAxiom(owner, owner.predicate(getHead()),
+        branches.toArray(new LogicalPrecondition[branches.size()]),
+        labels.toArray(new String[labels.size()]), getDependencies(),
+        getNegativeDependencies(),
+        label + " " + getSourcePosForToString());
+  }
+
+  /** This function finds the heads of the atoms the branches of this axiom
+   *  refer to.
+   *
+   *  @return
+   *          the heads in increasing order, or <code>null</code> if some of
+   *          them are not known until run time.
+  */
+  private int[] getDependencies()
+  {
+    BitSet heads = new BitSet();
+    for (LogicalPrecondition pre : branches)
+    {
+      if (!pre.addHeads(heads))
+        return null;
+    }
+    return toArray(heads);
+  }
+
+  /** This function finds the heads of the atoms whose addition to the state
+   *  can make this axiom prove fewer atoms.
+   *
+   *  @return
+   *          the heads in increasing order, or <code>null</code> if some of
+   *          them are not known until run time.
+  */
+  private int[] getNegativeDependencies()
+  {
+    BitSet heads = new BitSet();
+    for (int i = 0; i < branches.size(); i++)
+    {
+      LogicalPrecondition pre = branches.get(i);
+
+      //-- The more atoms satisfy a branch, the less often the branches after
+      //-- it are tried.
+      boolean known = (i < branches.size() - 1) ? pre.addHeads(heads) : pre.addNegativeHeads(heads);
+      if (!known)
+        return null;
+    }
+    return toArray(heads);
+  }
+
+  /** This function turns a set of heads into an array.
+  */
+  private static int[] toArray(BitSet heads)
+  {
+    int[] retVal = new int[heads.cardinality()];
+    int i = 0;
+    for (int h = heads.nextSetBit(0); h >= 0; h = heads.nextSetBit(h + 1))
+      retVal[i++] = h;
+    return retVal;
+  }
+
+  /** This function produces the Java code for an array of heads.
+   *
+   *  @param heads
+   *          the heads, or <code>null</code>.
+   *  @return
+   *          the code for the array, or <code>null</code> if there is none.
+  */
+  private static String toCode(int[] heads)
+  {
+    if (heads == null)
+      return "null";
+
+    String s = "new int[] {";
+    for (int i = 0; i < heads.length; i++)
+      s += ((i == 0) ? "" : ", ") + heads[i];
+    return s + "}";
+  }
 }
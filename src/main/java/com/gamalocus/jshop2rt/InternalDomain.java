@@ -13,6 +13,7 @@ import java.io.InputStream;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.LinkedList;
@@ -112,6 +113,21 @@ public class InternalDomain
    */
   private final StringBuffer out = new StringBuffer();
 
+  /** Whether or not the conjuncts in the preconditions should be reordered so
+   *  that the cheaper ones are evaluated first.
+  */
+  private boolean reorderConjuncts = false;
+
+  /** Whether or not the Java code for the domain should be produced when it
+   *  has been parsed.
+  */
+  private boolean generateCode = true;
+
+  /** The maximum number of variables seen in any variable scope in the
+   *  domain, known once it has been parsed.
+  */
+  private int varsMaxSize;
+
   /** To initialize this domain.
    *
    *  @param fin
@@ -309,13 +325,34 @@ public class InternalDomain
   /** This function writes the Java code necessary to produce this domain at
    *  run time in the appropriate file.
    *
-   *  @param varsMaxSize
+   *  @param varsMaxSizeIn
    *          the maximum number of variables seen in any variable scope in
    *          this domain.
    *  @throws IOException
   */
-  public void close(int varsMaxSize) throws IOException
+  public void close(int varsMaxSizeIn) throws IOException
   {
+    varsMaxSize = varsMaxSizeIn;
+
+    //-- If asked to, reorder the conjuncts in the preconditions. The atoms
+    //-- that can be proven by axioms are not moved.
+    if (reorderConjuncts)
+    {
+      BitSet axiomHeads = new BitSet();
+      for (InternalAxiom ax : axioms)
+        axiomHeads.set(ax.getHead().getHead());
+
+      for (InternalOperator op : operators)
+        op.reorderConjuncts(axiomHeads);
+      for (InternalMethod me : methods)
+        me.reorderConjuncts(axiomHeads);
+      for (InternalAxiom ax : axioms)
+        ax.reorderConjuncts(axiomHeads);
+    }
+
+    if (!generateCode)
+      return;
+
     //-- To hold the String to be written.
     String s;
     
@@ -333,7 +370,7 @@ public class InternalDomain
         sourceHash) + endl + endl;
     
     // FIXME Compute indices of methods, operators and axioms.
-    
+
     //-- Produce the nested classes that represent the operators.
     for (InternalOperator op : operators)
       s += op.toCode(String.format("Operator #%d for primitive task %s", -1, primitiveTasks.get(op.getHead().getHead())));
@@ -988,6 +1025,88 @@ public class InternalDomain
     probName = probNameIn;
   }
 
+  /** To set whether or not the conjuncts in the preconditions should be
+   *  reordered so that the cheaper ones are evaluated first, instead of in the
+   *  order they are written in. Note that this changes the order in which the
+   *  satisfiers of the preconditions are found, and hence which plan is found
+   *  first. It must be set before the domain is parsed.
+   *
+   *  @param reorderConjunctsIn
+   *          <code>true</code> if the conjuncts should be reordered,
+   *          <code>false</code> otherwise. The default is <code>false</code>.
+  */
+  public void setReorderConjuncts(boolean reorderConjunctsIn)
+  {
+    reorderConjuncts = reorderConjunctsIn;
+  }
+
+  /** To set whether or not the Java code for the domain should be produced
+   *  when it has been parsed. It need not be if the domain is only to be
+   *  made into an {@link InterpretedDomain}. It must be set before the domain
+   *  is parsed.
+   *
+   *  @param generateCodeIn
+   *          <code>true</code> if the code should be produced,
+   *          <code>false</code> otherwise. The default is <code>true</code>.
+  */
+  public void setGenerateCode(boolean generateCodeIn)
+  {
+    generateCode = generateCodeIn;
+  }
+
+  /** To get the axioms seen in the domain description.
+  */
+  Vector<InternalAxiom> getAxioms()
+  {
+    return axioms;
+  }
+
+  /** To get the names of the user-defined external code calls used in the
+   *  domain description.
+  */
+  Vector<String> getCalcs()
+  {
+    return calcs;
+  }
+
+  /** To get the comparators used by the <code>:sort-by</code> logical
+   *  preconditions in the domain description, each as the name of its class,
+   *  the name of its instance and then the arguments of its constructor.
+  */
+  Set<java.util.List<String>> getComparators()
+  {
+    return comparators;
+  }
+
+  /** To get the methods seen in the domain description.
+  */
+  Vector<InternalMethod> getMethods()
+  {
+    return methods;
+  }
+
+  /** To get the operators seen in the domain description.
+  */
+  Vector<InternalOperator> getOperators()
+  {
+    return operators;
+  }
+
+  /** To get the package the code for the domain is produced in.
+  */
+  String getOutputPackage()
+  {
+    return outputPackage;
+  }
+
+  /** To get the maximum number of variables seen in any variable scope in
+   *  the domain, once it has been parsed.
+  */
+  int getVarsMaxSize()
+  {
+    return varsMaxSize;
+  }
+
   /** This function produces the Java code needed to allocate and initialize an
    *  array the elements of which are drawn from a given <code>Vector</code> of
    *  <code>String</code>s.
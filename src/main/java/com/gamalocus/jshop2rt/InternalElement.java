@@ -1,5 +1,7 @@
 package com.gamalocus.jshop2rt;
 
+import java.util.BitSet;
+
 /** Each domain element (i.e., method, operator, or axiom) at compile time is
  *  represented as an instance of a class derived from this abstract class.
  *
@@ -54,4 +56,117 @@ public abstract class InternalElement extends CompileTimeObject
   {
     return head;
   }
+
+  /** To get the indices of the variables in the head of this internal domain
+   *  element. These are bound by the time its preconditions are evaluated.
+   *
+   *  @return
+   *          the set of the indices of the variables.
+  */
+  protected BitSet getHeadVars()
+  {
+    BitSet vars = new BitSet();
+    LogicalExpressionAtomic.addVars(head.getParam(), vars);
+
+    return vars;
+  }
+
+  /** To reorder the conjuncts in the preconditions of this internal domain
+   *  element so that the cheaper ones are evaluated first. See
+   *  {@link LogicalPrecondition#reorderConjuncts(BitSet, BitSet)}.
+   *
+   *  @param axiomHeads
+   *          the heads of the atoms that can be proven by axioms.
+  */
+  public abstract void reorderConjuncts(BitSet axiomHeads);
+
+  /** This function produces the Java code of a <code>unify</code> function
+   *  specialized for the head of this element, which does what
+   *  {@link DomainElement#unify(Predicate)} does without walking the head:
+   *  the constant symbols and numbers in the head are compared directly, and
+   *  each argument of the predicate to be unified is stored right into the
+   *  slot of the variable symbol it matches. Only the arguments that are
+   *  lists are unified the usual way.
+   *
+   *  @return
+   *          the produced code, or an empty string if the head is not an
+   *          argument list of a fixed length.
+  */
+  protected String getUnifyCode()
+  {
+    if (head.isVar() || !(head.getParam() instanceof TermTuple))
+      return "";
+
+    final Term[] args = ((TermTuple)head.getParam()).getArgs();
+
+    //-- The code for each argument.
+    String code = "";
+
+    //-- Whether or not some argument is unified the usual way.
+    boolean generic = false;
+
+    //-- The variables that may have been bound by the arguments so far.
+    BitSet seen = new BitSet();
+
+    for (int i = 0; i < args.length; i++)
+    {
+      final String o = "o[" + i + "]";
+
+      if (args[i] instanceof TermVariable)
+      {
+        final int v = ((TermVariable)args[i]).getIndex();
+
+        //-- The first time a variable symbol is seen, its slot is empty.
+        if (!seen.get(v))
+          code += "\t\t\tif (!(" + o + " instanceof TermVariable))" + endl +
+            "\t\t\t\tb[" + v + "] = " + o + ";" + endl;
+        else
+          code += "\t\t\tif (!(" + o + " instanceof TermVariable))" + endl +
+            "\t\t\t{" + endl +
+            "\t\t\t\tif (b[" + v + "] == null)" + endl +
+            "\t\t\t\t\tb[" + v + "] = " + o + ";" + endl +
+            "\t\t\t\telse if (!" + o + ".equals(b[" + v + "]))" + endl +
+            "\t\t\t\t\treturn null;" + endl +
+            "\t\t\t}" + endl;
+        seen.set(v);
+      }
+      else if (args[i] instanceof TermConstant)
+        code += "\t\t\tif (!(" + o + " instanceof TermVariable) && !(" + o +
+          " instanceof TermConstant && ((TermConstant)" + o + ").getIndex() == " +
+          ((TermConstant)args[i]).getIndex() + "))" + endl +
+          "\t\t\t\treturn null;" + endl;
+      else if (args[i] instanceof TermNumber)
+        code += "\t\t\tif (!(" + o + " instanceof TermVariable) && !(" + o +
+          " instanceof TermNumber && ((TermNumber)" + o + ").getNumber() == " +
+          ((TermNumber)args[i]).getNumber() + "))" + endl +
+          "\t\t\t\treturn null;" + endl;
+      else
+      {
+        code += "\t\t\tif (!headArgs[" + i + "].findUnifier(" + o + ", b))" + endl +
+          "\t\t\t\treturn null;" + endl;
+        LogicalExpressionAtomic.addVars(args[i], seen);
+        generic = true;
+      }
+    }
+
+    String s = "";
+
+    //-- The arguments of the head that are unified the usual way.
+    if (generic)
+      s += endl + "\t\tprivate final Term[] headArgs = ((TermTuple)getHead().getParam()).getArgs();" + endl;
+
+    s += endl + "\t\t@Override" + endl + "\t\tpublic Term[] unify(Predicate p)" + endl + "\t\t{" + endl;
+
+    //-- A predicate whose arguments are not a list of a fixed length is
+    //-- unified the usual way.
+    s += "\t\t\tfinal Term t = p.getParam();" + endl;
+    s += "\t\t\tif (!(t instanceof TermTuple))" + endl + "\t\t\t\treturn super.unify(p);" + endl + endl;
+    s += "\t\t\tfinal Term[] o = ((TermTuple)t).getArgs();" + endl;
+    s += "\t\t\tif (o.length != " + args.length + ")" + endl + "\t\t\t\treturn null;" + endl + endl;
+    s += "\t\t\tfinal Term[] b = new Term[" + head.getVarCount() + "];" + endl;
+    s += code;
+    s += "\t\t\treturn b;" + endl + "\t\t}" + endl + endl;
+
+    return s;
+  }
 }
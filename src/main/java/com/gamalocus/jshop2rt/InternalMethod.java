@@ -1,5 +1,6 @@
 package com.gamalocus.jshop2rt;
 
+import java.util.BitSet;
 import java.util.Vector;
 
 import antlr.Token;
@@ -74,6 +75,15 @@ public class InternalMethod extends InternalElement
       tl.setVarCount(getHead().getVarCount());
   }
 
+  /** To reorder the conjuncts in the preconditions, given that the variables
+   *  in the head are bound.
+  */
+  public void reorderConjuncts(BitSet axiomHeads)
+  {
+    for (LogicalPrecondition pre : pres)
+      pre.reorderConjuncts(getHeadVars(), axiomHeads);
+  }
+
   /** This function produces the Java code needed to implement this method.
   */
   public String toCode(String label)
@@ -149,6 +159,9 @@ public class InternalMethod extends InternalElement
     //-- Close the function definition
     s += "\t\t}" + endl;
 
+    //-- The function that unifies the head of this method with a task or an atom.
+    s += getUnifyCode();
+
     //-- The function that returns an iterator that can be used to find all the
     //-- bindings that satisfy a given precondition of this method and return
     //-- them one-by-one.
@@ -201,4 +214,24 @@ public class InternalMethod extends InternalElement
     //-- resulting string.
     return s + "\t\t}" + endl + "\t}" + endl + endl;
   }
+
+  /** This function makes the method this object represents at run time, the
+   *  same as the class produced by <code>toCode</code>, without producing any
+   *  code. See {@link InterpretedDomain}.
+  */
+  Method toMethod(InterpretedDomain owner, String label)
+  {
+    Method m = new InterpretedMethod(owner, owner.predicate(getHead()),
+        pres.toArray(new LogicalPrecondition[pres.size()]),
+        labels.toArray(new String[labels.size()]),
+        label + " " + getSourcePosForToString());
+
+    //-- The possible decompositions of the method.
+    TaskList[] subsIn = new TaskList[subs.size()];
+    for (int i = 0; i < subs.size(); i++)
+      subsIn[i] = owner.taskList(subs.get(i));
+    m.setSubs(subsIn);
+
+    return m;
+  }
 }
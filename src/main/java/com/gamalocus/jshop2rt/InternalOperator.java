@@ -1,5 +1,6 @@
 package com.gamalocus.jshop2rt;
 
+import java.util.BitSet;
 import java.util.Vector;
 
 /** Each operator at compile time is represented as an instance of this class.
@@ -104,6 +105,14 @@ public class InternalOperator extends InternalElement
         ((DelAddElement)add.get(i)).setVarCount(getHead().getVarCount());
   }
 
+  /** To reorder the conjuncts in the preconditions, given that the variables
+   *  in the head are bound.
+  */
+  public void reorderConjuncts(BitSet axiomHeads)
+  {
+    pre.reorderConjuncts(getHeadVars(), axiomHeads);
+  }
+
   /** This function produces the Java code needed to implement this operator.
   */
   public String toCode(String label)
@@ -270,6 +279,9 @@ public class InternalOperator extends InternalElement
     //-- Close the function definition
     s += "\t\t}" + endl;
 
+    //-- The function that unifies the head of this operator with a task or an atom.
+    s += getUnifyCode();
+
     //-- The function that returns an iterator that can be used to find all the
     //-- bindings that satisfy this operator's precondition and return them
     //-- one-by-one.
@@ -290,4 +302,38 @@ public class InternalOperator extends InternalElement
     //-- Close the class definition and return the resulting string.
     return s + endl + "\t}" + endl + endl;
   }
+
+  /** This function makes the operator this object represents at run time,
+   *  the same as the class produced by <code>toCode</code>, without producing
+   *  any code. See {@link InterpretedDomain}.
+  */
+  Operator toOperator(InterpretedDomain owner, String label)
+  {
+    //-- The index of the variable that represents the delete/add list of the
+    //-- operator, -1 if it is a real list.
+    Integer delVar = (Integer)del.get(0);
+    Integer addVar = (Integer)add.get(0);
+
+    Operator op = new InterpretedOperator(owner, owner.predicate(getHead()),
+        (delVar == null) ? -1 : delVar.intValue(), (addVar == null) ? -1 : addVar.intValue(),
+        owner.term(cost), pre, label + " " + getSourcePosForToString());
+
+    if (delVar == null)
+    {
+      DelAddElement[] delIn = new DelAddElement[del.size() - 1];
+      for (int i = 1; i < del.size(); i++)
+        delIn[i - 1] = ((DelAddElement)del.get(i)).toRuntime(owner);
+      op.setDel(delIn);
+    }
+
+    if (addVar == null)
+    {
+      DelAddElement[] addIn = new DelAddElement[add.size() - 1];
+      for (int i = 1; i < add.size(); i++)
+        addIn[i - 1] = ((DelAddElement)add.get(i)).toRuntime(owner);
+      op.setAdd(addIn);
+    }
+
+    return op;
+  }
 }
@@ -0,0 +1,100 @@
+package com.gamalocus.jshop2rt;
+
+/** Each axiom at run time in a domain that has not been compiled to Java code
+ *  is represented as an instance of this class, which makes the precondition
+ *  objects of its branches from their logical preconditions instead of from
+ *  the code produced for them. See {@link InterpretedDomain}.
+*/
+class InterpretedAxiom extends Axiom
+{
+  private static final long serialVersionUID = 7402285019416531236L;
+
+  /** The logical precondition of each branch of this axiom.
+  */
+  private final LogicalPrecondition[] branches;
+
+  /** The label of each branch of this axiom.
+  */
+  private final String[] labels;
+
+  /** The heads of the atoms the branches refer to, or <code>null</code> if
+   *  they are not known.
+  */
+  private final int[] dependencies;
+
+  /** The heads of the atoms whose addition can make the branches prove fewer
+   *  atoms, or <code>null</code> if they are not known.
+  */
+  private final int[] negativeDependencies;
+
+  /** What this axiom is, for <code>toString</code>.
+  */
+  private final String name;
+
+  /** To initialize the axiom.
+   *
+   *  @param owner
+   *          the domain this axiom is made for.
+   *  @param head
+   *          head of the axiom.
+   *  @param branchesIn
+   *          the logical precondition of each branch.
+   *  @param labelsIn
+   *          the label of each branch.
+   *  @param dependenciesIn
+   *          the heads of the atoms the branches refer to, or
+   *          <code>null</code> if they are not known.
+   *  @param negativeDependenciesIn
+   *          the heads of the atoms whose addition can make the branches
+   *          prove fewer atoms, or <code>null</code> if they are not known.
+   *  @param nameIn
+   *          what this axiom is, for <code>toString</code>.
+  */
+  InterpretedAxiom(InterpretedDomain owner, Predicate head, LogicalPrecondition[] branchesIn,
+                   String[] labelsIn, int[] dependenciesIn,
+                   int[] negativeDependenciesIn, String nameIn)
+  {
+    super(owner, head, branchesIn.length);
+    branches = branchesIn;
+    labels = labelsIn;
+    dependencies = dependenciesIn;
+    negativeDependencies = negativeDependenciesIn;
+    name = nameIn;
+  }
+
+  public Precondition getIterator(State state, Term[] unifier, int which)
+  {
+    if (which < 0 || which >= branches.length)
+      return null;
+
+    Precondition p = branches[which].toPrecondition((InterpretedDomain)owner, unifier);
+    p.reset(state);
+
+    return p;
+  }
+
+  @Override
+  public int[] getDependencies()
+  {
+    return dependencies;
+  }
+
+  @Override
+  public int[] getNegativeDependencies()
+  {
+    return negativeDependencies;
+  }
+
+  public String getLabel(int which)
+  {
+    if (which < 0 || which >= labels.length)
+      return null;
+    return labels[which];
+  }
+
+  @Override
+  public String toString()
+  {
+    return name;
+  }
+}
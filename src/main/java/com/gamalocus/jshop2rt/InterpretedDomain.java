@@ -0,0 +1,321 @@
+package com.gamalocus.jshop2rt;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+
+/** A domain made at run time straight from the objects the domain description
+ *  was parsed into, instead of from the Java code produced for it, so that a
+ *  domain can be loaded without a Java compiler, and without the time it takes
+ *  to produce and compile the code.
+ *
+ *  <p>
+ *  The methods, operators and axioms of the domain are the same as those of
+ *  the compiled domain, except that each of them makes its precondition
+ *  objects from the logical preconditions it was parsed into, and that the
+ *  conjunctions and disjunctions in them are represented by
+ *  {@link PreconditionConjunction} and {@link PreconditionDisjunction} rather
+ *  than by classes produced for each of them. The plans found are the same.
+ *
+ *  <p>
+ *  The domain is made as follows:
+ *  <pre>
+ *  InternalDomain parsed = new InternalDomain(file, null, packageName);
+ *  parsed.setGenerateCode(false);
+ *  parsed.getParser().domain();
+ *  Domain domain = new InterpretedDomain(parsed, classLoader);
+ *  </pre>
+ *  The package name and the class loader are used to find the classes of the
+ *  user-defined external code calls and <code>:sort-by</code> functions, which
+ *  are looked for in that package first, then in this one.
+*/
+public class InterpretedDomain extends Domain
+{
+  private static final long serialVersionUID = -8337120829410356214L;
+
+  /** The name of the domain.
+  */
+  private final String name;
+
+  /** The implementations of the functions called in the call terms of the
+   *  domain, by the code that stands for them in the call terms.
+  */
+  private final Map<String, Calculate> calculates = new HashMap<String, Calculate>();
+
+  /** The functions used by the <code>:sort-by</code> logical preconditions of
+   *  the domain, by the code that stands for them in the logical
+   *  preconditions.
+  */
+  private final Map<String, Comparator<Term[]>> comparators =
+    new HashMap<String, Comparator<Term[]>>();
+
+  /** To make the domain a given domain description has been parsed into.
+   *
+   *  @param domain
+   *          the parsed domain description.
+   *  @param loader
+   *          the class loader to find the classes of the user-defined
+   *          external code calls and <code>:sort-by</code> functions with.
+   *  @throws IllegalArgumentException
+   *          if one of those classes can not be found or instantiated.
+  */
+  @SuppressWarnings("unchecked")
+  public InterpretedDomain(InternalDomain domain, ClassLoader loader)
+  {
+    name = domain.getName();
+
+    constants = domain.getConstants().toArray(new String[0]);
+    compoundTasks = domain.getCompoundTasks().toArray(new String[0]);
+    primitiveTasks = domain.getPrimitiveTasks().toArray(new String[0]);
+
+    initializeTermVariables(domain.getVarsMaxSize());
+    initializeTermConstants();
+
+    //-- The functions of the standard library are fields of 'StdLib'.
+    for (Field f : StdLib.class.getFields())
+    {
+      if (Modifier.isStatic(f.getModifiers()) && Calculate.class.isAssignableFrom(f.getType()))
+      {
+        try
+        {
+          calculates.put("StdLib." + f.getName(), (Calculate)f.get(null));
+        }
+        catch (IllegalAccessException e)
+        {
+          throw new AssertionError(e);
+        }
+      }
+    }
+
+    //-- The other functions are instances of the classes named after them,
+    //-- which the code produced for the domain keeps in its fields.
+    final String owner = "((" + name + ")owner).";
+    for (String calc : domain.getCalcs())
+      calculates.put(owner + "calculate" + calc, (Calculate)instantiate(calc,
+          domain.getOutputPackage(), loader, new Class<?>[0], new Object[0]));
+
+    for (java.util.List<String> comparator : domain.getComparators())
+    {
+      final java.util.List<String> args = comparator.subList(2, comparator.size());
+      final Class<?>[] types = new Class<?>[args.size()];
+      final Object[] values = new Object[args.size()];
+      for (int i = 0; i < values.length; i++)
+      {
+        types[i] = int.class;
+        values[i] = Integer.valueOf(args.get(i));
+      }
+
+      comparators.put(owner + comparator.get(1), (Comparator<Term[]>)instantiate(comparator.get(0),
+          domain.getOutputPackage(), loader, types, values));
+    }
+
+    //-- The methods, operators and axioms, in the same order as in the code
+    //-- produced for the domain.
+    methods = new Method[compoundTasks.length][];
+    for (int i = 0; i < compoundTasks.length; i++)
+    {
+      int j = 0;
+      for (InternalMethod m : domain.getMethods())
+        if (m.getHead().getHead() == i)
+          j++;
+
+      methods[i] = new Method[j];
+
+      j = 0;
+      for (InternalMethod m : domain.getMethods())
+        if (m.getHead().getHead() == i)
+          methods[i][j++] = m.toMethod(this,
+              String.format("Method %d for compound task %s", -1, compoundTasks[i]));
+    }
+
+    ops = new Operator[primitiveTasks.length][];
+    for (int i = 0; i < primitiveTasks.length; i++)
+    {
+      int j = 0;
+      for (InternalOperator o : domain.getOperators())
+        if (o.getHead().getHead() == i)
+          j++;
+
+      ops[i] = new Operator[j];
+
+      j = 0;
+      for (InternalOperator o : domain.getOperators())
+        if (o.getHead().getHead() == i)
+          ops[i][j++] = o.toOperator(this,
+              String.format("Operator #%d for primitive task %s", -1, primitiveTasks[i]));
+    }
+
+    axioms = new Axiom[constants.length][];
+    for (int i = 0; i < constants.length; i++)
+    {
+      int j = 0;
+      for (InternalAxiom a : domain.getAxioms())
+        if (a.getHead().getHead() == i)
+          j++;
+
+      axioms[i] = new Axiom[j];
+
+      j = 0;
+      for (InternalAxiom a : domain.getAxioms())
+        if (a.getHead().getHead() == i)
+          axioms[i][j++] = a.toAxiom(this,
+              String.format("Branch %d for axiom %s", -1, constants[i]));
+    }
+  }
+
+  /** To make an instance of the class of a user-defined external code call or
+   *  <code>:sort-by</code> function.
+  */
+  private static Object instantiate(String className, String outputPackage, ClassLoader loader,
+                                    Class<?>[] types, Object[] args)
+  {
+    //-- The code produced for the domain refers to the class by its simple
+    //-- name, so it is either in the package of the domain or in this one.
+    final String[] candidates = {
+        outputPackage + "." + className,
+        Domain.class.getPackage().getName() + "." + className,
+        className };
+
+    for (String candidate : candidates)
+    {
+      final Class<?> c;
+      try
+      {
+        c = Class.forName(candidate, true, loader);
+      }
+      catch (ClassNotFoundException e)
+      {
+        continue;
+      }
+
+      try
+      {
+        return c.getConstructor(types).newInstance(args);
+      }
+      catch (Exception e)
+      {
+        throw new IllegalArgumentException(String.format("Cannot instantiate %s.", candidate), e);
+      }
+    }
+
+    throw new IllegalArgumentException(String.format("Cannot find the class %s.", className));
+  }
+
+  /** To get the name of the domain.
+  */
+  public String getName()
+  {
+    return name;
+  }
+
+  /** To make the term that represents a given term, as it was parsed, in
+   *  this domain, the same as the code produced for it makes.
+  */
+  Term term(Term t)
+  {
+    if (t instanceof TermVariable)
+      return getTermVariable(((TermVariable)t).getIndex());
+
+    if (t instanceof TermConstant)
+      return getTermConstant(((TermConstant)t).getIndex());
+
+    if (t instanceof TermNumber)
+      return getTermFactory().number(((TermNumber)t).getNumber());
+
+    if (t instanceof TermTuple)
+    {
+      final Term[] args = ((TermTuple)t).getArgs();
+      final Term[] argsOut = new Term[args.length];
+      for (int i = 0; i < args.length; i++)
+        argsOut[i] = term(args[i]);
+      return getTermFactory().tuple(argsOut);
+    }
+
+    if (t instanceof TermList)
+    {
+      final List l = ((TermList)t).getList();
+      if (l == null)
+        return TermList.NIL;
+      return getTermFactory().list(term(l.getHead()), term(l.getTail()));
+    }
+
+    if (t instanceof TermCall)
+    {
+      final TermCall c = (TermCall)t;
+      final List l = c.getArgs();
+      return new TermCall(new List(term(l.getHead()), term(l.getTail())),
+                          calculate(c.getFunc()), c.getFunc());
+    }
+
+    throw new IllegalArgumentException(String.format("Unknown term %s.", t));
+  }
+
+  /** To make the predicate that represents a given predicate, as it was
+   *  parsed, in this domain.
+  */
+  Predicate predicate(Predicate p)
+  {
+    if (p.isVar())
+      return new Predicate(p.getVarIdx(), p.getVarCount());
+
+    return new Predicate(p.getHead(), p.getVarCount(), term(p.getParam()));
+  }
+
+  /** To make the task list that represents a given task list, as it was
+   *  parsed, in this domain.
+  */
+  TaskList taskList(TaskList tl)
+  {
+    //-- Empty task list.
+    if (tl.isEmpty())
+      return TaskList.empty;
+
+    //-- Atomic task list.
+    final TaskAtom task = tl.getTask();
+    if (task != null)
+      return new TaskList(new TaskAtom(predicate(task.getHead()), task.isImmediate(),
+                                       task.isPrimitive()));
+
+    //-- Non-atomic task list.
+    final TaskList retVal = new TaskList(tl.subtasks.length, tl.isOrdered());
+    for (int i = 0; i < tl.subtasks.length; i++)
+      retVal.subtasks[i] = taskList(tl.subtasks[i]);
+    return retVal;
+  }
+
+  /** To get the implementation of the function a call term calls.
+   *
+   *  @param func
+   *          the code that stands for the function in the call term.
+  */
+  Calculate calculate(String func)
+  {
+    final Calculate c = calculates.get(func);
+    if (c == null)
+      throw new IllegalStateException(String.format("Unknown function %s.", func));
+    return c;
+  }
+
+  /** To get the function used by a <code>:sort-by</code> logical
+   *  precondition.
+   *
+   *  @param func
+   *          the code that stands for the function in the logical
+   *          precondition, or <code>null</code> if it is not a
+   *          <code>:sort-by</code> logical precondition.
+   *  @return
+   *          the function, or <code>null</code> if there is none.
+  */
+  Comparator<Term[]> comparator(String func)
+  {
+    if (func == null)
+      return null;
+
+    final Comparator<Term[]> c = comparators.get(func);
+    if (c == null)
+      throw new IllegalStateException(String.format("Unknown comparator %s.", func));
+    return c;
+  }
+}
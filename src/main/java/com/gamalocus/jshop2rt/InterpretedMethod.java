@@ -0,0 +1,69 @@
+package com.gamalocus.jshop2rt;
+
+/** Each method at run time in a domain that has not been compiled to Java
+ *  code is represented as an instance of this class, which makes the
+ *  precondition objects of its branches from their logical preconditions
+ *  instead of from the code produced for them. See {@link InterpretedDomain}.
+*/
+class InterpretedMethod extends Method
+{
+  private static final long serialVersionUID = -1861930441305934772L;
+
+  /** The logical precondition of each branch of this method.
+  */
+  private final LogicalPrecondition[] pres;
+
+  /** The label of each branch of this method.
+  */
+  private final String[] labels;
+
+  /** What this method is, for <code>toString</code>.
+  */
+  private final String name;
+
+  /** To initialize the method.
+   *
+   *  @param owner
+   *          the domain this method is made for.
+   *  @param head
+   *          head of the method.
+   *  @param presIn
+   *          the logical precondition of each branch.
+   *  @param labelsIn
+   *          the label of each branch.
+   *  @param nameIn
+   *          what this method is, for <code>toString</code>.
+  */
+  InterpretedMethod(InterpretedDomain owner, Predicate head, LogicalPrecondition[] presIn,
+                    String[] labelsIn, String nameIn)
+  {
+    super(owner, head);
+    pres = presIn;
+    labels = labelsIn;
+    name = nameIn;
+  }
+
+  public Precondition getIterator(State state, Term[] unifier, int which)
+  {
+    if (which < 0 || which >= pres.length)
+      return null;
+
+    Precondition p = pres[which].toPrecondition((InterpretedDomain)owner, unifier);
+    p.reset(state);
+
+    return p;
+  }
+
+  public String getLabel(int which)
+  {
+    if (which < 0 || which >= labels.length)
+      return null;
+    return labels[which];
+  }
+
+  @Override
+  public String toString()
+  {
+    return name;
+  }
+}
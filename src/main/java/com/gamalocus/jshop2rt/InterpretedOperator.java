@@ -0,0 +1,60 @@
+package com.gamalocus.jshop2rt;
+
+/** Each operator at run time in a domain that has not been compiled to Java
+ *  code is represented as an instance of this class, which makes the
+ *  precondition objects of the operator from its logical precondition instead
+ *  of from the code produced for it. See {@link InterpretedDomain}.
+*/
+class InterpretedOperator extends Operator
+{
+  private static final long serialVersionUID = 5290387716468170519L;
+
+  /** The logical precondition of this operator.
+  */
+  private final LogicalPrecondition pre;
+
+  /** What this operator is, for <code>toString</code>.
+  */
+  private final String name;
+
+  /** To initialize the operator.
+   *
+   *  @param owner
+   *          the domain this operator is made for.
+   *  @param head
+   *          head of the operator.
+   *  @param delVarIdxIn
+   *          the index of the delete list as a variable, -1 if the delete list
+   *          is not a variable.
+   *  @param addVarIdxIn
+   *          the index of the add list as a variable, -1 if the add list is
+   *          not a variable.
+   *  @param costIn
+   *          the cost of the operator.
+   *  @param preIn
+   *          the logical precondition of the operator.
+   *  @param nameIn
+   *          what this operator is, for <code>toString</code>.
+  */
+  InterpretedOperator(InterpretedDomain owner, Predicate head, int delVarIdxIn, int addVarIdxIn,
+                      Term costIn, LogicalPrecondition preIn, String nameIn)
+  {
+    super(owner, head, delVarIdxIn, addVarIdxIn, costIn);
+    pre = preIn;
+    name = nameIn;
+  }
+
+  public Precondition getIterator(State state, Term[] unifier, int which)
+  {
+    Precondition p = pre.toPrecondition((InterpretedDomain)owner, unifier);
+    p.reset(state);
+
+    return p;
+  }
+
+  @Override
+  public String toString()
+  {
+    return name;
+  }
+}
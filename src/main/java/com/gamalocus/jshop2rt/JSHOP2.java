@@ -3,9 +3,7 @@ package com.gamalocus.jshop2rt;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Hashtable;
-import java.util.Iterator;
 import java.util.LinkedList;
-import java.util.Stack;
 import java.util.TreeMap;
 import java.util.TreeSet;
 import java.util.Vector;
@@ -46,10 +44,10 @@ class InternalVars implements Serializable
    */
   Vector<?>[] delAdd;
 
-  /** The iterator iterating over the <code>LinkedList</code> of the tasks
-   *  that we have the option to achieve right now.
+  /** The index in <code>t0</code> of the next task that we have the option
+   *  to achieve right now.
    */
-  Iterator<TaskList> e;
+  int e;
 
   /** Whether or not at least one satisfier has been found for the current
    *  branch of the current method. As soon as it becomes <code>true</code>,
@@ -89,19 +87,16 @@ class InternalVars implements Serializable
    */
   TaskAtom t;
 
-  /** A <code>LinkedList</code> of the task atoms we have the option to
+  /** An <code>ArrayList</code> of the task atoms we have the option to
    *  achieve right now.
    */
-  LinkedList<TaskList> t0;
+  ArrayList<TaskList> t0;
 
   /** The atomic task list that represents, in the task network, the task
    *  atom that has been chosen to be achieved next.
    */
   TaskList tl;
 
-  /** Cost of the operator that we're currently trying to apply.
-   */
-  Term cost;
 }
 
 /** This class is the implementation of the JSHOP2 algorithm.
@@ -115,6 +110,104 @@ class InternalVars implements Serializable
  */
 public class JSHOP2 implements Serializable
 {
+  /**
+   * Why a budgeted time slice stopped. See {@link JSHOP2#run(long)} and
+   * {@link JSHOP2#run(int)}.
+   */
+  public enum StopReason
+  {
+    /**
+     * A new plan was found. It is the last one in {@link JSHOP2#getPlans()}.
+     * Run again to look for more plans.
+     */
+    PLAN_FOUND,
+
+    /**
+     * The budget ran out before anything else happened. Run again to go on.
+     */
+    BUDGET_EXHAUSTED,
+
+    /**
+     * All the options were tried, so there are no more plans to be found.
+     */
+    SEARCH_EXHAUSTED,
+
+    /**
+     * The recursion limit was exceeded. The search was given up, and the 
+     * operators it had applied were undone, so the state of the world is 
+     * what it was when the search started. Running again finds no more plans.
+     */
+    RECURSION_LIMIT,
+
+    /**
+     * {@link JSHOP2#interrupt()} was called. Run again to go on.
+     */
+    INTERRUPTED
+  }
+
+  /**
+   * Which of the plans found are kept in {@link JSHOP2#getPlans()}. See
+   * {@link JSHOP2#setPlanRetention(PlanRetention, int)}.
+   */
+  public enum PlanRetention
+  {
+    /**
+     * Keep all the plans, in the order they are found.
+     */
+    ALL,
+
+    /**
+     * Keep only the cheapest plan found so far.
+     */
+    BEST,
+
+    /**
+     * Keep only the first few plans found.
+     */
+    FIRST
+  }
+
+  /**
+   * How the search space is searched. See
+   * {@link JSHOP2#setSearchStrategy(SearchStrategy, double, double)}.
+   */
+  public enum SearchStrategy
+  {
+    /**
+     * Depth-first, with no limit but the recursion limit.
+     */
+    DEPTH_FIRST,
+
+    /**
+     * Depth-first, backtracking from any plan longer than a given number of
+     * steps as if it had failed.
+     */
+    DEPTH_BOUNDED,
+
+    /**
+     * Depth-bounded, starting with a given bound on the number of steps of
+     * the plan, and searching again with a larger bound each time the search
+     * space is exhausted without all of it having been searched. Shorter
+     * plans are found first.
+     */
+    ITERATIVE_DEEPENING_LENGTH,
+
+    /**
+     * Like {@link #ITERATIVE_DEEPENING_LENGTH}, but with a bound on the cost 
+     * of the plan, or on the lower bound given to 
+     * {@link JSHOP2#setBranchAndBound(boolean, CostLowerBound)} if there is 
+     * one. The next bound is the smallest cost that went over the bound. 
+     * Cheaper plans are found first. The cost must be a 
+     * {@link NumericCost}, and no operator may have a negative cost.
+     */
+    ITERATIVE_DEEPENING_COST
+  }
+
+  /**
+   * The number of steps between two looks at the clock in {@link #run(long)}.
+   */
+  private static final int CLOCK_CHECK_INTERVAL = 64;
+
   /**
    * State of stack frame. Corresponds to PC in regular stack frames.
    */
@@ -150,7 +243,7 @@ public class JSHOP2 implements Serializable
     /**
      * Parameter: Chosen task.
      */
-    final TaskList chosenTask;
+    TaskList chosenTask;
 
     /**
      * Return value.
@@ -170,7 +263,16 @@ public class JSHOP2 implements Serializable
      */
     public String tlString;
 
-    public Frame(TaskList chosenTask)
+    public Frame()
+    {
+      delAdd = new Vector<?>[4];
+      t0 = new ArrayList<TaskList>();
+    }
+
+    /**
+     * Make this frame ready to be pushed, as if it had just been made.
+     */
+    void init(TaskList chosenTask)
     {
       leaf = true;
       this.pc = PC.A;
@@ -178,6 +280,26 @@ public class JSHOP2 implements Serializable
       this.lastCallResult = null;
     }
 
+    /**
+     * Forget what this frame refers to once it is popped, so that it does
+     * not keep any of it from being collected. The <code>delAdd</code> array
+     * and the <code>t0</code> list are kept, to be used again.
+     */
+    void release()
+    {
+      chosenTask = null;
+      binding = null;
+      m = null;
+      nextB = null;
+      o = null;
+      p = null;
+      t = null;
+      t0.clear();
+      tl = null;
+      tlString = null;
+      lastCallResult = null;
+    }
+
     public String toString(Domain domain)
     {
       return String.format("PC=%s, j=%s, k=%s, tl=%s, e=%s",
@@ -212,10 +334,95 @@ public class JSHOP2 implements Serializable
   private final Logger logger = 
     Logger.getLogger(String.format("%s.%08x", getClass().getName(), System.identityHashCode(this)));
 
+  /**
+   * The frames of the explicit recursion stack. The frames are made only
+   * when the stack grows deeper than ever before, and are used again after
+   * they are popped.
+   */
+  private static class FrameStack implements Serializable
+  {
+    private static final long serialVersionUID = -2934775310846275163L;
+
+    /**
+     * The frames, the first <code>size</code> of which are on the stack.
+     */
+    private Frame[] frames = new Frame[16];
+
+    /**
+     * The number of frames on the stack.
+     */
+    private int size = 0;
+
+    /**
+     * Push a frame with a given parameter.
+     */
+    void push(TaskList chosenTask)
+    {
+      if (size == frames.length)
+      {
+        Frame[] grown = new Frame[size * 2];
+        System.arraycopy(frames, 0, grown, 0, size);
+        frames = grown;
+      }
+
+      Frame f = frames[size];
+      if (f == null)
+        f = frames[size] = new Frame();
+      f.init(chosenTask);
+      size++;
+    }
+
+    /**
+     * Pop the top frame.
+     */
+    void pop()
+    {
+      frames[--size].release();
+    }
+
+    /**
+     * @return The top frame.
+     */
+    Frame peek()
+    {
+      return frames[size - 1];
+    }
+
+    /**
+     * @return The frame at a given depth, where 0 is the bottom of the stack.
+     */
+    Frame get(int i)
+    {
+      return frames[i];
+    }
+
+    int size()
+    {
+      return size;
+    }
+
+    boolean isEmpty()
+    {
+      return size == 0;
+    }
+  }
+
   /**
    * Stack frames for the planner time slice.
    */
-  private final Stack<Frame> stack = new Stack<Frame>();
+  private final FrameStack stack = new FrameStack();
+
+  /**
+   * The number of search nodes expanded so far, that is, the number of stack 
+   * frames pushed.
+   */
+  private long expansions = 0;
+
+  /**
+   * The precondition iterators used by the stack frames, kept so that they
+   * can be used again. Made when first needed, since it is not serialized.
+   */
+  private transient PreconditionPool preconditions;
   
   /** The plan currently being constructed.
    */
@@ -243,6 +450,36 @@ public class JSHOP2 implements Serializable
    */
   private final TaskList tasks;
 
+  /** The parameter of the bottom stack frame, pushed again each time
+   *  iterative deepening starts a new iteration.
+   */
+  private final TaskList rootTask;
+
+  /** How the search space is searched.
+   */
+  private SearchStrategy searchStrategy = SearchStrategy.DEPTH_FIRST;
+
+  /** The largest number of steps, or cost, a plan may have, unless the
+   *  search strategy is {@link SearchStrategy#DEPTH_FIRST}.
+   */
+  private double searchBound;
+
+  /** How much the bound grows from one iteration of iterative deepening to
+   *  the next, at least.
+   */
+  private double searchBoundIncrement;
+
+  /** The bound of the last iteration of iterative deepening, whose plans
+   *  are not recorded again, or <code>-Infinity</code> in the first one.
+   */
+  private double previousSearchBound = Double.NEGATIVE_INFINITY;
+
+  /** The smallest number of steps, or cost, that went over the bound in
+   *  this iteration, or <code>Infinity</code> if none did, in which case the
+   *  whole search space has been searched.
+   */
+  private double exceededSearchBound = Double.POSITIVE_INFINITY;
+
   /** A boolean indicating if we should collect info about what preconditions fail and succeed.
    */
   private boolean registerFailAndSuccess = true;
@@ -251,6 +488,43 @@ public class JSHOP2 implements Serializable
    */
   private Hashtable<String, Stats> summary = new Hashtable<String, Stats>();
 
+  /** Whether or not branches that can not lead to a plan cheaper than the
+   *  cheapest one found so far are pruned.
+   */
+  private boolean branchAndBound = false;
+
+  /** The estimate of the cost of the cheapest plan that can still be found
+   *  from a given point in the search, or <code>null</code> to use the cost
+   *  of the plan so far.
+   */
+  private CostLowerBound lowerBound;
+
+  /** The cheapest plan found so far, or <code>null</code> if none has been
+   *  found yet.
+   */
+  private Plan bestPlan;
+
+  /** The number of plans found so far, including the ones not kept.
+   */
+  private long plansFound = 0;
+
+  /** Which of the plans found are kept.
+   */
+  private PlanRetention planRetention = PlanRetention.ALL;
+
+  /** The number of plans kept with {@link PlanRetention#FIRST}.
+   */
+  private int planRetentionLimit;
+
+  /** To be told about each plan cheaper than the ones before it, or
+   *  <code>null</code>.
+   */
+  private transient PlanListener planListener;
+
+  /** Whether or not the time slice being run should stop as soon as possible.
+   */
+  private volatile boolean interruptRequested = false;
+
   /** This function finds plan(s) for a given initial task list.
    * 
    * Currently found plans may be found by calling {@link #getPlans()}.
@@ -273,15 +547,51 @@ public class JSHOP2 implements Serializable
    *          the initial state of the world.
    */
   public JSHOP2(TaskList tasksIn, int recursionLimitIn, Cost initialCostIn, Domain domainIn, State stateIn)
+  {
+    this(tasksIn, tasksIn, recursionLimitIn, new Plan(initialCostIn), domainIn, stateIn);
+  }
+
+  /** To search only the part of the search space below a given point of it,
+   *  that is, the plans that extend a given plan by first achieving the tasks
+   *  to be achieved next in a given part of the task network. This is used by
+   *  {@link ParallelJSHOP2} to search several parts of the search space at
+   *  the same time.
+   *
+   *  @param tasksIn
+   *          the task network still to be achieved.
+   *  @param chosenTaskIn
+   *          the part of <code>tasksIn</code> the next task must be chosen
+   *          from, which is <code>tasksIn</code> itself if the next task may
+   *          be chosen from anywhere.
+   *  @param recursionLimitIn
+   *          the maximum recursion level below this point.
+   *  @param planIn
+   *          the plan so far, which is modified by the search.
+   *  @param domainIn
+   *          the planning domain.
+   *  @param stateIn
+   *          the state of the world after the plan so far.
+   */
+  JSHOP2(TaskList tasksIn, TaskList chosenTaskIn, int recursionLimitIn, Plan planIn, Domain domainIn, State stateIn)
   {
     domain = domainIn;
     state = stateIn;
 
-    //-- Initialize the current plan to an empty one.
-    currentPlan = new Plan(initialCostIn);
+    //-- The changes made to the state are reported in the finer log
+    //-- messages, so they must be recorded then.
+    if (logger.isLoggable(Level.FINER) && state.getJournalMode() == ChangeJournal.Mode.NONE)
+      state.setJournalMode(ChangeJournal.Mode.COMPACT);
+
+    //-- Share the ground terms of the state with those of the domain.
+    if (state.getTermFactory() == null)
+      state.setTermFactory(domain.getTermFactory());
+
+    //-- Initialize the current plan.
+    currentPlan = planIn;
 
     //-- Initialize the current task list to be achieved.
     tasks = tasksIn;
+    rootTask = chosenTaskIn;
 
     //-- Initialize the recursion level to 0
     recursionLimit = recursionLimitIn;
@@ -289,7 +599,7 @@ public class JSHOP2 implements Serializable
     logSetGoalTasks();
 
     //-- Initiate the stack.
-    stack.push(new Frame(tasks));
+    stack.push(chosenTaskIn);
   }
   
   public boolean isActive()
@@ -301,6 +611,108 @@ public class JSHOP2 implements Serializable
   {
     return plans;
   }
+
+  /**
+   * Turn the branch-and-bound mode on or off. In this mode, the planner 
+   * remembers the cost of the cheapest plan found so far, and gives up on 
+   * any branch of the search that can not lead to a cheaper one. Each plan 
+   * added to {@link #getPlans()} is then cheaper than the ones before it, 
+   * and once the search space is exhausted, the last one is the cheapest.
+   * 
+   * @param enabled Whether the mode is on.
+   * @param lowerBoundIn Estimate of the cost of the cheapest plan that can 
+   * still be found from a given point in the search, which must never be 
+   * more than the real cost. If <code>null</code>, the cost of the plan so 
+   * far is used, which is admissible as long as no operator has a negative 
+   * cost.
+   */
+  public void setBranchAndBound(boolean enabled, CostLowerBound lowerBoundIn)
+  {
+    branchAndBound = enabled;
+    lowerBound = lowerBoundIn;
+  }
+
+  /**
+   * Choose how the search space is searched. Must be called before the 
+   * search starts.
+   * 
+   * @param strategy The search strategy. The default is 
+   * {@link SearchStrategy#DEPTH_FIRST}.
+   * @param bound The largest number of steps a plan may have, or with
+   * {@link SearchStrategy#ITERATIVE_DEEPENING_COST} the largest cost, in the
+   * first iteration. Ignored with {@link SearchStrategy#DEPTH_FIRST}.
+   * @param increment The least amount the bound grows by from one iteration
+   * of iterative deepening to the next. Must be more than 0 with
+   * {@link SearchStrategy#ITERATIVE_DEEPENING_LENGTH}. Ignored unless 
+   * iterative deepening is used.
+   */
+  public void setSearchStrategy(SearchStrategy strategy, double bound, double increment)
+  {
+    searchStrategy = strategy;
+    searchBound = bound;
+    searchBoundIncrement = increment;
+  }
+
+  /**
+   * @return The bound of the iteration being run, or 
+   * <code>Infinity</code> with {@link SearchStrategy#DEPTH_FIRST}.
+   */
+  public double getSearchBound()
+  {
+    return searchStrategy == SearchStrategy.DEPTH_FIRST ? Double.POSITIVE_INFINITY : searchBound;
+  }
+
+  /**
+   * @return The cost of the cheapest plan found so far, or <code>null</code> 
+   * if none has been found yet.
+   */
+  public Cost getBestCost()
+  {
+    return bestPlan != null ? bestPlan.getCost() : null;
+  }
+
+  /**
+   * @return The cheapest plan found so far, or <code>null</code> if none has
+   * been found yet. Of the plans that cost the same, this is the first one 
+   * found.
+   */
+  public Plan getBestPlan()
+  {
+    return bestPlan;
+  }
+
+  /**
+   * @return The number of plans found so far, including the ones that were 
+   * not kept in {@link #getPlans()}.
+   */
+  public long getPlansFound()
+  {
+    return plansFound;
+  }
+
+  /**
+   * Choose which of the plans found are kept in {@link #getPlans()}. Plans 
+   * that are not kept are not copied, unless they are the cheapest so far. 
+   * The cheapest plan is always available from {@link #getBestPlan()}.
+   * 
+   * @param retention Which plans to keep. The default is to keep them all.
+   * @param limit The number of plans to keep with {@link PlanRetention#FIRST}.
+   * Ignored otherwise.
+   */
+  public void setPlanRetention(PlanRetention retention, int limit)
+  {
+    planRetention = retention;
+    planRetentionLimit = limit;
+  }
+
+  /**
+   * @param listener To be told about each plan that is cheaper than the ones 
+   * found before it, or <code>null</code>.
+   */
+  public void setPlanListener(PlanListener listener)
+  {
+    planListener = listener;
+  }
   
   /**
    * Run a single time slice.
@@ -319,6 +731,153 @@ public class JSHOP2 implements Serializable
     }
   }
   
+  /**
+   * Run time slices until a plan is found, the search is over, or a given
+   * amount of time has passed. The clock is only looked at every few steps,
+   * so the time taken may be a little more than the budget.
+   * 
+   * @param nanosBudget The time to run for, in nanoseconds.
+   * @return Why it stopped.
+   */
+  public StopReason run(long nanosBudget)
+  {
+    return runSlice(nanosBudget, Long.MAX_VALUE, true);
+  }
+
+  /**
+   * Run time slices until a plan is found, the search is over, or a given
+   * number of search nodes has been expanded.
+   * 
+   * @param maxExpansions The number of search nodes to expand, that is, the 
+   * number of tasks to try to achieve with the operators or methods found 
+   * for them.
+   * @return Why it stopped.
+   */
+  public StopReason run(int maxExpansions)
+  {
+    return runSlice(-1, maxExpansions, true);
+  }
+
+  /**
+   * Run time slices until the search is over or a given amount of time has 
+   * passed, without stopping when a plan is found. This is meant to be used 
+   * with a {@link PlanListener}, which is told about each plan that is 
+   * cheaper than the ones before it, and with {@link #getBestPlan()}, which 
+   * returns the cheapest plan found so far whenever the search is stopped.
+   * 
+   * @param nanosBudget The time to run for, in nanoseconds.
+   * @return Why it stopped. Never {@link StopReason#PLAN_FOUND}.
+   */
+  public StopReason runAnytime(long nanosBudget)
+  {
+    return runSlice(nanosBudget, Long.MAX_VALUE, false);
+  }
+
+  /**
+   * Make the time slice being run stop as soon as possible, with 
+   * {@link StopReason#INTERRUPTED}. May be called from another thread, or 
+   * from a {@link PlanListener}. If no time slice is being run, the next one
+   * stops right away.
+   */
+  public void interrupt()
+  {
+    interruptRequested = true;
+  }
+
+  /**
+   * Forget a call to {@link #interrupt()} that no time slice has stopped for.
+   */
+  void clearInterrupt()
+  {
+    interruptRequested = false;
+  }
+
+  /**
+   * Run time slices until the search is over, or a given budget runs out.
+   * 
+   * @param nanosBudget The time to run for, in nanoseconds, or a negative 
+   * number for no time limit.
+   * @param maxExpansions The number of search nodes to expand.
+   * @param stopAtPlan Whether to stop when a plan is found.
+   * @return Why it stopped.
+   */
+  StopReason runSlice(long nanosBudget, long maxExpansions, boolean stopAtPlan)
+  {
+    final long deadline = System.nanoTime() + nanosBudget;
+    final long limit = maxExpansions == Long.MAX_VALUE ? Long.MAX_VALUE : expansions + maxExpansions;
+    final long planCount = stopAtPlan ? plansFound : -1;
+    try
+    {
+      state.setLoggingEnabled(true);
+      for (int steps = 1; ; steps++)
+      {
+        if (interruptRequested)
+        {
+          interruptRequested = false;
+          return StopReason.INTERRUPTED;
+        }
+        final StopReason reason = step(planCount);
+        if (reason != null)
+        {
+          return reason;
+        }
+        if (expansions >= limit)
+        {
+          return StopReason.BUDGET_EXHAUSTED;
+        }
+        if (nanosBudget >= 0 && steps % CLOCK_CHECK_INTERVAL == 0 && 
+            System.nanoTime() - deadline >= 0)
+        {
+          return StopReason.BUDGET_EXHAUSTED;
+        }
+      }
+    }
+    finally
+    {
+      state.setLoggingEnabled(false);
+    }
+  }
+
+  /**
+   * Run a single step of a budgeted time slice.
+   * 
+   * @param planCount The number of plans found when the time slice started,
+   * or -1 if the time slice should not stop when a plan is found.
+   * @return Why the time slice must stop, or <code>null</code> if it may go on.
+   */
+  private StopReason step(long planCount)
+  {
+    if (stack.isEmpty())
+    {
+      return StopReason.SEARCH_EXHAUSTED;
+    }
+    if (stack.size() >= recursionLimit)
+    {
+      runInternal();
+      return StopReason.RECURSION_LIMIT;
+    }
+
+    runInternal();
+
+    if (planCount != -1 && plansFound != planCount)
+    {
+      return StopReason.PLAN_FOUND;
+    }
+    if (stack.isEmpty())
+    {
+      return StopReason.SEARCH_EXHAUSTED;
+    }
+    return null;
+  }
+
+  /**
+   * @return The number of search nodes expanded so far.
+   */
+  public long getExpansions()
+  {
+    return expansions;
+  }
+  
   /**
    * Run a single time slice.
    * 
@@ -342,16 +901,15 @@ public class JSHOP2 implements Serializable
       if (logger.isLoggable(Level.FINEST))
       {
         buf.append(" Stack trace:");
-        int level = stack.size();
-        for (Frame f : stack)
+        for (int i = 0; i < stack.size(); i++)
         {
-          buf.append("\n\t").append(level).append(": ").append(f.toString(domain));
-          level--;
+          buf.append("\n\t").append(stack.size() - i).append(": ")
+            .append(stack.get(i).toString(domain));
         }
       }
       logger.warning(buf.toString());
       
-      state.reset();
+      unwind();
       
       return false;  
     }
@@ -362,13 +920,28 @@ public class JSHOP2 implements Serializable
     switch (v.pc)
     {
     case A:
+      //-- In branch-and-bound mode, give up on this branch if it can not lead
+      //-- to a plan cheaper than the cheapest one found so far.
+      if (branchAndBound && bestPlan != null && !canImprove())
+      {
+        _return(false);
+        break;
+      }
+
+      //-- Backtrack from plans that have gone over the search bound, if any.
+      if (searchStrategy != SearchStrategy.DEPTH_FIRST && !withinSearchBound())
+      {
+        _return(false);
+        break;
+      }
+
       //-- Find all the tasks that we have the option to achieve right now. This
       //-- equals to the first task in the current task list if it is ordered, or
       //-- the first task in all the subtasks of the current task list if it is
       //-- unordered. In the latter case, if there is an immediate task as the
       //-- first task of any of the subtasks, that immediate task and ONLY that
       //-- immediate task is returned.
-      v.t0 = v.chosenTask.getFirst();
+      v.chosenTask.getFirst(v.t0);
 
       //-- If there are no tasks left,
       _next(v.t0.size() == 0 ? PC.A_1_V_T0_SIZE_IS_0 : PC.B);
@@ -407,7 +980,12 @@ public class JSHOP2 implements Serializable
           //-- rather than the current plan itself since the current plan will be
           //-- changed during the look for other plans.
           //if (planNo != 1) {
-            plans.addLast((Plan)currentPlan.clone());
+            //-- With iterative deepening, the plans within the bound of the
+            //-- iteration before were recorded then.
+            if (searchStrategy == SearchStrategy.DEPTH_FIRST ||
+                searchStrategy == SearchStrategy.DEPTH_BOUNDED ||
+                getSearchMeasure() > previousSearchBound)
+              addPlan();
           //} else {
             //plans.addLast(currentPlan);
           //}
@@ -415,7 +993,7 @@ public class JSHOP2 implements Serializable
           if (logger.isLoggable(Level.FINE))
           {
             logger.fine(String.format("%d plans found, latest with cost %s, %d actions.",
-                plans.size(), currentPlan.getCost().toString(), currentPlan.getOps().size()));
+                plansFound, currentPlan.getCost().toString(), currentPlan.size()));
           }
   
           logPlanFoundStep();
@@ -426,26 +1004,26 @@ public class JSHOP2 implements Serializable
       //}
       
     case B:
-      //-- This array of size 4 will store the atoms and protections that are
-      //-- deleted from and added to the current state of the world as a result
-      //-- of an operator being applied. This information is used in case a
-      //-- backtrack happens over that operator to store the state of the world
-      //-- to what it was before the backtracked operator was applied.
-      v.delAdd = new Vector[4];
+      //-- The array of size 4 in v.delAdd stores the atoms and protections
+      //-- that are deleted from and added to the current state of the world as
+      //-- a result of an operator being applied. This information is used in
+      //-- case a backtrack happens over that operator to store the state of the
+      //-- world to what it was before the backtracked operator was applied. It
+      //-- is made along with the frame, and used again by each operator.
 
       //-- To iterate over the tasks we have the option to achieve right now.
-      v.e = v.t0.iterator();
+      v.e = 0;
 
     case C_WHILE_V_E_HASNEXT__:
       //-- For each of the tasks that we have the option to achieve right now,
-      _next(v.e.hasNext() ? PC.C_1_V_E_HASNEXT__ : PC.D);
+      _next(v.e < v.t0.size() ? PC.C_1_V_E_HASNEXT__ : PC.D);
       break;
       
       //while (v.e.hasNext())
       //{
       case C_1_V_E_HASNEXT__: 
         //-- Find the next option.
-        v.tl = v.e.next();
+        v.tl = v.t0.get(v.e++);
         
         if (logger.isLoggable(Level.FINER))
         {
@@ -503,7 +1081,7 @@ public class JSHOP2 implements Serializable
 
               //-- Get the iterator that iterates over all the bindings that can
               //-- satisfy the precondition for this operator.
-              v.p = v.o[v.j].getIterator(state, v.binding, 0);
+              v.p = v.o[v.j].getIterator(state, v.binding, 0, getPreconditions(), stack.size());
 
             case C_1_2_1_2_WHILE_V_P_NEXTBINDING_STATE_IS_NOT_NULL:
               _next((v.nextB = v.p.nextBinding(state)) != null ? 
@@ -529,15 +1107,15 @@ public class JSHOP2 implements Serializable
                   //-- Add the instance of the operator that achieved this task
                   //-- to the beginning of the plan, remembering how much it
                   //-- cost.
-                  v.cost = currentPlan.addOperator(v.o[v.j], v.nextB);
+                  currentPlan.append(v.o[v.j], v.nextB);
                   if (logger.isLoggable(Level.FINEST))
                   {
-                    logger.finest(String.format("=== %d: Adding cost %s: Total is %s.", 
-                        stack.size(), v.cost, currentPlan.getCost()));
+                    logger.finest(String.format("=== %d: Added operator: Total is %s.", 
+                        stack.size(), currentPlan.getCost()));
                   }
 
-                  // TODO Branch and bound: Compare the plan cost to the current lower bound, 
-                  // and stop if below. 
+                  // Branch and bound: If the plan is now too expensive, the 
+                  // frame called below gives up right away.
 
                   //-- Create a STATECHANGED step for the list of plan steps
                   logStateChangedStep(v);
@@ -550,14 +1128,14 @@ public class JSHOP2 implements Serializable
                   //-- Remove the operator from the current plan.
                   if (logger.isLoggable(Level.FINEST))
                   {
-                    logger.finest(String.format("=== %d: Removing cost %s: Total is %s.", 
-                        stack.size(), v.cost, currentPlan.getCost()));
+                    logger.finest(String.format("=== %d: Removing operator: Total is %s.", 
+                        stack.size(), currentPlan.getCost()));
                   }
-                  currentPlan.removeOperator(v.cost);
+                  currentPlan.undo();
                   if (logger.isLoggable(Level.FINEST))
                   {
-                    logger.finest(String.format("=== %d: Removed cost %s: Total is %s.", 
-                        stack.size(), v.cost, currentPlan.getCost()));
+                    logger.finest(String.format("=== %d: Removed operator: Total is %s.", 
+                        stack.size(), currentPlan.getCost()));
                   }
                 //}
                   
@@ -658,7 +1236,7 @@ public class JSHOP2 implements Serializable
               case C_1_5_1_2_1:
                 //-- Get the iterator that iterates over all the bindings that
                 //-- can satisfy the precondition for this branch of this method.
-                v.p = v.m[v.j].getIterator(state, v.binding, v.k);
+                v.p = v.m[v.j].getIterator(state, v.binding, v.k, getPreconditions(), stack.size());
 
               case C_1_5_1_2_2_WHILE_V_NEXTB___V_P_NEXTBINDING_STATE__IS_NULL:
             	v.nextB = v.p.nextBinding(state);
@@ -771,6 +1349,137 @@ public class JSHOP2 implements Serializable
   }
 
 
+  /**
+   * @return the precondition iterators used by the stack frames.
+   */
+  private PreconditionPool getPreconditions()
+  {
+    if (preconditions == null)
+      preconditions = new PreconditionPool();
+    return preconditions;
+  }
+
+  /**
+   * @return The number of steps of the current plan, or with 
+   * {@link SearchStrategy#ITERATIVE_DEEPENING_COST} its cost, or the lower
+   * bound on the cost of the plans that extend it.
+   */
+  private double getSearchMeasure()
+  {
+    if (searchStrategy != SearchStrategy.ITERATIVE_DEEPENING_COST)
+    {
+      return currentPlan.size();
+    }
+    final Cost cost = lowerBound != null ? 
+        lowerBound.getLowerBound(currentPlan.getCost(), tasks, state) : 
+        currentPlan.getCost();
+    return ((NumericCost)cost).getValue();
+  }
+
+  /**
+   * @return Whether the current plan is within the search bound. If not, the
+   * search space is remembered to have been cut.
+   */
+  private boolean withinSearchBound()
+  {
+    final double measure = getSearchMeasure();
+    if (measure <= searchBound)
+    {
+      return true;
+    }
+    if (measure < exceededSearchBound)
+    {
+      exceededSearchBound = measure;
+    }
+    return false;
+  }
+
+  /**
+   * With iterative deepening, start the next iteration if the search space 
+   * was cut in this one.
+   * 
+   * @return Whether a new iteration was started.
+   */
+  private boolean deepen()
+  {
+    if ((searchStrategy != SearchStrategy.ITERATIVE_DEEPENING_LENGTH &&
+         searchStrategy != SearchStrategy.ITERATIVE_DEEPENING_COST) ||
+        exceededSearchBound == Double.POSITIVE_INFINITY)
+    {
+      return false;
+    }
+
+    previousSearchBound = searchBound;
+    searchBound = Math.max(exceededSearchBound, searchBound + searchBoundIncrement);
+    exceededSearchBound = Double.POSITIVE_INFINITY;
+
+    if (logger.isLoggable(Level.FINE))
+    {
+      logger.fine(String.format("Search space exhausted within bound %s, deepening to %s.",
+          previousSearchBound, searchBound));
+    }
+
+    //-- Everything has been undone by backtracking, so the search starts 
+    //-- again from the same state of the world and task network.
+    stack.push(rootTask);
+    return true;
+  }
+
+  /**
+   * @return <code>true</code> if the current plan may still lead to a plan 
+   * cheaper than the cheapest one found so far.
+   */
+  private boolean canImprove()
+  {
+    final Cost cost = lowerBound != null ? 
+        lowerBound.getLowerBound(currentPlan.getCost(), tasks, state) : 
+        currentPlan.getCost();
+    return cost.compareTo(bestPlan.getCost()) < 0;
+  }
+
+  /**
+   * Record the current plan, which has just been completed, keeping a copy
+   * of it if it is the cheapest so far or if the plan retention asks for it.
+   */
+  private void addPlan()
+  {
+    plansFound++;
+
+    final boolean improved = bestPlan == null || 
+      currentPlan.getCost().compareTo(bestPlan.getCost()) < 0;
+    Plan copy = null;
+    if (improved)
+    {
+      copy = (Plan)currentPlan.clone();
+      bestPlan = copy;
+    }
+
+    switch (planRetention)
+    {
+    case ALL:
+      plans.addLast(copy != null ? copy : (Plan)currentPlan.clone());
+      break;
+    case BEST:
+      if (improved)
+      {
+        plans.clear();
+        plans.addLast(copy);
+      }
+      break;
+    case FIRST:
+      if (plans.size() < planRetentionLimit)
+      {
+        plans.addLast(copy != null ? copy : (Plan)currentPlan.clone());
+      }
+      break;
+    }
+
+    if (improved && planListener != null)
+    {
+      planListener.planImproved(this, copy);
+    }
+  }
+
   private void registerPreconditionFailure(Precondition p)
   {
     Stats s = getSummary(p.toString()+"(bound: "+p.bestMatch+" conditions)");
@@ -822,7 +1531,30 @@ public class JSHOP2 implements Serializable
     
     // We made a call, this is no longer considered a leaf.
     stack.peek().leaf = false;
-    stack.push(new Frame(param));
+    stack.push(param);
+    expansions++;
+  }
+
+  /**
+   * Give up the search, backtracking over all the operators applied on the 
+   * way to the top of the stack, innermost first, so that the state of the 
+   * world is what it was when the search started, whatever its journal mode.
+   */
+  private void unwind()
+  {
+    while (!stack.isEmpty())
+    {
+      final Frame v = stack.peek();
+      
+      //-- A frame waiting here has applied an operator and called the search 
+      //-- for the rest of the tasks.
+      if (v.pc == PC.C_1_2_1_2_1_2)
+      {
+        currentPlan.undo();
+        state.undo(v.delAdd);
+      }
+      stack.pop();
+    }
   }
 
   /**
@@ -856,7 +1588,9 @@ public class JSHOP2 implements Serializable
     else
     {
       // Stack completely unwound.
-      // The return value is only used within recursion, so we do nothing here.
+      // The return value is only used within recursion, so we only start
+      // the next iteration of iterative deepening, if any.
+      deepen();
     }
   }
 
@@ -907,8 +1641,9 @@ public class JSHOP2 implements Serializable
       
       final int max = 80;
       int lineLen = buf.length();
-      for (Frame frame : stack)
+      for (int i = 0; i < stack.size(); i++)
       {
+        final Frame frame = stack.get(i);
         final String s = frame.tlString != null ? frame.tlString : "null";
         final int wordLen = s.length();
         if (lineLen != 0)
@@ -925,14 +1660,8 @@ public class JSHOP2 implements Serializable
         }
         buf.append(s);
         lineLen += wordLen;
-
-        if (frame.cost != null)
-        {
-          // It's the same cost object, so any reference will do.
-          buf.append("\n\t\tcost: ").append(frame.cost).append("\n\t");
-          lineLen = 0;
-        }        
       }
+      buf.append("\n\t\tcost: ").append(currentPlan.getCost());
       buf.append("\n");
 
       final ArrayList<String> mods = state.getModifications(domain);
@@ -984,7 +1713,10 @@ public class JSHOP2 implements Serializable
       PlanStepInfo newStep = new PlanStepInfo();
       newStep.action = "STATECHANGED";
       newStep.taskAtom = v.t;
-      newStep.delAdd = v.delAdd;
+      //-- The array is used again by the next operator, so log a copy.
+      newStep.delAdd = new Vector<?>[4];
+      for (int i = 0; i < 4; i++)
+        newStep.delAdd[i] = new Vector<Object>(v.delAdd[i]);
       newStep.operatorInstance = v.o[v.j].getHead()
       .applySubstitution(v.nextB).toString(getDomain(), Predicate.Namespace.PRIMITIVE_TASK_ATOM);
       logPlanStep(newStep);
@@ -0,0 +1,118 @@
+package com.gamalocus.jshop2rt;
+
+import java.util.Arrays;
+
+/**
+ * Cost model with several criteria, compared in lexicographic order: a plan
+ * is cheaper than another if it is cheaper by the first criterion, or as
+ * cheap by the first and cheaper by the second, and so on.
+ *
+ * The cost of an operator is a list of numbers, one for each criterion, such
+ * as <code>(1 0 5)</code>. A list that is shorter than the number of criteria
+ * leaves the remaining ones as they are, and a single number counts for the
+ * first criterion only. The criteria are kept in an array of
+ * <code>double</code>s, so adding or removing a cost makes no objects.
+ */
+public class LexicographicCost implements Cost
+{
+	private static final long serialVersionUID = 8315004611452736187L;
+
+	private final double[] values;
+
+	/**
+	 * @param criteria The number of criteria, all of which start at 0.
+	 */
+	public LexicographicCost(int criteria)
+	{
+		this(new double[criteria]);
+	}
+
+	/**
+	 * @param values The starting value of each criterion. Not copied.
+	 */
+	public LexicographicCost(double... values)
+	{
+		this.values = values;
+	}
+
+	public void add(Term t)
+	{
+		addScaled(t, 1);
+	}
+
+	public void remove(Term t)
+	{
+		addScaled(t, -1);
+	}
+
+	/**
+	 * Add a given cost, multiplied by a given factor, to the criteria.
+	 */
+	private void addScaled(Term t, double factor)
+	{
+		if (t instanceof TermNumber)
+		{
+			values[0] += factor * ((TermNumber)t).getNumber();
+			return;
+		}
+
+		int i = 0;
+		for (List l = ((TermList)TermList.of(t)).getList(); l != null; l = l.getRest())
+		{
+			values[i++] += factor * ((TermNumber)l.getHead()).getNumber();
+		}
+	}
+
+	/**
+	 * @param criterion The index of the criterion, the first being 0.
+	 * @return The value of the criterion.
+	 */
+	public double getValue(int criterion)
+	{
+		return values[criterion];
+	}
+
+	public int compareTo(Cost o)
+	{
+		final double[] other = ((LexicographicCost)o).values;
+		for (int i = 0; i < values.length; i++)
+		{
+			final int c = Double.compare(values[i], other[i]);
+			if (c != 0)
+			{
+				return c;
+			}
+		}
+		return 0;
+	}
+
+	@Override
+	public Object clone()
+	{
+		return new LexicographicCost(values.clone());
+	}
+
+	@Override
+	public int hashCode()
+	{
+		return Arrays.hashCode(values);
+	}
+
+	@Override
+	public boolean equals(Object obj)
+	{
+		if (this == obj)
+			return true;
+		if (obj == null)
+			return false;
+		if (getClass() != obj.getClass())
+			return false;
+		return Arrays.equals(values, ((LexicographicCost)obj).values);
+	}
+
+	@Override
+	public String toString()
+	{
+		return Arrays.toString(values);
+	}
+}
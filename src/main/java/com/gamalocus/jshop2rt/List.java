@@ -119,6 +119,9 @@ public class List extends CompileTimeObject implements Iterable<Term>, Serializa
    */
   public boolean equals(List t)
   {
+    if (this == t)
+      return true;
+
     return head.equals(t.head) && tail.equals(t.tail);
   }
 
@@ -152,6 +155,27 @@ public class List extends CompileTimeObject implements Iterable<Term>, Serializa
     tail.findUnifier(l.tail, binding);
   }
 
+  /** Find a unifier that will bind this list to another given list,
+   *  recording the binding in a given frame.
+   *
+   *  @param l
+   *          the list with which we are finding a unifier.
+   *  @param frame
+   *          the frame the unifier is recorded in.
+   *  @return
+   *          <code>false</code> if the two lists can not be unified,
+   *          <code>true</code> otherwise.
+   */
+  public boolean findUnifierList(List l, BindingFrame frame)
+  {
+    //-- If 'l' is null, there will be no unifier.
+    if (l == null)
+      return false;
+
+    return head.findUnifier(l.head, frame) &&
+    tail.findUnifier(l.tail, frame);
+  }
+
   /** To get the head of this list, a term.
    *
    *  @return
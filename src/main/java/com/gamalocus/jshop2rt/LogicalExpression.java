@@ -1,6 +1,7 @@
 package com.gamalocus.jshop2rt;
 
 import java.io.Serializable;
+import java.util.BitSet;
 
 /** Each logical expression at compile time is represented as a class derived
  *  from this abstract class.
@@ -42,6 +43,80 @@ public abstract class LogicalExpression extends CompileTimeObject implements Ser
   */
   public abstract String getInitCode(String label);
 
+  /** This function makes the precondition object that represents this
+   *  logical expression at run time, the same as the one the code produced by
+   *  <code>toCode</code> makes, without producing any code. See
+   *  {@link InterpretedDomain}.
+   *
+   *  @param owner
+   *          the domain the precondition object is made for.
+   *  @param unifier
+   *          the current unifier.
+   *  @return
+   *          the precondition object.
+  */
+  abstract Precondition toPrecondition(InterpretedDomain owner, Term[] unifier);
+
+  /** This function adds the indices of the variables this logical expression
+   *  binds when it is satisfied to a given set. This default implementation
+   *  adds nothing, which is right for the logical expressions that never bind
+   *  any variable.
+   *
+   *  @param vars
+   *          the set of the indices of the variables.
+  */
+  protected void addBoundVars(BitSet vars)
+  {
+  }
+
+  /** This function reorders the conjuncts of the conjunctions in this logical
+   *  expression so that the cheaper ones are evaluated first. See
+   *  {@link LogicalExpressionConjunction#reorderConjuncts(BitSet, BitSet)}.
+   *  This default implementation does nothing, which is right for the logical
+   *  expressions that contain no conjunction.
+   *
+   *  @param bound
+   *          the indices of the variables known to be bound when this logical
+   *          expression is evaluated. This set is not modified.
+   *  @param axiomHeads
+   *          the heads of the atoms that can be proven by axioms.
+  */
+  protected void reorderConjuncts(BitSet bound, BitSet axiomHeads)
+  {
+  }
+
+  /** This function adds the heads of the atoms in this logical expression to
+   *  a given set. This default implementation adds nothing, which is right
+   *  for the logical expressions that contain no atom.
+   *
+   *  @param heads
+   *          the set.
+   *  @return
+   *          <code>false</code> if the head of some atom is not known until
+   *          run time, <code>true</code> otherwise.
+  */
+  protected boolean addHeads(BitSet heads)
+  {
+    return true;
+  }
+
+  /** This function adds to a given set the heads of the atoms in this logical
+   *  expression whose addition to the state can make it satisfied less often,
+   *  i.e., those in a negation or in a <code>ForAll</code> logical
+   *  expression. This default implementation adds nothing, which is right for
+   *  the logical expressions that contain no atom, and for atoms.
+   *
+   *  @param heads
+   *          the set.
+   *  @return
+   *          <code>false</code> if the head of some such atom is not known
+   *          until run time, <code>true</code> otherwise.
+  */
+  protected boolean addNegativeHeads(BitSet heads)
+  {
+    return true;
+  }
+
   /** This function returns the number of variables in this logical expression.
    *
    *  @return
@@ -1,5 +1,7 @@
 package com.gamalocus.jshop2rt;
 
+import java.util.BitSet;
+
 /** Each assign term in a logical expression at compile time is represented as
  *  an instance of this class.
  *
@@ -48,6 +50,13 @@ public class LogicalExpressionAssignment extends LogicalExpression
 	  }
   }
 
+  /** To add the index of the variable this assignment binds to a given set.
+  */
+  protected void addBoundVars(BitSet vars)
+  {
+    vars.set(whichVar);
+  }
+
   /** This class does not need to propagate the variable count, therefore, this
    *  function does nothing.
   */
@@ -64,4 +73,12 @@ public class LogicalExpressionAssignment extends LogicalExpression
     return "new PreconditionAssign(" + t.toCode(label) + ", unifier, " + whichVar +
            ")";
   }
+
+  /** To make the <code>PreconditionAssign</code> object that represents
+   *  this assignment logical expression at run time.
+  */
+  Precondition toPrecondition(InterpretedDomain owner, Term[] unifier)
+  {
+    return new PreconditionAssign(owner.term(t), unifier, whichVar);
+  }
 }
@@ -1,5 +1,7 @@
 package com.gamalocus.jshop2rt;
 
+import java.util.BitSet;
+
 /** Each atomic term in a logical expression at compile time is represented as
  *  an instance of this class.
  *
@@ -42,6 +44,140 @@ public class LogicalExpressionAtomic extends LogicalExpression
 	  }
   }
 
+  /** To add the indices of the variables of the logical atom to a given set,
+   *  since they are all bound once it is satisfied.
+  */
+  protected void addBoundVars(BitSet vars)
+  {
+    if (!logicalAtom.isVar())
+      addVars(logicalAtom.getParam(), vars);
+  }
+
+  /** To add the head of the logical atom to a given set, unless the atom is
+   *  a variable symbol.
+  */
+  protected boolean addHeads(BitSet heads)
+  {
+    if (logicalAtom.isVar())
+      return false;
+
+    heads.set(logicalAtom.getHead());
+    return true;
+  }
+
+  /** To check whether or not this atom can be evaluated before or after the
+   *  other atoms in the same conjunction without changing what it means.
+   *  This is not the case when the atom is a variable symbol, when it is
+   *  proven by an axiom (the preconditions of which may depend on which of
+   *  its arguments are bound), or when one of its arguments is a call term.
+   *
+   *  @param axiomHeads
+   *          the heads of the atoms that can be proven by axioms.
+   *  @return
+   *          <code>true</code> if this atom can be moved, <code>false</code>
+   *          otherwise.
+  */
+  boolean isMovable(BitSet axiomHeads)
+  {
+    if (logicalAtom.isVar() || axiomHeads.get(logicalAtom.getHead()))
+      return false;
+
+    return addVars(logicalAtom.getParam(), new BitSet());
+  }
+
+  /** To count the arguments of this atom that are ground once a given set of
+   *  variables is bound. Those are the arguments the state of the world can
+   *  use to look the atom up.
+   *
+   *  @param bound
+   *          the indices of the variables that are bound.
+   *  @return
+   *          the number of such arguments.
+  */
+  int countBoundArgs(BitSet bound)
+  {
+    Term param = logicalAtom.getParam();
+
+    //-- An argument list that is not a tuple is looked up as a whole.
+    if (!(param instanceof TermTuple))
+      return isBound(param, bound) ? 1 : 0;
+
+    int n = 0;
+    for (Term arg : (TermTuple)param)
+      if (isBound(arg, bound))
+        n++;
+
+    return n;
+  }
+
+  /** To count the variables of this atom that are not in a given set of bound
+   *  variables.
+   *
+   *  @param bound
+   *          the indices of the variables that are bound.
+   *  @return
+   *          the number of such variables.
+  */
+  int countUnboundVars(BitSet bound)
+  {
+    BitSet vars = new BitSet();
+    addBoundVars(vars);
+    vars.andNot(bound);
+
+    return vars.cardinality();
+  }
+
+  /** To check whether or not a given term is ground once a given set of
+   *  variables is bound.
+  */
+  private static boolean isBound(Term t, BitSet bound)
+  {
+    BitSet vars = new BitSet();
+    addVars(t, vars);
+    vars.andNot(bound);
+
+    return vars.isEmpty();
+  }
+
+  /** To add the indices of the variables in a given term to a given set.
+   *
+   *  @param t
+   *          the term.
+   *  @param vars
+   *          the set of the indices of the variables.
+   *  @return
+   *          <code>false</code> if the term contains a call term, the value of
+   *          which depends on the variables bound when it is evaluated,
+   *          <code>true</code> otherwise.
+  */
+  static boolean addVars(Term t, BitSet vars)
+  {
+    if (t instanceof TermVariable)
+    {
+      vars.set(((TermVariable)t).getIndex());
+      return true;
+    }
+
+    if (t instanceof TermCall)
+      return false;
+
+    boolean noCall = true;
+
+    if (t instanceof TermTuple)
+    {
+      for (Term arg : (TermTuple)t)
+        noCall &= addVars(arg, vars);
+    }
+    else if (t instanceof TermList && ((TermList)t).getList() != null)
+    {
+      List l = ((TermList)t).getList();
+      noCall &= addVars(l.getHead(), vars);
+      noCall &= addVars(l.getTail(), vars);
+    }
+
+    return noCall;
+  }
+
   /** To propagate the variable count to the logical atom represented by this
    *  object.
   */
@@ -58,4 +194,12 @@ public class LogicalExpressionAtomic extends LogicalExpression
   {
     return "new PreconditionAtomic(" + logicalAtom.toCode(label) + ", unifier)";
   }
+
+  /** To make the <code>PreconditionAtomic</code> object that represents
+   *  this atomic logical expression at run time.
+  */
+  Precondition toPrecondition(InterpretedDomain owner, Term[] unifier)
+  {
+    return new PreconditionAtomic(owner.predicate(logicalAtom), unifier);
+  }
 }
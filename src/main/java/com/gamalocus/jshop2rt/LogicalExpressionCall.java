@@ -56,4 +56,12 @@ public class LogicalExpressionCall extends LogicalExpression
   {
     return "new PreconditionCall(" + term.toCode(label) + ", unifier)";
   }
+
+  /** To make the <code>PreconditionCall</code> object that represents this
+   *  call logical expression at run time.
+  */
+  Precondition toPrecondition(InterpretedDomain owner, Term[] unifier)
+  {
+    return new PreconditionCall((TermCall)owner.term(term), unifier);
+  }
 }
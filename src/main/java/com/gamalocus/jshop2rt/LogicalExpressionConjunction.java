@@ -1,5 +1,6 @@
 package com.gamalocus.jshop2rt;
 
+import java.util.BitSet;
 import java.util.Vector;
 
 /** Each conjunction at compile time is represented as an instance of this
@@ -108,6 +109,23 @@ public class LogicalExpressionConjunction extends LogicalExpression
       //-- Reset bindings
       s += "\t\t\tb[" + i + "] = null;" + endl;
 
+    //-- Define the 'setUnifier' function.
+    s += "\t\t}" + endl + endl + "\t\tpublic boolean setUnifier(Term[] unifier)" + endl;
+    s += "\t\t{" + endl;
+
+    //-- Implement the 'setUnifier' function by applying the new unifier to
+    //-- each conjunct, and then setting the initial binding the same way the
+    //-- constructor does.
+    for (int i = 1; i <= le.length; i++)
+    {
+      s += ((i == 1) ? "\t\t\tif (" : " ||" + endl + "\t\t\t    ") + "!p[" + i + "].setUnifier(unifier)";
+      if (i == le.length)
+        s += ")" + endl + "\t\t\t\treturn false;" + endl;
+    }
+    s += "\t\t\tb[0] = unifier;" + endl;
+    s += "\t\t\tb[0] = Term.merge( b, 1 );" + endl;
+    s += "\t\t\treturn true;" + endl;
+
     //-- Define the 'nextBindingHelper' function.
     s += "\t\t}" + endl + endl + "\t\tprotected Term[] nextBindingHelper(State state)" + endl;
     s += "\t\t{" + endl;
@@ -226,6 +244,132 @@ public class LogicalExpressionConjunction extends LogicalExpression
     return s;
   }
 
+  /** To add the indices of the variables the conjuncts bind to a given set.
+  */
+  protected void addBoundVars(BitSet vars)
+  {
+    for (int i = 0; i < le.length; i++)
+      le[i].addBoundVars(vars);
+  }
+
+  /** To reorder the conjuncts of this conjunction so that the cheaper ones
+   *  are evaluated first, since the code produced for a conjunction is a
+   *  nested-loop join that evaluates the conjuncts in order.
+   *
+   *  Only the atoms that can be evaluated in any order without changing what
+   *  they mean are moved (see {@link LogicalExpressionAtomic#isMovable}).
+   *  Every other conjunct (an assignment, a call, a negation and so on) stays
+   *  where it is, and no atom is moved across it, so it is evaluated with
+   *  exactly the same variables bound as before. Between two such conjuncts,
+   *  the atoms are ordered greedily: first the atoms all the variables of
+   *  which are already bound, then the atoms with more arguments bound, then
+   *  the atoms with fewer variables left unbound, and otherwise in the order
+   *  they were written in.
+   *
+   *  Note that this changes the order in which the satisfiers of the
+   *  conjunction are found.
+  */
+  protected void reorderConjuncts(BitSet bound, BitSet axiomHeads)
+  {
+    //-- The variables bound so far.
+    BitSet known = (BitSet)bound.clone();
+
+    //-- The first atom that has not been ordered yet.
+    int from = 0;
+
+    for (int i = 0; i <= le.length; i++)
+    {
+      if (i < le.length && le[i] instanceof LogicalExpressionAtomic &&
+          ((LogicalExpressionAtomic)le[i]).isMovable(axiomHeads))
+        continue;
+
+      //-- Order the atoms since the last conjunct that can not be moved.
+      orderAtoms(from, i, known);
+
+      //-- Reorder the conjunctions inside the conjunct that can not be moved.
+      if (i < le.length)
+      {
+        le[i].reorderConjuncts(known, axiomHeads);
+        le[i].addBoundVars(known);
+      }
+
+      from = i + 1;
+    }
+  }
+
+  /** To order the atoms in a given range of the conjuncts greedily, each
+   *  time picking the cheapest one given the variables bound by the ones
+   *  picked before it.
+   *
+   *  @param from
+   *          the index of the first atom.
+   *  @param to
+   *          the index after the last atom.
+   *  @param known
+   *          the variables bound before the first atom. The variables the
+   *          atoms bind are added to it.
+  */
+  private void orderAtoms(int from, int to, BitSet known)
+  {
+    for (int i = from; i < to; i++)
+    {
+      int best = i;
+      for (int j = i + 1; j < to; j++)
+        if (isCheaper((LogicalExpressionAtomic)le[j],
+                      (LogicalExpressionAtomic)le[best], known))
+          best = j;
+
+      //-- Move the cheapest atom to the front, keeping the order of the rest.
+      LogicalExpression chosen = le[best];
+      System.arraycopy(le, i, le, i + 1, best - i);
+      le[i] = chosen;
+
+      chosen.addBoundVars(known);
+    }
+  }
+
+  /** To check whether or not one atom is cheaper to evaluate than another,
+   *  given the variables that are bound.
+  */
+  private static boolean isCheaper(LogicalExpressionAtomic a,
+                                   LogicalExpressionAtomic b, BitSet known)
+  {
+    int unboundA = a.countUnboundVars(known);
+    int unboundB = b.countUnboundVars(known);
+
+    //-- An atom with nothing left to bind is only a test.
+    if ((unboundA == 0) != (unboundB == 0))
+      return unboundA == 0;
+
+    int boundArgsA = a.countBoundArgs(known);
+    int boundArgsB = b.countBoundArgs(known);
+    if (boundArgsA != boundArgsB)
+      return boundArgsA > boundArgsB;
+
+    return unboundA < unboundB;
+  }
+
+  /** To add the heads of the atoms in each conjunct.
+  */
+  protected boolean addHeads(BitSet heads)
+  {
+    boolean known = true;
+    for (int i = 0; i < le.length; i++)
+      known &= le[i].addHeads(heads);
+    return known;
+  }
+
+  /** To add the heads of the atoms in each conjunct whose addition can make it
+   *  satisfied less often.
+  */
+  protected boolean addNegativeHeads(BitSet heads)
+  {
+    boolean known = true;
+    for (int i = 0; i < le.length; i++)
+      known &= le[i].addNegativeHeads(heads);
+    return known;
+  }
+
   /** To propagate the variable count to all the logical expressions the
    *  conjunction of which this object represents.
   */
@@ -242,4 +386,16 @@ public class LogicalExpressionConjunction extends LogicalExpression
   {
     return "new Precondition" + cnt + "(owner, unifier)";
   }
+
+  /** To make the <code>PreconditionConjunction</code> object that represents
+   *  this conjunction at run time.
+  */
+  Precondition toPrecondition(InterpretedDomain owner, Term[] unifier)
+  {
+    Precondition[] p = new Precondition[le.length];
+    for (int i = 0; i < le.length; i++)
+      p[i] = le[i].toPrecondition(owner, unifier);
+
+    return new PreconditionConjunction(p, unifier, "Conjunction " + getSourcePosForToString());
+  }
 }
@@ -1,5 +1,6 @@
 package com.gamalocus.jshop2rt;
 
+import java.util.BitSet;
 import java.util.Vector;
 
 /** Each disjunction at compile time is represented as an instance of this
@@ -96,6 +97,17 @@ public class LogicalExpressionDisjunction extends LogicalExpression
       //-- Binding each disjunct in this disjunction.
       s += "\t\t\tp[" + i + "].bind(binding);" + endl;
 
+    //-- Define the 'setUnifier' function.
+    s += "\t\t}" + endl + endl + "\t\tpublic boolean setUnifier(Term[] unifier)" + endl;
+    s += "\t\t{" + endl;
+
+    //-- Implement the 'setUnifier' function by applying the new unifier to
+    //-- each disjunct.
+    s += "\t\t\treturn ";
+    for (i = 0; i < le.length; i++)
+      s += ((i == 0) ? "" : " &&" + endl + "\t\t\t       ") + "p[" + i + "].setUnifier(unifier)";
+    s += ((le.length == 0) ? "true;" : ";") + endl;
+
     //-- Define the 'nextBindingHelper' function.
     s += "\t\t}" + endl + endl + "\t\tprotected Term[] nextBindingHelper(State state)" + endl;
     s += "\t\t{";
@@ -138,6 +150,45 @@ public class LogicalExpressionDisjunction extends LogicalExpression
            endl;
   }
   
+  /** To add the indices of the variables the disjuncts bind to a given set.
+   *  Note that only one of the disjuncts is satisfied at a time, so some of
+   *  these may not actually be bound.
+  */
+  protected void addBoundVars(BitSet vars)
+  {
+    for (int i = 0; i < le.length; i++)
+      le[i].addBoundVars(vars);
+  }
+
+  /** To reorder the conjunctions in each disjunct.
+  */
+  protected void reorderConjuncts(BitSet bound, BitSet axiomHeads)
+  {
+    for (int i = 0; i < le.length; i++)
+      le[i].reorderConjuncts(bound, axiomHeads);
+  }
+
+  /** To add the heads of the atoms in each disjunct.
+  */
+  protected boolean addHeads(BitSet heads)
+  {
+    boolean known = true;
+    for (int i = 0; i < le.length; i++)
+      known &= le[i].addHeads(heads);
+    return known;
+  }
+
+  /** To add the heads of the atoms in each disjunct whose addition can make it
+   *  satisfied less often.
+  */
+  protected boolean addNegativeHeads(BitSet heads)
+  {
+    boolean known = true;
+    for (int i = 0; i < le.length; i++)
+      known &= le[i].addNegativeHeads(heads);
+    return known;
+  }
+
   /** To propagate the variable count to all the logical expressions the
    *  disjunction of which this object represents.
   */
@@ -155,5 +206,15 @@ public class LogicalExpressionDisjunction extends LogicalExpression
     return "new Precondition" + cnt + "(owner, unifier) /*" + label + "*/";
   }
 
+  /** To make the <code>PreconditionDisjunction</code> object that represents
+   *  this disjunction at run time.
+  */
+  Precondition toPrecondition(InterpretedDomain owner, Term[] unifier)
+  {
+    Precondition[] p = new Precondition[le.length];
+    for (int i = 0; i < le.length; i++)
+      p[i] = le[i].toPrecondition(owner, unifier);
 
+    return new PreconditionDisjunction(p, "Disjunction " + getSourcePosForToString());
+  }
 }
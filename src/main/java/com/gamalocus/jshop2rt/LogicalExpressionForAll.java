@@ -1,5 +1,7 @@
 package com.gamalocus.jshop2rt;
 
+import java.util.BitSet;
+
 /** Each <code>ForAll</code> logical expression at compile time is represented
  *  as an instance of this class.
  *
@@ -43,6 +45,34 @@ public class LogicalExpressionForAll extends LogicalExpression
     return premise.getInitCode("premise of " + label) + consequence.getInitCode("consequence of " + label);
   }
 
+  /** To reorder the conjunctions in the premise and the consequence. The
+   *  consequence is evaluated with the variables the premise binds.
+  */
+  protected void reorderConjuncts(BitSet bound, BitSet axiomHeads)
+  {
+    premise.reorderConjuncts(bound, axiomHeads);
+
+    BitSet premiseBound = (BitSet)bound.clone();
+    premise.addBoundVars(premiseBound);
+    consequence.reorderConjuncts(premiseBound, axiomHeads);
+  }
+
+  /** To add the heads of the atoms in the premise and the consequence.
+  */
+  protected boolean addHeads(BitSet heads)
+  {
+    return premise.addHeads(heads) & consequence.addHeads(heads);
+  }
+
+  /** To add the heads of all the atoms in the premise and the consequence,
+   *  since the more atoms satisfy the premise, the more of them the
+   *  consequence must hold for.
+  */
+  protected boolean addNegativeHeads(BitSet heads)
+  {
+    return addHeads(heads);
+  }
+
   /** To propagate the variable count to the <code>ForAll</code> logical
    *  expression represented by this object.
   */
@@ -61,4 +91,13 @@ public class LogicalExpressionForAll extends LogicalExpression
     return "new PreconditionForAll(" + premise.toCode("premise of " + label) + ", " +
            consequence.toCode("consequence of " + label) + ", " + getVarCount() + ")";
   }
+
+  /** To make the <code>PreconditionForAll</code> object that represents this
+   *  universally quantified logical expression at run time.
+  */
+  Precondition toPrecondition(InterpretedDomain owner, Term[] unifier)
+  {
+    return new PreconditionForAll(premise.toPrecondition(owner, unifier),
+                                  consequence.toPrecondition(owner, unifier), getVarCount());
+  }
 }
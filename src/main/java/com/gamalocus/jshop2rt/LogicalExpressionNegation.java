@@ -1,5 +1,7 @@
 package com.gamalocus.jshop2rt;
 
+import java.util.BitSet;
+
 /** Each negative term in a logical expression at compile time is represented
  *  as an instance of this class.
  *
@@ -34,6 +36,31 @@ public class LogicalExpressionNegation extends LogicalExpression
     return le.getInitCode(label);
   }
 
+  /** To reorder the conjunctions in the logical expression this object is
+   *  negating. Since a negation binds no variables, it is not done in
+   *  <code>addBoundVars</code>.
+  */
+  protected void reorderConjuncts(BitSet bound, BitSet axiomHeads)
+  {
+    le.reorderConjuncts(bound, axiomHeads);
+  }
+
+  /** To add the heads of the atoms in the logical expression being negated.
+  */
+  protected boolean addHeads(BitSet heads)
+  {
+    return le.addHeads(heads);
+  }
+
+  /** To add the heads of all the atoms in the logical expression being
+   *  negated, since the more of them there are, the less often it is not
+   *  satisfied.
+  */
+  protected boolean addNegativeHeads(BitSet heads)
+  {
+    return le.addHeads(heads);
+  }
+
   /** To propagate the variable count to the logical expression the negative of
    *  which this object represents.
   */
@@ -50,4 +77,12 @@ public class LogicalExpressionNegation extends LogicalExpression
   {
     return "new PreconditionNegation(" + le.toCode(label) + ", " + getVarCount() + ")";
   }
+
+  /** To make the <code>PreconditionNegation</code> object that represents
+   *  this negative logical expression at run time.
+  */
+  Precondition toPrecondition(InterpretedDomain owner, Term[] unifier)
+  {
+    return new PreconditionNegation(le.toPrecondition(owner, unifier), getVarCount());
+  }
 }
@@ -44,4 +44,12 @@ public class LogicalExpressionNil extends LogicalExpression
   {
     return "new PreconditionNil("+ getVarCount() + ")";
   }
+
+  /** To make the <code>PreconditionNil</code> object that represents this
+   *  empty logical expression at run time.
+  */
+  Precondition toPrecondition(InterpretedDomain owner, Term[] unifier)
+  {
+    return new PreconditionNil(getVarCount());
+  }
 }
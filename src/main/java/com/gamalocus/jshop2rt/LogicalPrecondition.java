@@ -1,5 +1,8 @@
 package com.gamalocus.jshop2rt;
 
+import java.io.Serializable;
+import java.util.BitSet;
+
 /** Each logical precondition at compile time is represented as an instance of
  *  this class.
  *
@@ -7,8 +10,10 @@ package com.gamalocus.jshop2rt;
  *  @author <a href="http://www.cs.umd.edu/~okhtay">http://www.cs.umd.edu/~okhtay</a>
  *  @version 1.0.3
 */
-public class LogicalPrecondition extends CompileTimeObject
+public class LogicalPrecondition extends CompileTimeObject implements Serializable
 {
+  private static final long serialVersionUID = 2206462458617232931L;
+
   /** 
    * Whether or not this logical precondition is marked <code>:first</code>.
   */
@@ -78,6 +83,53 @@ public class LogicalPrecondition extends CompileTimeObject
     return le.getInitCode(label);
   }
 
+  /** To reorder the conjuncts in this logical precondition so that the cheaper
+   *  ones are evaluated first. A logical precondition marked
+   *  <code>:first</code> is left alone, since which satisfier it finds first
+   *  depends on the order of the conjuncts.
+   *
+   *  @param bound
+   *          the indices of the variables known to be bound when this logical
+   *          precondition is evaluated.
+   *  @param axiomHeads
+   *          the heads of the atoms that can be proven by axioms.
+  */
+  public void reorderConjuncts(BitSet bound, BitSet axiomHeads)
+  {
+    if (!first)
+      le.reorderConjuncts(bound, axiomHeads);
+  }
+
+  /** To add the heads of the atoms in this logical precondition to a given
+   *  set.
+   *
+   *  @param heads
+   *          the set.
+   *  @return
+   *          <code>false</code> if the head of some atom is not known until
+   *          run time, <code>true</code> otherwise.
+  */
+  public boolean addHeads(BitSet heads)
+  {
+    return le.addHeads(heads);
+  }
+
+  /** To add to a given set the heads of the atoms in this logical
+   *  precondition whose addition to the state can make it satisfied less
+   *  often. If it is marked <code>:first</code>, those are all of them, since
+   *  which satisfier comes first may change.
+   *
+   *  @param heads
+   *          the set.
+   *  @return
+   *          <code>false</code> if the head of some such atom is not known
+   *          until run time, <code>true</code> otherwise.
+  */
+  public boolean addNegativeHeads(BitSet heads)
+  {
+    return first ? le.addHeads(heads) : le.addNegativeHeads(heads);
+  }
+
   /** This function is used to set the number of variables for this logical
    *  precondition.
    *
@@ -96,4 +148,27 @@ public class LogicalPrecondition extends CompileTimeObject
   {
     return "(" + le.toCode(label) + ").setComparator(" + func + ")";
   }
+
+  /** To make the precondition object that represents this logical
+   *  precondition at run time, the same as the one the code produced by
+   *  <code>toCode</code> makes. It is not reset.
+   *
+   *  @param owner
+   *          the domain the precondition object is made for.
+   *  @param unifier
+   *          the current unifier.
+   *  @return
+   *          the precondition object.
+  */
+  Precondition toPrecondition(InterpretedDomain owner, Term[] unifier)
+  {
+    Precondition p = le.toPrecondition(owner, unifier).setComparator(owner.comparator(func));
+
+    //-- If the logical precondition is marked ':first', set the appropriate
+    //-- flag.
+    if (first)
+      p.setFirst(true);
+
+    return p;
+  }
 }
@@ -0,0 +1,341 @@
+package com.gamalocus.jshop2rt;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.Vector;
+
+/** This class keeps the atoms that the axioms with some heads prove in the
+ *  state of the world itself, as if they had been added to it, so that they
+ *  are looked up through the argument index like any other atom instead of
+ *  being proven each time they are asked for. See
+ *  {@link State#materialize(int)}.
+ *
+ *  <p>
+ *  An atom with a materialized head is in the state if some axiom for the
+ *  head proves it, as if it had been asked for by itself. The axioms must not
+ *  be recursive, directly or through other axioms, and the atoms they prove
+ *  must be ground. Each of them must have a single branch: a later branch is
+ *  only tried when the earlier ones prove nothing about the atom asked for,
+ *  so which atoms it proves depends on what is asked for.
+ *
+ *  <p>
+ *  When an atom a materialized head depends on is added or deleted, the head
+ *  is marked as stale. The stale heads are derived again at the end of the
+ *  application of each operator, those that depend on others last, and the
+ *  atoms that are no longer proven or are newly proven are deleted or added
+ *  along with those the operator deletes or adds, so that backtracking over
+ *  the operator restores them exactly. Heads found stale at any other time
+ *  (e.g., when the state is being set up) are derived again before the next
+ *  atom is looked up.
+ */
+class MaterializedAxioms implements Serializable
+{
+  private static final long serialVersionUID = -3016840785624389120L;
+
+  /** The axioms, indexed first by the head of the atoms they prove.
+  */
+  private final Axiom[][] axioms;
+
+  /** Whether or not each head is materialized.
+  */
+  private final boolean[] materialized;
+
+  /** The materialized heads, each one after all those it depends on.
+  */
+  private final int[] heads;
+
+  /** For each materialized head, in the same order, the most general atom
+   *  with that head, to be proven to find all the others.
+  */
+  private final Predicate[] queries;
+
+  /** For each head, the positions in <code>heads</code> of the materialized
+   *  heads that depend on it.
+  */
+  private final int[][] dependents;
+
+  /** For each materialized head, in the same order, whether or not it must
+   *  be derived again.
+  */
+  private final boolean[] stale;
+
+  /** Whether or not any materialized head must be derived again.
+  */
+  private boolean anyStale;
+
+  /** Whether or not the stale heads are being derived again right now.
+  */
+  private transient boolean updating = false;
+
+  /** To materialize the atoms with given heads.
+   *
+   *  @param axiomsIn
+   *          the axioms, indexed first by the head of the atoms they prove.
+   *  @param chosen
+   *          the heads to be materialized.
+   *  @throws IllegalArgumentException
+   *          if the axioms of one of the heads can not be materialized.
+  */
+  MaterializedAxioms(Axiom[][] axiomsIn, BitSet chosen)
+  {
+    axioms = axiomsIn;
+    materialized = new boolean[axioms.length];
+
+    final BitSet[] dependsOn = AxiomTable.dependencies(axioms);
+    final ArrayList<Integer> order = new ArrayList<Integer>();
+    for (int h = chosen.nextSetBit(0); h >= 0; h = chosen.nextSetBit(h + 1))
+    {
+      if (h >= axioms.length || axioms[h] == null || axioms[h].length == 0)
+        throw new IllegalArgumentException("No axiom proves the atoms with head " + h + ".");
+      if (dependsOn[h] == null)
+        throw new IllegalArgumentException("The axioms for head " + h +
+            " do not tell what they depend on; the domain must be compiled again.");
+      if (dependsOn[h].get(h))
+        throw new IllegalArgumentException("The axioms for head " + h + " are recursive.");
+      for (Axiom ax : axioms[h])
+      {
+        if (ax.getBranchSize() != 1)
+          throw new IllegalArgumentException("An axiom for head " + h + " has more than one branch.");
+      }
+
+      materialized[h] = true;
+      order.add(h);
+    }
+
+    //-- A head that depends on another one depends on everything that one
+    //-- depends on, and more, so it comes after it.
+    final Integer[] sorted = order.toArray(new Integer[order.size()]);
+    Arrays.sort(sorted, new Comparator<Integer>() {
+      public int compare(Integer a, Integer b)
+      {
+        return dependsOn[a].cardinality() - dependsOn[b].cardinality();
+      }
+    });
+
+    heads = new int[sorted.length];
+    queries = new Predicate[sorted.length];
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    final ArrayList<Integer>[] lists = new ArrayList[axioms.length];
+    for (int i = 0; i < sorted.length; i++)
+    {
+      final int h = sorted[i];
+      heads[i] = h;
+      queries[i] = query(h);
+
+      for (int x = dependsOn[h].nextSetBit(0); x >= 0 && x < axioms.length; x = dependsOn[h].nextSetBit(x + 1))
+      {
+        if (lists[x] == null)
+          lists[x] = new ArrayList<Integer>();
+        lists[x].add(i);
+      }
+    }
+    dependents = new int[axioms.length][];
+    for (int x = 0; x < axioms.length; x++)
+      dependents[x] = AxiomTable.toArray(lists[x]);
+
+    //-- Everything is derived the first time around.
+    stale = new boolean[heads.length];
+    Arrays.fill(stale, true);
+    anyStale = true;
+  }
+
+  /** To make a copy of this object for a copy of the state of the world,
+   *  sharing everything but what is stale.
+  */
+  private MaterializedAxioms(MaterializedAxioms other)
+  {
+    axioms = other.axioms;
+    materialized = other.materialized;
+    heads = other.heads;
+    queries = other.queries;
+    dependents = other.dependents;
+    stale = other.stale.clone();
+    anyStale = other.anyStale;
+  }
+
+  /** To make a copy of this object for a copy of the state of the world.
+  */
+  MaterializedAxioms copy()
+  {
+    return new MaterializedAxioms(this);
+  }
+
+  /** To take over from the object this one replaces which of the heads
+   *  both materialize need not be derived again, because their atoms are
+   *  already in the state.
+  */
+  void keepDerived(MaterializedAxioms other)
+  {
+    anyStale = false;
+    for (int i = 0; i < heads.length; i++)
+    {
+      boolean derived = false;
+      for (int j = 0; j < other.heads.length; j++)
+      {
+        if (other.heads[j] == heads[i])
+          derived = !other.stale[j];
+      }
+      stale[i] = !derived;
+      anyStale |= stale[i];
+    }
+  }
+
+  /** To make the most general atom with a given head, with a distinct
+   *  variable for each argument.
+  */
+  private Predicate query(int h)
+  {
+    int arity = -1;
+    for (Axiom ax : axioms[h])
+    {
+      final Term param = ax.getHead().getParam();
+      if (!(param instanceof TermTuple) ||
+          (arity != -1 && ((TermTuple)param).size() != arity))
+        throw new IllegalArgumentException("The axioms for head " + h +
+            " do not all prove atoms with the same number of arguments.");
+      arity = ((TermTuple)param).size();
+    }
+
+    final Term[] vars = new Term[arity];
+    for (int i = 0; i < arity; i++)
+      vars[i] = new TermVariable(i);
+    return new Predicate(h, arity, new TermTuple(vars));
+  }
+
+  /** To get the materialized heads.
+  */
+  int[] getHeads()
+  {
+    return heads.clone();
+  }
+
+  /** Whether or not a given head is materialized, in which case the axioms
+   *  for it must not be used to prove the atoms with that head.
+  */
+  boolean contains(int head)
+  {
+    return head >= 0 && head < materialized.length && materialized[head];
+  }
+
+  /** To mark the materialized heads that depend on a given head as stale,
+   *  because an atom with that head has been added or deleted.
+  */
+  void changed(int head)
+  {
+    if (head < 0 || head >= dependents.length)
+      return;
+    for (int i : dependents[head])
+    {
+      stale[i] = true;
+      anyStale = true;
+    }
+  }
+
+  /** Whether or not some materialized head must be derived again before the
+   *  next atom is looked up.
+  */
+  boolean isStale()
+  {
+    return anyStale && !updating;
+  }
+
+  /** To mark all the materialized heads as stale.
+  */
+  void clear()
+  {
+    Arrays.fill(stale, true);
+    anyStale = true;
+  }
+
+  /** To derive the stale heads again.
+   *
+   *  @param state
+   *          the state of the world.
+   *  @param delAdd
+   *          the changes of the operator being applied, to which the atoms
+   *          deleted and added are added, or <code>null</code> if they are
+   *          not to be undone.
+  */
+  @SuppressWarnings("rawtypes")
+  void update(State state, Vector[] delAdd)
+  {
+    if (!anyStale || updating)
+      return;
+
+    updating = true;
+    try
+    {
+      //-- Deriving a head may make the heads that depend on it stale, but
+      //-- those come after it.
+      for (int i = 0; i < heads.length; i++)
+      {
+        if (stale[i])
+        {
+          derive(state, i, delAdd);
+          stale[i] = false;
+        }
+      }
+      anyStale = false;
+    }
+    finally
+    {
+      updating = false;
+    }
+  }
+
+  /** To derive a materialized head again, deleting the atoms that are no
+   *  longer proven and adding those that are newly proven.
+  */
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  private void derive(State state, int i, Vector[] delAdd)
+  {
+    final int h = heads[i];
+    final Predicate q = queries[i];
+
+    //-- Each axiom has a single branch, so what they prove about the most
+    //-- general atom is what they prove about each atom on its own.
+    final LinkedHashSet<Term> proven = new LinkedHashSet<Term>();
+    for (Axiom ax : axioms[h])
+    {
+      final Term[] binding = ax.unify(q);
+      if (binding == null)
+        continue;
+
+      final Precondition pre = ax.getIterator(state, binding, 0);
+      Term[] nextB;
+      while ((nextB = pre.nextBinding(state)) != null)
+      {
+        Term.merge(nextB, binding);
+        final Term t = ax.getHead().getParam().bind(nextB);
+        if (!t.isGround())
+          throw new IllegalStateException("The axiom " + ax +
+              " proves an atom that is not ground.");
+        proven.add(t);
+      }
+    }
+
+    final ArrayList<Term> gone = new ArrayList<Term>();
+    for (Term t : state.arguments(h))
+    {
+      if (!proven.remove(t))
+        gone.add(t);
+    }
+
+    for (Term t : gone)
+    {
+      final NumberedPredicate np = state.delUndoable(new Predicate(h, 0, t));
+      if (np != null && delAdd != null)
+        delAdd[0].add(np);
+    }
+    for (Term t : proven)
+    {
+      final Predicate p = new Predicate(h, 0, t);
+      if (state.add(p) && delAdd != null)
+        delAdd[1].add(p);
+    }
+  }
+}
@@ -22,6 +22,12 @@ public class NumberedPredicate
   */
   private Predicate pre;
 
+  /** When this object represents a deleted atom, the node that held the atom
+   *  in the current state of the world, so that it can be linked back right
+   *  where it was. <code>null</code> otherwise.
+  */
+  private final State.Node<Term> node;
+
   /** To initialize an object of this class. The integer will be set to 1.
    *
    *  @param preIn
@@ -31,6 +37,7 @@ public class NumberedPredicate
   {
     pre = preIn;
     number = 1;
+    node = null;
   }
 
   /** To initialize an object of this class.
@@ -44,6 +51,22 @@ public class NumberedPredicate
   {
     pre = preIn;
     number = numberIn;
+    node = null;
+  }
+
+  /** To initialize an object of this class that represents an atom deleted
+   *  from the current state of the world.
+   *
+   *  @param preIn
+   *          the predicate.
+   *  @param nodeIn
+   *          the node that held the atom in the current state of the world.
+  */
+  NumberedPredicate(Predicate preIn, State.Node<Term> nodeIn)
+  {
+    pre = preIn;
+    number = nodeIn.stamp;
+    node = nodeIn;
   }
 
   /** To decrease the integer by one. This is used when a protection is
@@ -84,6 +107,18 @@ public class NumberedPredicate
     return number;
   }
 
+  /** To get the node that held the deleted atom in the current state of the
+   *  world.
+   *
+   *  @return
+   *          the node, or <code>null</code> if this object does not represent
+   *          an atom deleted by <code>State.delUndoable</code>.
+  */
+  State.Node<Term> getNode()
+  {
+    return node;
+  }
+
   /** To get the parameters of the predicate.
    *
    *  @return
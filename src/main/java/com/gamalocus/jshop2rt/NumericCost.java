@@ -0,0 +1,30 @@
+package com.gamalocus.jshop2rt;
+
+/**
+ * A cost that is a single number, so that the cost of an operator instance
+ * can be added to it and removed from it as a <code>double</code>, without
+ * a term being made for it. {@link Plan} uses this whenever the cost of the
+ * plan is a <code>NumericCost</code>: see 
+ * {@link Operator#getNumericCost(Term[])}.
+ */
+public interface NumericCost extends Cost
+{
+	/**
+	 * Add a given amount to the cost.
+	 * 
+	 * @param amount
+	 */
+	void add(double amount);
+
+	/**
+	 * Remove a given amount from the cost.
+	 * 
+	 * @param amount
+	 */
+	void remove(double amount);
+
+	/**
+	 * @return The cost as a number.
+	 */
+	double getValue();
+}
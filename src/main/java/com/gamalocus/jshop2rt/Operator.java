@@ -24,6 +24,15 @@ public abstract class Operator extends DomainElement
   */
   private final Term cost;
 
+  /** Whether or not the cost of this operator is a number, rather than
+   *  something that depends on the binding.
+  */
+  private final boolean costIsConstant;
+
+  /** The cost of this operator, if it is a number.
+  */
+  private final double constantCost;
+
   /** Represents the delete list in case it is a real list and not a variable.
   */
   private DelAddElement[] del;
@@ -56,6 +65,8 @@ public abstract class Operator extends DomainElement
     delVarIdx = delVarIdxIn;
     addVarIdx = addVarIdxIn;
     cost = costIn;
+    costIsConstant = costIn instanceof TermNumber;
+    constantCost = costIsConstant ? ((TermNumber)costIn).getNumber() : 0;
   }
 
   /** This function is used to apply this operator to a given state.
@@ -71,7 +82,9 @@ public abstract class Operator extends DomainElement
    *          operator. This data can be used later in case of a backtrack to
    *          undo these changes.
    *          
-   *          The array elements are initialized by {@link #apply(Term[], State, Vector[])}.
+   *          The array elements are initialized by {@link #apply(Term[], State, Vector[])},
+   *          or emptied if they are already there, so that the same array
+   *          can be passed again once the changes have been undone.
    *  @return
    *          <code>true</code> if the operator was applicable,
    *          <code>false</code> otherwise. An operator is not applicable when
@@ -79,24 +92,30 @@ public abstract class Operator extends DomainElement
   */
   public boolean apply(Term[] binding, State s, Vector[] delAdd)
   {
-    //-- Initialze the 'delAdd' array.
-    delAdd[0] = new Vector();
-    delAdd[1] = new Vector();
-    delAdd[2] = new Vector();
-    delAdd[3] = new Vector();
+    //-- Initialze the 'delAdd' array, emptying the vectors that are already
+    //-- there rather than making new ones.
+    for (int i = 0; i < 4; i++)
+      if (delAdd[i] == null)
+        delAdd[i] = new Vector();
+      else
+        delAdd[i].clear();
+
+    //-- The materialized atoms that have gone stale before this operator
+    //-- stay derived again after a backtrack.
+    s.updateMaterialized(null);
 
     //-- If the delete list is a variable,
     if (delVarIdx != -1)
     {
       //-- Find what that variable is bound to.
-      List l = ((TermList)binding[delVarIdx]).getList();
+      List l = ((TermList)TermList.of(binding[delVarIdx])).getList();
 
       //-- Iterate over the elements of the delete list.
       while (l != null)
       {
         //-- Each element of the list should be a Predicate. Make that
         //-- Predicate.
-        Predicate p = ((TermList)l.getHead()).toPredicate(0);
+        Predicate p = ((TermList)TermList.of(l.getHead())).toPredicate(0);
 
         //-- If this atom is protected in the current state of the world, it
         //-- can not be deleted, and therefore this operator can not be
@@ -104,11 +123,11 @@ public abstract class Operator extends DomainElement
         if (s.isProtected(p))
           return false;
 
-        //-- To store the index of the deleted atom.
-        int index;
+        //-- To store the deleted atom and where it was deleted from.
+        NumberedPredicate deleted;
 
         //-- Try to delete the atom from the current state of the world.
-        if ((index = s.del(p)) != -1)
+        if ((deleted = s.delUndoable(p)) != null)
           //-- If the atom was really deleted from the current state of the
           //-- world (i.e., it was there before), add it to the list of deleted
           //-- atoms so that in case of a backtrack it can be added back. Also
@@ -119,7 +138,7 @@ public abstract class Operator extends DomainElement
           //-- backtrack happens, the data strucutures should look exactly as
           //-- they were before the backtracked decision to apply this operator
           //-- was made.
-          delAdd[0].add(new NumberedPredicate(p, index));
+          delAdd[0].add(deleted);
 
         l = l.getRest();
       }
@@ -140,14 +159,14 @@ public abstract class Operator extends DomainElement
     if (addVarIdx != -1)
     {
       //-- Find what that variable is bound to.
-      List l = ((TermList)binding[addVarIdx]).getList();
+      List l = ((TermList)TermList.of(binding[addVarIdx])).getList();
 
       //-- Iterate over the elements of the add list.
       while (l != null)
       {
         //-- Each element of the list should be a Predicate. Make that
         //-- Predicate.
-        Predicate p = ((TermList)l.getHead()).toPredicate(0);
+        Predicate p = ((TermList)TermList.of(l.getHead())).toPredicate(0);
 
         //-- Try to add the resulting (presumably ground) atom to the current
         //-- state of the world.
@@ -169,6 +188,10 @@ public abstract class Operator extends DomainElement
         add[i].add(s, binding, delAdd);
     }
 
+    //-- Derive the materialized atoms that depend on what this operator
+    //-- changed, so that they are restored along with it.
+    s.updateMaterialized(delAdd);
+
     return true;
   }
 
@@ -184,6 +207,22 @@ public abstract class Operator extends DomainElement
     return cost.bind(binding);
   }
 
+  /** To get the cost of this operator as a number. No term is made for it
+   *  if it is a number to begin with.
+   *
+   *  @param binding
+   *          the binding to be applied to the cost term.
+   *  @return
+   *          the cost of applying this operator, which must be a number.
+  */
+  public double getNumericCost(Term[] binding)
+  {
+    if (costIsConstant)
+      return constantCost;
+
+    return ((TermNumber)cost.bind(binding)).getNumber();
+  }
+
   /** To set the add list.
    *
    *  @param addIn
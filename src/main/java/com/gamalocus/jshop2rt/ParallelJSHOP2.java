@@ -0,0 +1,582 @@
+package com.gamalocus.jshop2rt;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.Vector;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/** This class searches for a plan with several threads at the same time. The
+ *  options the planner has at a given point of the search (which of the tasks
+ *  to achieve next, and which operator, method, method branch and binding to
+ *  achieve it with) are independent of each other, so the parts of the search
+ *  space below each of them are given to different threads. Each part is
+ *  searched by a {@link JSHOP2} of its own, with its own fork of the state of
+ *  the world (see {@link State#fork()}) and its own copy of the task network.
+ *
+ *  <p>
+ *  A part of the search space is split further only while there are too few
+ *  parts waiting for a thread, so that idle threads get something to do as
+ *  soon as possible without the search space being split more than needed.
+ *  The parts are run by a given <code>Executor</code>. With a work-stealing
+ *  one, such as a <code>ForkJoinPool</code>, the parts split from a part are
+ *  run by the thread that split them unless another thread is idle.
+ *
+ *  <p>
+ *  Each object of this class finds at most one plan: see
+ *  {@link #findPlan(Executor)}.
+ */
+public class ParallelJSHOP2
+{
+  /**
+   * Which plan is returned when there is more than one. See
+   * {@link ParallelJSHOP2#setSearchOrder(SearchOrder)}.
+   */
+  public enum SearchOrder
+  {
+    /**
+     * The first plan in depth-first order, that is, the first plan
+     * {@link JSHOP2} would find. The same plan is found every time, but the
+     * search does not stop until every part of the search space before the
+     * plan has been searched.
+     */
+    DEPTH_FIRST,
+
+    /**
+     * Whichever plan is found first. The search stops as soon as a plan is
+     * found, but which one it is may change from one search to the next.
+     */
+    FIRST_FOUND
+  }
+
+  /**
+   * The number of search nodes a part of the search space is searched for
+   * between two checks whether the search should stop.
+   */
+  private static final int CANCEL_CHECK_INTERVAL = 256;
+
+  /**
+   * A point in the search space: everything a {@link JSHOP2} needs to search
+   * the part of the search space below it.
+   */
+  private static class Node
+  {
+    /**
+     * The task network still to be achieved, which belongs to this node only.
+     */
+    final TaskList tasks;
+
+    /**
+     * The part of <code>tasks</code> the next task must be chosen from, which
+     * is <code>tasks</code> itself if it may be chosen from anywhere.
+     */
+    final TaskList chosenTask;
+
+    /**
+     * The state of the world, which belongs to this node only.
+     */
+    final State state;
+
+    /**
+     * The plan so far, which belongs to this node only.
+     */
+    final Plan plan;
+
+    /**
+     * The number of stack frames {@link JSHOP2} would have pushed to get here.
+     */
+    final int depth;
+
+    /**
+     * The index of the option taken at each point where the search space was
+     * split on the way here. Nodes before this one in depth-first order have
+     * smaller paths, in lexicographic order.
+     */
+    final int[] path;
+
+    Node(TaskList tasks, TaskList chosenTask, State state, Plan plan, int depth, int[] path)
+    {
+      this.tasks = tasks;
+      this.chosenTask = chosenTask != null ? chosenTask : tasks;
+      this.state = state;
+      this.plan = plan;
+      this.depth = depth;
+      this.path = path;
+    }
+  }
+
+  /**
+   * The search of the part of the search space below a node.
+   */
+  private class Search implements Runnable
+  {
+    private final Node node;
+
+    Search(Node node)
+    {
+      this.node = node;
+    }
+
+    public void run()
+    {
+      queued.decrementAndGet();
+      try
+      {
+        search(node);
+      }
+      catch (Throwable t)
+      {
+        fail(t);
+      }
+      finally
+      {
+        if (outstanding.decrementAndGet() == 0)
+          done.countDown();
+      }
+    }
+  }
+
+  /** The domain description for the planning problem.
+   */
+  private final Domain domain;
+
+  /** The initial state of the world, which is never modified.
+   */
+  private final State state;
+
+  /** The task list to be achieved, which is never modified.
+   */
+  private final TaskList tasks;
+
+  /** Maximum recursion depth.
+   */
+  private final int recursionLimit;
+
+  /** Cost of the empty plan.
+   */
+  private final Cost initialCost;
+
+  /** Which plan is returned when there is more than one.
+   */
+  private SearchOrder searchOrder = SearchOrder.DEPTH_FIRST;
+
+  /** The number of parts of the search space that may be waiting for a
+   *  thread before the parts being started are no longer split.
+   */
+  private int parallelism = Runtime.getRuntime().availableProcessors();
+
+  /** The maximum number of times the search space is split on the way to a
+   *  part of it.
+   */
+  private int maxSplitDepth = Integer.MAX_VALUE;
+
+  /** The executor running the search.
+   */
+  private Executor executor;
+
+  /** The number of parts of the search space waiting for a thread.
+   */
+  private final AtomicInteger queued = new AtomicInteger();
+
+  /** The number of parts of the search space given to the executor and not
+   *  yet searched.
+   */
+  private final AtomicInteger outstanding = new AtomicInteger();
+
+  /** Counted down when the last part of the search space has been searched.
+   */
+  private final CountDownLatch done = new CountDownLatch(1);
+
+  /** The number of search nodes expanded so far, by all the threads.
+   */
+  private final AtomicLong expansions = new AtomicLong();
+
+  /** The plan to be returned, if one has been found so far.
+   */
+  private Plan bestPlan;
+
+  /** The path of the node below which <code>bestPlan</code> was found.
+   */
+  private volatile int[] bestPath;
+
+  /** Whether or not the search should stop as soon as possible.
+   */
+  private volatile boolean cancelled = false;
+
+  /** The first exception thrown by a thread searching, if any.
+   */
+  private Throwable failure;
+
+  /** To set up a search for a plan for a given initial task list. The
+   *  parameters mean the same as those of
+   *  {@link JSHOP2#JSHOP2(TaskList, int, Cost, Domain, State)}, but neither
+   *  the task list nor the state of the world is modified by the search.
+   */
+  public ParallelJSHOP2(TaskList tasksIn, int recursionLimitIn, Cost initialCostIn, Domain domainIn, State stateIn)
+  {
+    domain = domainIn;
+    state = stateIn;
+    tasks = tasksIn;
+    recursionLimit = recursionLimitIn;
+    initialCost = initialCostIn;
+
+    //-- Share the ground terms of the state with those of the domain.
+    if (state.getTermFactory() == null)
+      state.setTermFactory(domain.getTermFactory());
+  }
+
+  /**
+   * @param order Which plan to return when there is more than one. The
+   * default is {@link SearchOrder#DEPTH_FIRST}.
+   */
+  public void setSearchOrder(SearchOrder order)
+  {
+    searchOrder = order;
+  }
+
+  /**
+   * Choose how finely the search space is split.
+   *
+   * @param parallelismIn The number of threads of the executor. Parts of the
+   * search space are split until there are this many of them waiting for a
+   * thread. The default is the number of processors.
+   * @param maxSplitDepthIn The maximum number of times the search space is
+   * split on the way to a part of it. The default is no limit.
+   */
+  public void setSplitting(int parallelismIn, int maxSplitDepthIn)
+  {
+    parallelism = parallelismIn;
+    maxSplitDepth = maxSplitDepthIn;
+  }
+
+  /**
+   * @return The number of search nodes expanded so far, by all the threads.
+   */
+  public long getExpansions()
+  {
+    return expansions.get();
+  }
+
+  /**
+   * Make the search stop as soon as possible. {@link #findPlan(Executor)} then
+   * returns the plan found so far, if any. May be called from any thread.
+   */
+  public void cancel()
+  {
+    cancelled = true;
+  }
+
+  /**
+   * Search for a plan with a thread pool of its own, with one thread for each
+   * processor. See {@link #findPlan(Executor)}.
+   */
+  public Plan findPlan() throws InterruptedException
+  {
+    ExecutorService pool = Executors.newFixedThreadPool(parallelism);
+    try
+    {
+      return findPlan(pool);
+    }
+    finally
+    {
+      pool.shutdownNow();
+    }
+  }
+
+  /**
+   * Search for a plan, and wait until it is found or the search is over.
+   *
+   * @param executorIn Runs the search of each part of the search space.
+   * It must have enough threads to run them at the same time.
+   * @return The plan, or <code>null</code> if there is none, or the search
+   * was cancelled before one was found.
+   * @throws InterruptedException If the calling thread is interrupted while
+   * waiting. The search is then cancelled.
+   */
+  public Plan findPlan(Executor executorIn) throws InterruptedException
+  {
+    if (executor != null)
+      throw new IllegalStateException("A ParallelJSHOP2 can be used only once.");
+    executor = executorIn;
+
+    submit(new Node(tasks.copy(new TaskList[0]), null, state.fork(),
+        new Plan((Cost)initialCost.clone()), 1, new int[0]));
+
+    try
+    {
+      done.await();
+    }
+    catch (InterruptedException e)
+    {
+      cancel();
+      throw e;
+    }
+
+    synchronized (this)
+    {
+      if (failure instanceof RuntimeException)
+        throw (RuntimeException)failure;
+      if (failure instanceof Error)
+        throw (Error)failure;
+      if (failure != null)
+        throw new RuntimeException(failure);
+
+      return bestPlan;
+    }
+  }
+
+  /**
+   * Give the search of the part of the search space below a node to the
+   * executor.
+   */
+  private void submit(Node node)
+  {
+    outstanding.incrementAndGet();
+    queued.incrementAndGet();
+    try
+    {
+      executor.execute(new Search(node));
+    }
+    catch (RejectedExecutionException e)
+    {
+      queued.decrementAndGet();
+      outstanding.decrementAndGet();
+      throw e;
+    }
+  }
+
+  /**
+   * Search the part of the search space below a node. It is split while
+   * there are idle threads, and searched by a {@link JSHOP2} of its own
+   * otherwise.
+   */
+  private void search(Node node)
+  {
+    ArrayList<Node> children = new ArrayList<Node>();
+
+    while (true)
+    {
+      if (isPruned(node.path) || node.depth >= recursionLimit)
+        return;
+
+      if (queued.get() >= parallelism || node.path.length >= maxSplitDepth)
+      {
+        searchSequentially(node);
+        return;
+      }
+
+      children.clear();
+      if (expand(node, children))
+      {
+        found(node.plan, node.path);
+        return;
+      }
+
+      //-- Where there is only one option, there is nothing to split.
+      if (children.size() != 1)
+        break;
+      node = children.get(0);
+    }
+
+    for (int i = 0; i < children.size() && !isPruned(node.path); i++)
+    {
+      Node child = children.get(i);
+      int[] path = new int[node.path.length + 1];
+      System.arraycopy(node.path, 0, path, 0, node.path.length);
+      path[node.path.length] = i;
+
+      submit(new Node(child.tasks, child.chosenTask, child.state, child.plan, child.depth, path));
+    }
+  }
+
+  /**
+   * Search the part of the search space below a node with a {@link JSHOP2}.
+   */
+  private void searchSequentially(Node node)
+  {
+    JSHOP2 planner = new JSHOP2(node.tasks, node.chosenTask, recursionLimit - node.depth + 1,
+        node.plan, domain, node.state);
+    planner.setPlanRetention(JSHOP2.PlanRetention.FIRST, 1);
+
+    try
+    {
+      while (!isPruned(node.path))
+      {
+        switch (planner.run(CANCEL_CHECK_INTERVAL))
+        {
+        case PLAN_FOUND:
+          found(planner.getPlans().getFirst(), node.path);
+          return;
+        case SEARCH_EXHAUSTED:
+        case RECURSION_LIMIT:
+          return;
+        }
+      }
+    }
+    finally
+    {
+      expansions.addAndGet(planner.getExpansions());
+    }
+  }
+
+  /**
+   * Find the options the planner has at a node, in the order {@link JSHOP2}
+   * tries them.
+   *
+   * @param node The node, which is not modified.
+   * @param children Where the nodes the options lead to are added.
+   * @return <code>true</code> if the task network has been achieved, and the
+   * plan of the node is a plan for it.
+   */
+  private boolean expand(Node node, ArrayList<Node> children)
+  {
+    expansions.incrementAndGet();
+
+    //-- The tasks we have the option to achieve right now.
+    LinkedList<TaskList> t0 = node.chosenTask.getFirst();
+
+    if (t0.size() == 0)
+    {
+      if (node.chosenTask == node.tasks)
+        return true;
+
+      //-- The chosen task has just been achieved, so go on with the rest of
+      //-- the task network.
+      children.add(new Node(node.tasks, null, node.state, node.plan, node.depth + 1, node.path));
+      return false;
+    }
+
+    for (TaskList tl : t0)
+    {
+      TaskAtom t = tl.getTask();
+
+      if (t.isPrimitive())
+      {
+        Operator[] o = domain.ops[t.getHead().getHead()];
+
+        for (int j = 0; j < o.length; j++)
+        {
+          Term[] binding = o[j].unify(t.getHead());
+          if (binding == null)
+            continue;
+
+          Precondition p = o[j].getIterator(node.state, binding, 0);
+          Term[] nextB;
+          while ((nextB = p.nextBinding(node.state)) != null)
+          {
+            Term.merge(nextB, binding);
+
+            State childState = node.state.fork();
+            if (!o[j].apply(nextB, childState, new Vector<?>[4]))
+              continue;
+
+            Plan childPlan = (Plan)node.plan.clone();
+            childPlan.append(o[j], nextB);
+
+            //-- Remove the task from the copy of the task list.
+            TaskList[] copied = { tl };
+            TaskList childTasks = node.tasks.copy(copied);
+            copied[0].replace(TaskList.empty);
+
+            children.add(new Node(childTasks, null, childState, childPlan,
+                node.depth + 1, node.path));
+          }
+        }
+      }
+      else
+      {
+        Method[] m = domain.methods[t.getHead().getHead()];
+
+        for (int j = 0; j < m.length; j++)
+        {
+          Term[] binding = m[j].unify(t.getHead());
+          if (binding == null)
+            continue;
+
+          //-- A branch is considered only if there are no satisfiers for the
+          //-- branches before it.
+          boolean found = false;
+          for (int k = 0; k < m[j].getSubs().length && !found; k++)
+          {
+            Precondition p = m[j].getIterator(node.state, binding, k);
+            Term[] nextB;
+            while ((nextB = p.nextBinding(node.state)) != null)
+            {
+              found = true;
+              Term.merge(nextB, binding);
+
+              //-- Decompose the task in the copy of the task list.
+              TaskList[] copied = { tl };
+              TaskList childTasks = node.tasks.copy(copied);
+              copied[0].replace(m[j].getSubs()[k].bind(nextB));
+
+              children.add(new Node(childTasks, copied[0], node.state.fork(),
+                  (Plan)node.plan.clone(), node.depth + 1, node.path));
+            }
+          }
+        }
+      }
+    }
+
+    return false;
+  }
+
+  /**
+   * @return Whether the search below the node with the given path can no
+   * longer change the plan to be returned.
+   */
+  private boolean isPruned(int[] path)
+  {
+    if (cancelled)
+      return true;
+
+    int[] best = bestPath;
+    if (best == null)
+      return false;
+
+    return searchOrder == SearchOrder.FIRST_FOUND || compare(path, best) > 0;
+  }
+
+  /**
+   * Remember a plan found below the node with the given path, if it is the
+   * one to be returned.
+   */
+  private synchronized void found(Plan plan, int[] path)
+  {
+    if (bestPath == null ||
+        (searchOrder == SearchOrder.DEPTH_FIRST && compare(path, bestPath) < 0))
+    {
+      bestPlan = plan;
+      bestPath = path;
+    }
+  }
+
+  /**
+   * Stop the search because a thread searching failed.
+   */
+  private synchronized void fail(Throwable t)
+  {
+    if (failure == null)
+      failure = t;
+    cancelled = true;
+  }
+
+  /**
+   * Compare two paths in lexicographic order, that is, in depth-first order
+   * of the nodes they lead to.
+   */
+  private static int compare(int[] a, int[] b)
+  {
+    int n = Math.min(a.length, b.length);
+    for (int i = 0; i < n; i++)
+      if (a[i] != b[i])
+        return a[i] < b[i] ? -1 : 1;
+
+    return a.length - b.length;
+  }
+}
@@ -1,10 +1,16 @@
 package com.gamalocus.jshop2rt;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.util.LinkedList;
 
-/** This class represent a plan as a <code>LinkedList</code> of ground
- *  instances of operators.
+/** This class represent a plan as a sequence of ground instances of
+ *  operators. The sequence is kept as a chain of immutable steps, each of
+ *  which points to the one before it, so that plans that extend the same
+ *  plan share its steps: a plan can be cloned in constant time, however long
+ *  it is.
  *
  *  @author Okhtay Ilghami
  *  @author <a href="http://www.cs.umd.edu/~okhtay">http://www.cs.umd.edu/~okhtay</a>
@@ -14,6 +20,43 @@ public class Plan implements Serializable
 {
   private static final long serialVersionUID = -8781001839646254144L;
 
+  /** A step of a plan, which is never changed once it is made.
+  */
+  private static class Step
+  {
+    /** The operator instance of this step.
+    */
+    final Predicate op;
+
+    /** The step before this one, or <code>null</code> if this is the first
+     *  step.
+    */
+    final Step previous;
+
+    /** The number of steps up to and including this one.
+    */
+    final int size;
+
+    /** The cost of the operator instance of this step as a term, or
+     *  <code>null</code> if it was added as a number.
+    */
+    final Term cost;
+
+    /** The cost of the operator instance of this step as a number, if it
+     *  was added as one.
+    */
+    final double amount;
+
+    Step(Predicate op, Step previous, Term cost, double amount)
+    {
+      this.op = op;
+      this.previous = previous;
+      this.size = previous == null ? 1 : previous.size + 1;
+      this.cost = cost;
+      this.amount = amount;
+    }
+  }
+
   /** The cost of the plan. */
   private final Cost cost;
 
@@ -21,28 +64,30 @@ public class Plan implements Serializable
   */
   final static String endl = System.getProperty("line.separator");
 
-  /** The plan as a <code>LinkedList</code> of ground instances of operators.
+  /** The last step of the plan, or <code>null</code> if the plan is empty.
+   *  Serialized as an array of operator instances, so that long plans can be
+   *  serialized without deep recursion.
   */
-  private final LinkedList<Predicate> ops;
+  private transient Step last;
 
   /** To initialize the plan to an empty list.
   */
   public Plan(Cost initialCost)
   {
-    ops = new LinkedList<Predicate>();
+    last = null;
     cost = initialCost;
   }
 
   /** This function is used by objects of this class to clone themselves.
    *
-   *  @param opsIn
-   *          the operators in the plan.
+   *  @param lastIn
+   *          the last step of the plan.
    *  @param costIn
    *          the cost of the plan.
   */
-  private Plan(LinkedList<Predicate> opsIn, Cost costIn)
+  private Plan(Step lastIn, Cost costIn)
   {
-    ops = opsIn;
+    last = lastIn;
     cost = costIn;
   }
 
@@ -57,29 +102,102 @@ public class Plan implements Serializable
   */
   public Term addOperator(Operator op, Term[] binding)
   {
-    ops.addLast(op.getHead().applySubstitution(binding));
-    
     Term groundCostTerm = op.getCost(binding);
 	cost.add(groundCostTerm);
 
+    last = new Step(op.getHead().applySubstitution(binding), last, groundCostTerm, 0);
+
     return groundCostTerm;
   }
 
-  /** To clone an object of this class.
+  /** To add an operator instance to the end of the plan, remembering its
+   *  cost so that it can be removed with {@link #undo()}. If the cost of the
+   *  plan is a {@link NumericCost}, the cost of the operator instance is
+   *  added as a number, and no term is made for it.
+   *
+   *  @param op
+   *          the operator the instance of which is being added.
+   *  @param binding
+   *          the binding to instantiate the operator.
+  */
+  public void append(Operator op, Term[] binding)
+  {
+    final Predicate instance = op.getHead().applySubstitution(binding);
+
+    if (cost instanceof NumericCost)
+    {
+      double amount = op.getNumericCost(binding);
+      ((NumericCost)cost).add(amount);
+      last = new Step(instance, last, null, amount);
+    }
+    else
+    {
+      Term groundCostTerm = op.getCost(binding);
+      cost.add(groundCostTerm);
+      last = new Step(instance, last, groundCostTerm, 0);
+    }
+  }
+
+  /** To remove the operator instance at the end of the plan, along with its
+   *  cost.
+  */
+  public void undo()
+  {
+    if (last.cost != null)
+      cost.remove(last.cost);
+    else
+      ((NumericCost)cost).remove(last.amount);
+
+    last = last.previous;
+  }
+
+  /** To clone an object of this class. The clone shares the steps of this
+   *  plan, so only the cost is copied.
   */
   public Object clone()
   {
-    return new Plan(new LinkedList<Predicate>(ops), (Cost)cost.clone());
+    return new Plan(last, (Cost)cost.clone());
   }
 
   /** To get the sequence of operators represented by this object.
    *
    *  @return
-   *          A <code>LinkedList</code> of operator instances in this plan.
+   *          A new <code>LinkedList</code> of operator instances in this
+   *          plan, in the order they are to be applied. Changing it does not
+   *          change the plan.
   */
   public LinkedList<Predicate> getOps()
   {
-    return ops;
+    LinkedList<Predicate> retVal = new LinkedList<Predicate>();
+    for (Step s = last; s != null; s = s.previous)
+      retVal.addFirst(s.op);
+
+    return retVal;
+  }
+
+  /** To get the number of operator instances in this plan.
+   *
+   *  @return
+   *          the number of operator instances.
+  */
+  public int size()
+  {
+    return last == null ? 0 : last.size;
+  }
+
+  /** To get the operator instances in this plan as an array.
+   *
+   *  @return
+   *          the operator instances, in the order they are to be applied.
+  */
+  public Predicate[] toArray()
+  {
+    Predicate[] retVal = new Predicate[size()];
+    int i = retVal.length;
+    for (Step s = last; s != null; s = s.previous)
+      retVal[--i] = s.op;
+
+    return retVal;
   }
 
   /** To remove the operator instance at the end of the plan.
@@ -89,7 +207,7 @@ public class Plan implements Serializable
   */
   public void removeOperator(Term opCost)
   {
-    ops.removeLast();
+    last = last.previous;
     cost.remove(opCost);
   }
 
@@ -105,7 +223,7 @@ public class Plan implements Serializable
     String retVal = "Plan cost: " + cost + endl + endl;
 
     //-- Iterate over the operator instances in the plan and print them.
-    for (Predicate p : ops)
+    for (Predicate p : toArray())
       retVal += p.toString(domain, Predicate.Namespace.PRIMITIVE_TASK_ATOM) + endl;
 
     return retVal + "--------------------" + endl;
@@ -115,4 +233,35 @@ public class Plan implements Serializable
 	{
 		return cost;
 	}
+
+  private void writeObject(ObjectOutputStream out) throws IOException
+  {
+    out.defaultWriteObject();
+
+    Term[] costs = new Term[size()];
+    double[] amounts = new double[size()];
+    int i = costs.length;
+    for (Step s = last; s != null; s = s.previous)
+    {
+      costs[--i] = s.cost;
+      amounts[i] = s.amount;
+    }
+
+    out.writeObject(toArray());
+    out.writeObject(costs);
+    out.writeObject(amounts);
+  }
+
+  private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException
+  {
+    in.defaultReadObject();
+
+    Predicate[] ops = (Predicate[])in.readObject();
+    Term[] costs = (Term[])in.readObject();
+    double[] amounts = (double[])in.readObject();
+
+    last = null;
+    for (int i = 0; i < ops.length; i++)
+      last = new Step(ops[i], last, costs[i], amounts[i]);
+  }
 }
@@ -0,0 +1,20 @@
+package com.gamalocus.jshop2rt;
+
+/**
+ * Is told by the planner about each plan it finds that is cheaper than all 
+ * the plans it found before. See {@link JSHOP2#setPlanListener(PlanListener)}.
+ */
+public interface PlanListener
+{
+	/**
+	 * Called when a plan cheaper than all the ones found before it is found,
+	 * from the thread running the planner. The first plan found counts as
+	 * cheaper. The planner may be interrupted from here with 
+	 * {@link JSHOP2#interrupt()}.
+	 * 
+	 * @param planner The planner that found the plan.
+	 * @param plan The plan. It is not changed by the planner afterwards, and 
+	 * is the same object as {@link JSHOP2#getBestPlan()}.
+	 */
+	void planImproved(JSHOP2 planner, Plan plan);
+}
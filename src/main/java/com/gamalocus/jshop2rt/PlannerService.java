@@ -0,0 +1,508 @@
+package com.gamalocus.jshop2rt;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/** This class runs the planners of many agents at the same time on a fixed
+ *  number of threads, all of them sharing one domain. Each planning request
+ *  is run in short time slices: a thread takes the request with the highest
+ *  priority that has waited longest, runs its planner for one slice, and puts
+ *  it back at the end of the line if it is not done. Requests with the same
+ *  priority thus share the threads fairly, and a request never waits for
+ *  more than one slice of each of the requests ahead of it before it is run
+ *  again.
+ *
+ *  <p>
+ *  A request is done when its planner finds a plan or runs out of options,
+ *  or when its time or expansion budget runs out. The time budget of a
+ *  request only tells when it is given up on, not when it is run: requests
+ *  that must be done sooner than others should be given a higher priority.
+ *  The result can be waited for through the request, which is a
+ *  <code>Future</code>, or be handed to a {@link Callback}.
+ */
+public class PlannerService
+{
+  /**
+   * Is told when a planning request is done. See
+   * {@link PlannerService#submit(JSHOP2, int, long, long, Callback)}.
+   */
+  public interface Callback
+  {
+    /**
+     * Called from the thread that ran the last slice of the request, or from
+     * the thread that cancelled it. Must return quickly, since no other
+     * request is run by the thread in the meantime.
+     *
+     * @param request The request, which is done.
+     */
+    void planningDone(Request request);
+  }
+
+  /**
+   * A planning request. Its result is the plan found, or <code>null</code> if
+   * none was found.
+   */
+  public static class Request implements Future<Plan>, Comparable<Request>
+  {
+    /** The planner of the request. Run by one thread at a time.
+     */
+    private final JSHOP2 planner;
+
+    /** Requests with a higher priority are run first.
+     */
+    private final int priority;
+
+    /** When the request was made, as given by <code>System.nanoTime()</code>.
+     */
+    private final long start;
+
+    /** The time after which the request is given up on, in nanoseconds from
+     *  <code>start</code>, or a negative number for no time limit.
+     */
+    private final long nanosBudget;
+
+    /** The number of search nodes the planner may expand in all.
+     */
+    private final long maxExpansions;
+
+    /** To be told when the request is done, or <code>null</code>.
+     */
+    private final Callback callback;
+
+    /** Among requests with the same priority, the one with the smallest
+     *  number is run first. Renumbered each time the request is put back in
+     *  line.
+     */
+    private long sequence;
+
+    /** Why the planner stopped, once the request is done.
+     */
+    private JSHOP2.StopReason stopReason;
+
+    /** The plan found, if any.
+     */
+    private Plan plan;
+
+    /** The exception thrown by the planner, if any.
+     */
+    private Throwable failure;
+
+    /** Whether or not the request was cancelled.
+     */
+    private boolean cancelled = false;
+
+    /** Whether or not a slice of the request is being run, so that the
+     *  planner is only interrupted while it runs.
+     */
+    private boolean running = false;
+
+    /** Counted down when the request is done.
+     */
+    private final CountDownLatch done = new CountDownLatch(1);
+
+    Request(JSHOP2 planner, int priority, long nanosBudget, long maxExpansions, Callback callback)
+    {
+      this.planner = planner;
+      this.priority = priority;
+      this.start = System.nanoTime();
+      this.nanosBudget = nanosBudget;
+      this.maxExpansions = maxExpansions;
+      this.callback = callback;
+    }
+
+    /**
+     * @return The planner of the request. Must not be used by the caller
+     * until the request is done.
+     */
+    public JSHOP2 getPlanner()
+    {
+      return planner;
+    }
+
+    /**
+     * @return Why the planner stopped, or <code>null</code> if the request is
+     * not done, or was cancelled before it was run, or failed.
+     * {@link JSHOP2.StopReason#BUDGET_EXHAUSTED} if the time or expansion
+     * budget of the request ran out.
+     */
+    public synchronized JSHOP2.StopReason getStopReason()
+    {
+      return stopReason;
+    }
+
+    public int compareTo(Request o)
+    {
+      if (priority != o.priority)
+        return priority > o.priority ? -1 : 1;
+      return sequence < o.sequence ? -1 : (sequence == o.sequence ? 0 : 1);
+    }
+
+    public boolean cancel(boolean mayInterruptIfRunning)
+    {
+      synchronized (this)
+      {
+        if (done.getCount() == 0)
+          return false;
+        cancelled = true;
+
+        //-- If a slice is being run, it stops as soon as possible, and the
+        //-- thread running it finishes the request. Otherwise, the request is
+        //-- finished by the next thread that takes it, without running it, so
+        //-- the planner is not interrupted: it would stop right away the next
+        //-- time it is run.
+        if (running)
+          planner.interrupt();
+      }
+      return true;
+    }
+
+    public synchronized boolean isCancelled()
+    {
+      return cancelled;
+    }
+
+    public boolean isDone()
+    {
+      return done.getCount() == 0;
+    }
+
+    public Plan get() throws InterruptedException, ExecutionException
+    {
+      done.await();
+      return getResult();
+    }
+
+    public Plan get(long timeout, TimeUnit unit)
+      throws InterruptedException, ExecutionException, TimeoutException
+    {
+      if (!done.await(timeout, unit))
+        throw new TimeoutException();
+      return getResult();
+    }
+
+    /**
+     * Mark a slice of the request as being run.
+     *
+     * @return <code>false</code> if the request has been cancelled, in which
+     * case no slice must be run.
+     */
+    synchronized boolean startSlice()
+    {
+      if (cancelled)
+        return false;
+      running = true;
+      return true;
+    }
+
+    /**
+     * Mark the slice of the request that was being run as over.
+     */
+    synchronized void endSlice()
+    {
+      running = false;
+
+      //-- The slice may have stopped for some other reason before it saw that
+      //-- it was interrupted.
+      if (cancelled)
+        planner.clearInterrupt();
+    }
+
+    private synchronized Plan getResult() throws ExecutionException
+    {
+      if (cancelled)
+        throw new CancellationException();
+      if (failure != null)
+        throw new ExecutionException(failure);
+      return plan;
+    }
+
+    /**
+     * Mark the request as done, and tell the callback about it.
+     */
+    void finish(JSHOP2.StopReason reason, Throwable t)
+    {
+      synchronized (this)
+      {
+        if (done.getCount() == 0)
+          return;
+
+        //-- A request cancelled while its last slice was being run is
+        //-- cancelled all the same.
+        if (!cancelled)
+        {
+          stopReason = reason;
+          failure = t;
+        }
+        if (stopReason == JSHOP2.StopReason.PLAN_FOUND)
+          plan = planner.getPlans().getLast();
+
+        done.countDown();
+      }
+
+      if (callback != null)
+      {
+        try
+        {
+          callback.planningDone(this);
+        }
+        catch (RuntimeException e)
+        {
+          logger.log(Level.WARNING, "Planning callback failed.", e);
+        }
+      }
+    }
+  }
+
+  private static final Logger logger = Logger.getLogger(PlannerService.class.getName());
+
+  /** The domain shared by all the planners.
+   */
+  private final Domain domain;
+
+  /** The requests waiting for a thread, best first.
+   */
+  private final PriorityBlockingQueue<Request> queue = new PriorityBlockingQueue<Request>();
+
+  /** The number the next request put in line gets.
+   */
+  private final AtomicLong nextSequence = new AtomicLong();
+
+  /** The threads running the requests.
+   */
+  private final Thread[] workers;
+
+  /** The longest a slice of a request may run for, in nanoseconds.
+   */
+  private final long sliceNanos;
+
+  /** Whether or not the service has been shut down. Only set while holding
+   *  <code>lock</code>.
+   */
+  private volatile boolean shutdown = false;
+
+  /** Held while putting a request in line and while shutting the service
+   *  down, so that no request is put in line after the line is emptied.
+   */
+  private final Object lock = new Object();
+
+  /** To start a planner service.
+   *
+   *  @param domainIn
+   *          the domain shared by all the planners, which must not be
+   *          modified while the service is running.
+   *  @param threads
+   *          the number of threads running the planners.
+   *  @param sliceNanosIn
+   *          the longest a slice of a request may run for, in nanoseconds.
+   *          The shorter it is, the sooner each request gets its turn, and the
+   *          more time is spent switching between requests.
+   */
+  public PlannerService(Domain domainIn, int threads, long sliceNanosIn)
+  {
+    domain = domainIn;
+    sliceNanos = sliceNanosIn;
+
+    workers = new Thread[threads];
+    for (int i = 0; i < threads; i++)
+    {
+      workers[i] = new Thread(new Runnable() {
+        public void run()
+        {
+          work();
+        }
+      }, String.format("PlannerService-%d", i));
+      workers[i].setDaemon(true);
+      workers[i].start();
+    }
+  }
+
+  /**
+   * @return The domain shared by all the planners.
+   */
+  public Domain getDomain()
+  {
+    return domain;
+  }
+
+  /**
+   * Ask for a plan for a given task list, in a given state of the world.
+   * The parameters that are not described here mean the same as those of
+   * {@link JSHOP2#JSHOP2(TaskList, int, Cost, Domain, State)} and
+   * {@link #submit(JSHOP2, int, long, long, Callback)}.
+   *
+   * @return The request.
+   */
+  public Request submit(TaskList tasks, int recursionLimit, Cost initialCost, State state,
+      int priority, long nanosBudget, long maxExpansions, Callback callback)
+  {
+    return submit(new JSHOP2(tasks, recursionLimit, initialCost, domain, state),
+        priority, nanosBudget, maxExpansions, callback);
+  }
+
+  /**
+   * Ask for a plan from a given planner, which may have been set up in ways
+   * {@link #submit(TaskList, int, Cost, State, int, long, long, Callback)}
+   * can not, for example in the branch-and-bound mode. The request is done
+   * when the planner finds a plan. To look for another one, submit the same
+   * planner again once the request is done.
+   *
+   * @param planner The planner, which must use the domain of this service,
+   * and must not be used by the caller until the request is done.
+   * @param priority Requests with a higher priority are run first. Requests
+   * with the same priority share the threads.
+   * @param nanosBudget The time after which the request is given up on, in
+   * nanoseconds from now, or a negative number for no time limit. Includes
+   * the time the request waits for a thread.
+   * @param maxExpansions The number of search nodes the planner may expand
+   * in all, or <code>Long.MAX_VALUE</code> for no limit.
+   * @param callback To be told when the request is done, or <code>null</code>.
+   * @return The request.
+   */
+  public Request submit(JSHOP2 planner, int priority, long nanosBudget, long maxExpansions,
+      Callback callback)
+  {
+    //-- The expansion budget is counted from the expansions the planner has
+    //-- made so far, and has no limit if the total does not fit in a long.
+    final long expansions = planner.getExpansions();
+    Request request = new Request(planner, priority, nanosBudget,
+        maxExpansions > Long.MAX_VALUE - expansions ? Long.MAX_VALUE : expansions + maxExpansions,
+        callback);
+    if (!enqueue(request))
+    {
+      request.cancel(false);
+      request.finish(null, null);
+    }
+    return request;
+  }
+
+  /**
+   * Stop the threads of the service. The requests that are not done are
+   * cancelled.
+   */
+  public void shutdown()
+  {
+    synchronized (lock)
+    {
+      shutdown = true;
+    }
+    for (Thread t : workers)
+      t.interrupt();
+
+    Request r;
+    while ((r = queue.poll()) != null)
+    {
+      r.cancel(false);
+      r.finish(null, null);
+    }
+  }
+
+  /**
+   * Put a request at the end of the line of the requests with its priority.
+   * 
+   * @return <code>false</code> if the service has been shut down, in which
+   * case the request is not put in line.
+   */
+  private boolean enqueue(Request request)
+  {
+    synchronized (lock)
+    {
+      if (shutdown)
+        return false;
+      request.sequence = nextSequence.getAndIncrement();
+      queue.add(request);
+      return true;
+    }
+  }
+
+  /**
+   * Run requests until the service is shut down.
+   */
+  private void work()
+  {
+    while (!shutdown)
+    {
+      Request request;
+      try
+      {
+        request = queue.take();
+      }
+      catch (InterruptedException e)
+      {
+        break;
+      }
+
+      runSlice(request);
+    }
+  }
+
+  /**
+   * Run a slice of a request, and put it back in line if it is not done.
+   */
+  private void runSlice(Request request)
+  {
+    long nanos = sliceNanos;
+    if (request.nanosBudget >= 0)
+    {
+      //-- The time left is worked out from the time that has gone by, so that
+      //-- it does not overflow however large the budget is.
+      long left = request.nanosBudget - (System.nanoTime() - request.start);
+      if (left <= 0)
+      {
+        request.finish(JSHOP2.StopReason.BUDGET_EXHAUSTED, null);
+        return;
+      }
+      nanos = Math.min(nanos, left);
+    }
+
+    if (!request.startSlice())
+    {
+      request.finish(null, null);
+      return;
+    }
+
+    final JSHOP2 planner = request.planner;
+    JSHOP2.StopReason reason;
+    try
+    {
+      reason = planner.runSlice(nanos,
+          request.maxExpansions == Long.MAX_VALUE ?
+              Long.MAX_VALUE : request.maxExpansions - planner.getExpansions(),
+          true);
+    }
+    catch (Throwable t)
+    {
+      request.finish(null, t);
+      return;
+    }
+    finally
+    {
+      request.endSlice();
+    }
+
+    switch (reason)
+    {
+    case BUDGET_EXHAUSTED:
+      if (planner.getExpansions() >= request.maxExpansions)
+        break;
+      if (request.isCancelled() || !enqueue(request))
+      {
+        request.cancel(false);
+        request.finish(null, null);
+      }
+      return;
+    case INTERRUPTED:
+      request.finish(null, null);
+      return;
+    }
+
+    request.finish(reason, null);
+  }
+}
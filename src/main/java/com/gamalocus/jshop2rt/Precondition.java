@@ -154,6 +154,24 @@ public abstract class Precondition
   */
   protected abstract void resetHelper(State state);
 
+  /** To make this iterator iterate over the satisfiers for a different
+   *  unifier, as if it had been made with that unifier in the first place, so
+   *  that it can be used again instead of making a new one. It must be reset
+   *  before it is used. See {@link PreconditionPool}.
+   *
+   *  @param unifier
+   *          the new unifier.
+   *  @return
+   *          <code>true</code> if this iterator can be used with the new
+   *          unifier, <code>false</code> if it can not be reused at all, in
+   *          which case it must be discarded. This default implementation
+   *          returns <code>false</code>.
+  */
+  public boolean setUnifier(Term[] unifier)
+  {
+    return false;
+  }
+
   /** To set the function to be used to sort the possible bindings that satisfy
    *  this logical precondition.
    *
@@ -1,5 +1,7 @@
 package com.gamalocus.jshop2rt;
 
+import java.util.Arrays;
+
 /** This class represents an iterator over all the possible bindings that can
  *  satisfy an assignment logical expression at run time. Note that in this
  *  there is only one such binding.
@@ -24,6 +26,11 @@ public class PreconditionAssign extends Precondition
   */
   private Term term;
 
+  /** The term this assignment logical expression represents, before the
+   *  unifier is applied to it.
+  */
+  private final Term template;
+
   /** The index of the variable to be given a value under this assignment
    *  logical expression.
   */
@@ -45,6 +52,7 @@ public class PreconditionAssign extends Precondition
     //-- pretend that this assignment logical expression is marked ':first'.
     setFirst(true);
 
+    template = termIn;
     term = termIn.bind(unifier);
 
     //-- Initially, this object is not binding any variable, so set all the
@@ -63,6 +71,15 @@ public class PreconditionAssign extends Precondition
     boundT = boundT.bind(binding);
   }
 
+  /** To apply a different unifier to the term.
+  */
+  public boolean setUnifier(Term[] unifier)
+  {
+    term = template.bind(unifier);
+    Arrays.fill(retVal, null);
+    return true;
+  }
+
   /** To return the next satisfier for this assignment logical expression.
   */
   protected Term[] nextBindingHelper(State state)
@@ -24,7 +24,12 @@ public class PreconditionAtomic extends Precondition
   /** The predicate this atomic logical expression represents, without any
    *  subsequent bindings applied to it.
   */
-  private final Predicate p;
+  private Predicate p;
+
+  /** The predicate this atomic logical expression represents, before the
+   *  unifier is applied to it.
+  */
+  private final Predicate template;
 
   /** To initialize this atomic logical expression.
    *
@@ -39,9 +44,18 @@ public class PreconditionAtomic extends Precondition
     //-- once, so the default for the 'isFirstCall' flag is false.
     setFirst(false);
 
+    template = pIn;
     p = pIn.applySubstitution(unifier);
   }
 
+  /** To apply a different unifier to the predicate.
+  */
+  public boolean setUnifier(Term[] unifier)
+  {
+    p = template.applySubstitution(unifier);
+    return true;
+  }
+
   /** To bind the assignment logical expression to some binding.
   */
   public void bind(Term[] binding)
@@ -66,8 +80,8 @@ public class PreconditionAtomic extends Precondition
   */
   protected void resetHelper(State state)
   {
-    //-- Reset the iterator.
-    e = state.iterator(p);
+    //-- Reset the iterator, reusing the one there is if possible.
+    e = state.iterator(p, e);
 
     //-- Forget all the subsequent bindings.
     boundP = p;
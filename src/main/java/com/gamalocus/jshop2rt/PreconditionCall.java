@@ -1,5 +1,7 @@
 package com.gamalocus.jshop2rt;
 
+import java.util.Arrays;
+
 /** This class represents an iterator over all the possible bindings that can
  *  satisfy a call logical expression at run time. Note that in this case there
  *  is at most one such binding.
@@ -24,6 +26,11 @@ public class PreconditionCall extends Precondition
   */
   private Term term;
 
+  /** The term this call logical expression represents, before the unifier is
+   *  applied to it.
+  */
+  private final Term template;
+
   /** To initialize this call logical expression.
    *
    *  @param termIn
@@ -37,6 +44,7 @@ public class PreconditionCall extends Precondition
     //-- is marked ':first'.
     setFirst(true);
 
+    template = termIn;
     term = termIn.bind(unifier);
 
     //-- Initially, this object is not binding any variable, so set all the
@@ -53,6 +61,15 @@ public class PreconditionCall extends Precondition
     boundT = boundT.bind(binding);
   }
 
+  /** To apply a different unifier to the term.
+  */
+  public boolean setUnifier(Term[] unifier)
+  {
+    term = template.bind(unifier);
+    Arrays.fill(retVal, null);
+    return true;
+  }
+
   /** To return the next satisfier for this call logical expression.
   */
   protected Term[] nextBindingHelper(State state)
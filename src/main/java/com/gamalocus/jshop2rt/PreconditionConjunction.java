@@ -0,0 +1,151 @@
+package com.gamalocus.jshop2rt;
+
+/** Each conjunction at run time in a domain that has not been compiled to
+ *  Java code is represented as an instance of this class. It does what the
+ *  class produced for a conjunction by
+ *  {@link LogicalExpressionConjunction#getInitCode(String)} does, with a loop
+ *  over the conjuncts instead of one nested loop for each conjunct. See
+ *  {@link InterpretedDomain}.
+*/
+public class PreconditionConjunction extends Precondition
+{
+  /** The iterators for the conjuncts, starting at index 1. The first element
+   *  is not used, so that the indices match those of <code>b</code>.
+  */
+  private final Precondition[] p;
+
+  /** The initial binding at index 0, and then the binding found for each
+   *  conjunct, or <code>null</code> if there is none yet.
+  */
+  private final Term[][] b;
+
+  /** What this conjunction is, for <code>toString</code>.
+  */
+  private final String name;
+
+  /** To initialize this conjunction.
+   *
+   *  @param conjuncts
+   *          the iterators for the conjuncts, in the order they are to be
+   *          satisfied.
+   *  @param unifier
+   *          the current unifier.
+   *  @param nameIn
+   *          what this conjunction is, for <code>toString</code>.
+  */
+  public PreconditionConjunction(Precondition[] conjuncts, Term[] unifier, String nameIn)
+  {
+    p = new Precondition[conjuncts.length + 1];
+    System.arraycopy(conjuncts, 0, p, 1, conjuncts.length);
+
+    b = new Term[conjuncts.length + 1][];
+    b[0] = unifier;
+    b[0] = Term.merge(b, 1);
+
+    name = nameIn;
+
+    //-- A conjunction can be potentially satisfied more than once, so the
+    //-- default for the 'isFirstCall' flag is false.
+    setFirst(false);
+  }
+
+  public void bind(Term[] binding)
+  {
+    b[0] = binding;
+    b[0] = Term.merge(b, 1);
+    p[1].bind(binding);
+    for (int i = 1; i < b.length; i++)
+      b[i] = null;
+  }
+
+  public boolean setUnifier(Term[] unifier)
+  {
+    for (int i = 1; i < p.length; i++)
+      if (!p[i].setUnifier(unifier))
+        return false;
+    b[0] = unifier;
+    b[0] = Term.merge(b, 1);
+    return true;
+  }
+
+  protected Term[] nextBindingHelper(State state)
+  {
+    bestMatch = 0;
+
+    //-- If there is no more binding for the first conjunct, there is no
+    //-- more binding for the conjunction.
+    if (fill(p.length - 1, state) < 0)
+      return null;
+
+    //-- Return the result of the merging of the bindings found for each
+    //-- conjunct, and look for the next binding of the last conjunct next
+    //-- time.
+    Term[] retVal = Term.merge(b, p.length);
+    b[p.length - 1] = null;
+    return retVal;
+  }
+
+  /** To find a binding for a given conjunct, if it does not have one, given
+   *  the bindings for the conjuncts before it, finding new bindings for
+   *  those when it has no more.
+   *
+   *  @param i
+   *          the index of the conjunct.
+   *  @return
+   *          -1 if there is no more binding for the first conjunct, 1 if a
+   *          new binding was found for the conjunct, 0 if it already had one.
+  */
+  private int fill(int i, State state)
+  {
+    int changed = 0;
+
+    while (b[i] == null)
+    {
+      if (i == 1)
+      {
+        b[1] = p[1].nextBinding(state);
+        if (b[1] == null)
+          return -1;
+      }
+      else
+      {
+        //-- If the conjunct before this one has a new binding, start this one
+        //-- over with it.
+        int before = fill(i - 1, state);
+        if (before < 0)
+          return -1;
+        if (before > 0)
+        {
+          p[i].reset(state);
+          p[i].bind(Term.merge(b, i));
+        }
+
+        //-- If no binding is found, try the next binding of the conjunct
+        //-- before this one.
+        b[i] = p[i].nextBinding(state);
+        if (b[i] == null)
+          b[i - 1] = null;
+      }
+
+      if (b[i] != null)
+        bestMatch = Math.max(bestMatch, i);
+      changed = 1;
+    }
+
+    return changed;
+  }
+
+  protected void resetHelper(State state)
+  {
+    for (int i = 1; i < p.length; i++)
+      p[i].reset(state);
+    for (int i = 1; i < b.length; i++)
+      b[i] = null;
+  }
+
+  @Override
+  public String toString()
+  {
+    return name;
+  }
+}
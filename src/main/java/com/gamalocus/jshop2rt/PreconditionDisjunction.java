@@ -0,0 +1,82 @@
+package com.gamalocus.jshop2rt;
+
+/** Each disjunction at run time in a domain that has not been compiled to
+ *  Java code is represented as an instance of this class. It does what the
+ *  class produced for a disjunction by
+ *  {@link LogicalExpressionDisjunction#getInitCode(String)} does. See
+ *  {@link InterpretedDomain}.
+*/
+public class PreconditionDisjunction extends Precondition
+{
+  /** The iterators for the disjuncts.
+  */
+  private final Precondition[] p;
+
+  /** The index of the disjunct being considered.
+  */
+  private int whichClause;
+
+  /** What this disjunction is, for <code>toString</code>.
+  */
+  private final String name;
+
+  /** To initialize this disjunction.
+   *
+   *  @param disjuncts
+   *          the iterators for the disjuncts, in the order they are to be
+   *          considered.
+   *  @param nameIn
+   *          what this disjunction is, for <code>toString</code>.
+  */
+  public PreconditionDisjunction(Precondition[] disjuncts, String nameIn)
+  {
+    p = disjuncts;
+    name = nameIn;
+
+    //-- A disjunction can be potentially satisfied more than once, so the
+    //-- default for the 'isFirstCall' flag is false.
+    setFirst(false);
+  }
+
+  public void bind(Term[] binding)
+  {
+    for (int i = 0; i < p.length; i++)
+      p[i].bind(binding);
+  }
+
+  public boolean setUnifier(Term[] unifier)
+  {
+    for (int i = 0; i < p.length; i++)
+      if (!p[i].setUnifier(unifier))
+        return false;
+    return true;
+  }
+
+  protected Term[] nextBindingHelper(State state)
+  {
+    //-- Return the next binding of the current disjunct, if there is one,
+    //-- otherwise try the next disjunct.
+    while (whichClause < p.length)
+    {
+      Term[] b = p[whichClause].nextBinding(state);
+      if (b != null)
+        return b;
+      whichClause++;
+    }
+
+    return null;
+  }
+
+  protected void resetHelper(State state)
+  {
+    for (int i = 0; i < p.length; i++)
+      p[i].reset(state);
+    whichClause = 0;
+  }
+
+  @Override
+  public String toString()
+  {
+    return name;
+  }
+}
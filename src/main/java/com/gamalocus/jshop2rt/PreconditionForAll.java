@@ -1,5 +1,7 @@
 package com.gamalocus.jshop2rt;
 
+import java.util.Arrays;
+
 /** This class represents an iterator over all the possible bindings that can
  *  satisfy a <code>ForAll</code> logical expression at run time. Note that in
  *  this case there is at most one such binding, and that is the empty binding.
@@ -71,6 +73,14 @@ public class PreconditionForAll extends Precondition
     Term.merge(currentBinding, binding);
   }
 
+  /** To apply a different unifier to the premise and the consequence.
+  */
+  public boolean setUnifier(Term[] unifier)
+  {
+    Arrays.fill(retVal, null);
+    return premise.setUnifier(unifier) && consequence.setUnifier(unifier);
+  }
+
   /** To return the next satisfier for this <code>ForAll</code> logical
    *  expression, which is either <code>null</code> or an empty binding.
   */
@@ -1,5 +1,7 @@
 package com.gamalocus.jshop2rt;
 
+import java.util.Arrays;
+
 /** This class represents an iterator over all the possible bindings that can
  *  satisfy a negation logical expression at run time. Note that in this case
  *  there is at most one such binding, and that is the empty binding.
@@ -50,6 +52,15 @@ public class PreconditionNegation extends Precondition
     p.bind(binding);
   }
 
+  /** To apply a different unifier to the logical expression the negation of
+   *  which this object represents.
+  */
+  public boolean setUnifier(Term[] unifier)
+  {
+    Arrays.fill(retVal, null);
+    return p.setUnifier(unifier);
+  }
+
   /** To return the next satisfier for this negation logical expression.
   */
   protected Term[] nextBindingHelper(State state)
@@ -1,5 +1,7 @@
 package com.gamalocus.jshop2rt;
 
+import java.util.Arrays;
+
 /** This class represents an iterator over all the possible bindings that can
  *  satisfy an empty logical expression at run time. Note that in this case
  *  there is only one such binding, and that is the empty binding.
@@ -39,6 +41,15 @@ public class PreconditionNil extends Precondition
   {
   }
 
+  /** Since this is an empty logical expression, there is nothing to apply the
+   *  unifier to.
+  */
+  public boolean setUnifier(Term[] unifier)
+  {
+    Arrays.fill(retVal, null);
+    return true;
+  }
+
   /** To return the next satisfier for this empty logical expression.
   */
   protected Term[] nextBindingHelper(State state)
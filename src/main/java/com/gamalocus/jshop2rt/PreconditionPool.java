@@ -0,0 +1,89 @@
+package com.gamalocus.jshop2rt;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+
+/** This class keeps the precondition iterators a planner has made, so that
+ *  they can be used again instead of making new ones every time a method or
+ *  an operator is tried. The iterators are kept by the depth of the stack
+ *  frame that uses them, and by the domain element and the branch they were
+ *  made for. A stack frame uses only one iterator at a time, and it is done
+ *  with it before it asks for another, so an iterator kept for a given depth
+ *  is never in use when it is asked for again.
+ *
+ *  <p>
+ *  Each planner must have its own pool, since the iterators are not
+ *  thread-safe. See
+ *  {@link DomainElement#getIterator(State, Term[], int, PreconditionPool, int)}.
+*/
+public class PreconditionPool
+{
+  /** The iterators, indexed by first the depth of the stack frame that uses
+   *  them, and then the domain element they were made for. The array each
+   *  domain element is mapped to is indexed by the branch.
+  */
+  private final ArrayList<IdentityHashMap<DomainElement, Precondition[]>> levels =
+    new ArrayList<IdentityHashMap<DomainElement, Precondition[]>>();
+
+  /** To return the iterator kept for a given depth, domain element and
+   *  branch.
+   *
+   *  @param depth
+   *          the depth of the stack frame that is going to use the iterator.
+   *  @param owner
+   *          the domain element the iterator was made for.
+   *  @param which
+   *          the branch of the domain element the iterator was made for.
+   *  @return
+   *          the iterator, or <code>null</code> if there is none.
+  */
+  public Precondition get(int depth, DomainElement owner, int which)
+  {
+    if (depth >= levels.size())
+      return null;
+
+    Precondition[] p = levels.get(depth).get(owner);
+    if (p == null || which >= p.length)
+      return null;
+
+    return p[which];
+  }
+
+  /** To keep an iterator for a given depth, domain element and branch,
+   *  replacing the one kept before, if any.
+   *
+   *  @param depth
+   *          the depth of the stack frame that is going to use the iterator.
+   *  @param owner
+   *          the domain element the iterator was made for.
+   *  @param which
+   *          the branch of the domain element the iterator was made for.
+   *  @param p
+   *          the iterator.
+  */
+  public void put(int depth, DomainElement owner, int which, Precondition p)
+  {
+    while (depth >= levels.size())
+      levels.add(new IdentityHashMap<DomainElement, Precondition[]>());
+
+    IdentityHashMap<DomainElement, Precondition[]> level = levels.get(depth);
+    Precondition[] ps = level.get(owner);
+    if (ps == null || which >= ps.length)
+    {
+      Precondition[] grown = new Precondition[which + 1];
+      if (ps != null)
+        System.arraycopy(ps, 0, grown, 0, ps.length);
+      ps = grown;
+      level.put(owner, ps);
+    }
+
+    ps[which] = p;
+  }
+
+  /** To forget all the iterators kept so far.
+  */
+  public void clear()
+  {
+    levels.clear();
+  }
+}
@@ -61,13 +61,14 @@ public class Predicate extends CompileTimeObject implements Serializable
    *  @param varCountIn
    *          number of the variables of the predicate.
    *  @param paramIn
-   *          the argument list of the predicate.
+   *          the argument list of the predicate. If it is a list that ends in
+   *          <code>NIL</code>, it is turned into a {@link TermTuple}.
   */
   public Predicate(int headIn, int varCountIn, Term paramIn)
   {
     head = headIn;
     varCount = varCountIn;
-    param = paramIn;
+    param = TermTuple.of(paramIn);
 
     //-- This is a real predicate, so set 'varIdx' to -1.
     varIdx = -1;
@@ -113,7 +114,7 @@ public class Predicate extends CompileTimeObject implements Serializable
 
       //-- Find out the list this variable symbol is mapped to and make up the
       //-- predicate out of that list.
-      return ((TermList)bindings[varIdx]).toPredicate(varCount);
+      return ((TermList)TermList.of(bindings[varIdx])).toPredicate(varCount);
     }
 
     //-- Apply the binding and return the result.
@@ -185,6 +186,39 @@ public class Predicate extends CompileTimeObject implements Serializable
     return null;
   }
 
+  /** To find a unifier that unifies the argument list of another predicate
+   *  with the argument list of this predicate, without allocating anything.
+   *  If there is none, whatever was bound along the way is unbound again, so
+   *  that the frame can be used right away for the next candidate.
+   *
+   *  @param t
+   *          the argument list of the other predicate.
+   *  @param frame
+   *          an empty frame with room for the variables of this predicate,
+   *          which holds the binding that unifies the two argument lists if
+   *          they are unifiable.
+   *  @return
+   *          <code>true</code> if the two argument lists are unifiable,
+   *          <code>false</code> otherwise.
+  */
+  public boolean findUnifier(Term t, BindingFrame frame)
+  {
+    //-- If this predicate is a variable, just map the variable to the whole
+    //-- argument list and return.
+    if (isVar())
+    {
+      frame.bind(varIdx, t);
+      return true;
+    }
+
+    final int mark = frame.mark();
+    if (param.findUnifier(t, frame))
+      return true;
+
+    frame.undo(mark);
+    return false;
+  }
+
   /** To get the head of this predicate.
    *
    *  @return
@@ -242,6 +276,16 @@ public class Predicate extends CompileTimeObject implements Serializable
     return (varIdx != -1);
   }
 
+  /** To get the index of the variable symbol this predicate is.
+   *
+   *  @return
+   *          the index, or -1 if this is a real predicate.
+  */
+  int getVarIdx()
+  {
+    return varIdx;
+  }
+
   /** To set the number of variables for this predicate.
    *
    *  @param varCountIn
@@ -304,8 +348,15 @@ public class Predicate extends CompileTimeObject implements Serializable
     //-- is.
     String s = "(" + headName;
 
-    //-- If the argument list is a list term (which it should be usually):
-    if (param instanceof TermList)
+    //-- If the argument list is an argument list (which it should be usually):
+    if (param instanceof TermTuple)
+    {
+      for (Term t : (TermTuple)param)
+        s += " " + t;
+      return asString = s + ")";
+    }
+    //-- If the argument list is a list term:
+    else if (param instanceof TermList)
       if (param.isNil())
         //-- Converting (a . NIL) to (a).
         return  asString = s + ")";
@@ -1,14 +1,16 @@
 package com.gamalocus.jshop2rt;
 
 import java.io.Serializable;
+import java.util.AbstractCollection;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Vector;
 import java.util.Map.Entry;
 
@@ -56,10 +58,8 @@ public class State implements Serializable
     */
     private boolean found;
 
-    /** When looking at the current state of the world, this variable represents
-     *  the index of the corresponding <code>Vector</code>, when using an axiom
-     *  to prove an atom, this variable represents which branch of that axiom is
-     *  being used.
+    /** When using an axiom to prove an atom, this variable represents which
+     *  branch of that axiom is being used.
     */
     private int index;
 
@@ -69,10 +69,38 @@ public class State implements Serializable
     */
     private Precondition pre;
 
-    /** The <code>Vector</code> in the current state of the world that represents
-     *  the atoms for which we are trying to find satisfiers.
+    /** The set in the current state of the world that holds the atoms for
+     *  which we are trying to find satisfiers.
     */
-    private final Vector<Term> vec;
+    private SetAndList<Term> tails;
+
+    /** When the atoms are looked up through the argument index, the bucket
+     *  that holds the candidate atoms, <code>null</code> otherwise.
+    */
+    private Bucket<Term> bucket;
+
+    /** The last atom that was considered, either in the bucket or in the
+     *  whole set.
+    */
+    private Node<Term> cursor;
+
+    /** Whether or not it has already been decided how to look for the atoms
+     *  (i.e., through the argument index or by scanning all of them).
+    */
+    private boolean started;
+
+    /** The head of the atoms for which we are trying to find satisfiers.
+    */
+    private int head;
+
+    /** The value of <code>generation</code> when <code>tails</code> was last
+     *  known to be the set the current state of the world holds for the head.
+    */
+    private int seenGeneration;
+
+    /** The frame in which the atoms are unified with the predicate.
+    */
+    private BindingFrame frame;
 
     /** Which of the (possibly several) axioms that can be used to prove a
      *  certain atom is being used right now. If none is being used (i.e., we are
@@ -84,33 +112,75 @@ public class State implements Serializable
     /**
      * The predicate we are matching.
      */
-    private final Predicate p; 
+    private Predicate p; 
+
+    /** When the axioms are tabled, the instances of their heads that unify
+     *  with the predicate, once all the atoms in the state have been looked
+     *  at, <code>null</code> otherwise.
+    */
+    private ArrayList<Term> answers;
+
+    /** The index of the next instance in <code>answers</code> to be
+     *  considered.
+    */
+    private int answer;
+
+    /** The instance of the head of the axiom that was proven last.
+    */
+    private Term instance;
 
     /** To initialize this iterator.
      *
-     *  @param vecIn
-     *          The <code>Vector</code> in the current state of the world that
-     *          represents the atoms for which we are trying to find satisfiers.
+     *  @param tailsIn
+     *          The set in the current state of the world that holds the atoms
+     *          for which we are trying to find satisfiers.
     */
-    private MyIterator(Predicate pIn, Vector<Term> vecIn)
+    private MyIterator(Predicate pIn, SetAndList<Term> tailsIn)
+    {
+      init(pIn, tailsIn);
+    }
+
+    /** To make this iterator start over, looking for the satisfiers of a given
+     *  predicate, as if it had just been made. The frame is kept, so that it
+     *  can be reused.
+     *
+     *  @param tailsIn
+     *          The set in the current state of the world that holds the atoms
+     *          for which we are trying to find satisfiers.
+    */
+    private void init(Predicate pIn, SetAndList<Term> tailsIn)
     {
       //-- Initially, no axiom is being considered.
       ax = null;
-
-      //-- Reset the index over the Vector of atoms to be considered.
+      binding = null;
+      found = false;
       index = 0;
 
       //-- Initially, no axiom precondition is being considered.
       pre = null;
 
-      vec = vecIn;
+      tails = tailsIn;
+      bucket = null;
+      cursor = null;
+      started = false;
+      head = pIn.getHead();
+      seenGeneration = generation;
 
       //-- Initially, no axiom is being considered.
       whichAxiom = -1;
+      answers = null;
+      answer = 0;
       
       p = pIn;
     }
 
+    /** To get the state of the world this iterator iterates over.
+    */
+    private State getState()
+    {
+      return State.this;
+    }
+
     /** This function returns the bindings that can satisfy a given precondition
      *  one-by-one.
      *  
@@ -145,30 +215,50 @@ public class State implements Serializable
      */
     public Term[] nextBinding(Predicate p)
     {
-      Term[] nextB;
-
       Term[] retVal;
 
-      Term t;
+      //-- If the state has replaced the set of atoms since last time, carry on
+      //-- from the same place in the new one.
+      if (seenGeneration != generation)
+        rebase();
 
       //-- If we are still looking into the atoms to prove the predicate (i.e.,
       //-- we have not started looking into the axioms),
       if (whichAxiom == -1)
       {
-        //-- Iterate over the appropriate Vector to find atoms that can satisfy
-        //-- the given predicate.
-        // FIXME Speed up by creating map from first argument to predicate and 
-        // getting the right predicate(s) in constant time whenever the first 
-        // argument in p is ground. 
-        while (index < vec.size())
+        //-- The first time around, if some of the arguments of the predicate
+        //-- are ground, find the smallest bucket of the argument index that
+        //-- holds all the atoms that could possibly satisfy it.
+        if (!started)
         {
-          t = (Term)vec.get(index++);
-          retVal = p.findUnifier(t);
+          started = true;
+          if (argumentIndexing && !p.isVar())
+            bucket = tails.select(p.getParam(), writeToken);
+          cursor = (bucket != null) ? bucket : tails.first();
+        }
+
+        //-- The atoms that do not unify are tried in the same frame, so that
+        //-- only a binding that is returned needs an array of its own.
+        if (frame == null || frame.size() != p.getVarCount())
+          frame = new BindingFrame(p.getVarCount());
 
+        //-- If there is such a bucket, iterate over it only.
+        if (bucket != null)
+        {
+          while ((cursor = bucket.next(cursor)) != null)
+          {
+            if (p.findUnifier(cursor.value, frame))
+              return frame.take();
+          }
+        }
+        //-- Otherwise, iterate over the appropriate set to find atoms that can
+        //-- satisfy the given predicate.
+        else while ((cursor = tails.next(cursor)) != null)
+        {
           //-- If this atom can satisfy the given predicate, return the binding
           //-- that unifies the two.
-          if (retVal != null)
-            return retVal;
+          if (p.findUnifier(cursor.value, frame))
+            return frame.take();
         }
 
         //-- We have already looked at all the atoms that could possibly satisfy
@@ -176,6 +266,54 @@ public class State implements Serializable
         whichAxiom = 0;
       }
 
+      //-- If what the axioms prove is kept in the state, it has all been
+      //-- found already.
+      if (materialized != null && materialized.contains(p.getHead()))
+        return null;
+
+      //-- If what the axioms prove is tabled, look it up in the table instead
+      //-- of proving it here.
+      if (axiomTabling && axiomTable().isTabled(p.getHead()))
+      {
+        if (answers == null)
+          answers = axiomTable().answers(State.this, p);
+
+        //-- The list may grow while it is being looked at, if the predicate
+        //-- is being proven further out.
+        while (answer < answers.size())
+        {
+          retVal = p.findUnifier(answers.get(answer++));
+          if (retVal != null)
+            return retVal;
+        }
+        return null;
+      }
+
+      return nextAxiomBinding(p);
+    }
+
+    /** To get the next instance of the head of an axiom that unifies with a
+     *  given predicate, proving it without the table of the axioms.
+     *
+     *  @param p
+     *          the predicate to be satisfied.
+     *  @return
+     *          the instance, or <code>null</code> if there are no more.
+    */
+    Term nextAxiomInstance(Predicate p)
+    {
+      return (nextAxiomBinding(p) != null) ? instance : null;
+    }
+
+    /** To find the next binding that satisfies a given predicate through the
+     *  axioms, once all the atoms in the state have been looked at.
+    */
+    private Term[] nextAxiomBinding(Predicate p)
+    {
+      Term[] nextB;
+
+      Term[] retVal;
+
       while (true)
       {
         //-- If we need to look at a new axiom,
@@ -229,6 +367,8 @@ public class State implements Serializable
             //-- If there is such unifier, return it.
             if (retVal != null)
             {
+              instance = groundAxiomHead.getParam();
+
               //-- The further branches of this axiom must NOT be considered even
               //-- if this branch fails because there has been at least one
               //-- satisfier for this branch of the axiom. Set this variable to
@@ -257,64 +397,420 @@ public class State implements Serializable
         ax = null;
       }
     }
+
+    /** To switch over to the set the current state of the world holds for the
+     *  head now, after the state has made its own copy of the set this
+     *  iterator was looking at.
+     */
+    private void rebase()
+    {
+      seenGeneration = generation;
+
+      final SetAndList<Term> current = atoms.get(head);
+      if (current == null || current == tails)
+        return;
+
+      //-- If some atoms have been considered but not all of them, find where
+      //-- to go on from in the new set.
+      if (started && whichAxiom == -1)
+      {
+        if (bucket != null)
+        {
+          final Bucket<Term> b = current.findBucket(bucket.position, bucket.key, writeToken);
+          if (cursor == bucket)
+            cursor = (b != null) ? b : current.first();
+          else
+            cursor = current.resume(cursor, b);
+          bucket = b;
+        }
+        else if (cursor == tails.first())
+          cursor = current.first();
+        else
+          cursor = current.resume(cursor, null);
+      }
+
+      tails = current;
+    }
   }
   
+  /** A node of a {@link SetAndList}. Besides the element itself, it holds the
+   *  links that thread the element into the list of all the elements of its
+   *  set, and into the buckets of the argument index of its set. When an
+   *  element is deleted, its node keeps its own links, so that in case of a
+   *  backtrack it can be linked right back where it was (i.e., dancing links).
+   */
+  static class Node<T>
+  {
+    /** An empty argument array, shared by all the nodes whose element is not
+     *  an argument list.
+    */
+    private static final Term[] NO_ARGS = new Term[0];
+
+    /** The element held by this node.
+    */
+    final T value;
+
+    /** The arguments of the element.
+    */
+    private final Term[] args;
+
+    /** For each indexed argument position, the previous node in the bucket.
+    */
+    Node<T>[] prev;
+
+    /** For each indexed argument position, the next node in the bucket.
+    */
+    Node<T>[] next;
+
+    /** For each indexed argument position, the bucket this node is in, or
+     *  <code>null</code> if it is not in any bucket at that position.
+    */
+    Bucket<T>[] bucket;
+
+    /** The previous node in the set.
+    */
+    Node<T> left;
+
+    /** The next node in the set.
+    */
+    Node<T> right;
+
+    /** The set this node was made for.
+    */
+    SetAndList<T> set;
+
+    /** Whether or not the element is in the set right now.
+    */
+    boolean linked;
+
+    /** When the element was added to the set, as a number that grows with
+     *  each element added.
+    */
+    int stamp;
+
+    Node(T valueIn)
+    {
+      value = valueIn;
+
+      args = (value instanceof TermTuple) ? ((TermTuple)value).getArgs() : NO_ARGS;
+    }
+
+    /** To get the arguments of the element held by this node, if it is an
+     *  argument list.
+     */
+    Term[] args()
+    {
+      return args;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private void ensureLinks(int k)
+    {
+      if (bucket == null)
+      {
+        final int n = Math.max(args().length, k + 1);
+        prev = new Node[n];
+        next = new Node[n];
+        bucket = new Bucket[n];
+      }
+    }
+
+    /** To link this node at the end of a bucket.
+     */
+    void linkLast(Bucket<T> b)
+    {
+      linkBefore(b, b);
+    }
+
+    /** To link this node into a bucket right before another node of it.
+     */
+    void linkBefore(Node<T> succ, Bucket<T> b)
+    {
+      final int k = b.position;
+      ensureLinks(k);
+      prev[k] = succ.prev[k];
+      next[k] = succ;
+      relink(b);
+    }
+
+    /** To take this node out of its bucket at a given position, keeping its
+     *  own links so that it can be linked back later.
+     */
+    void unlink(int k)
+    {
+      prev[k].next[k] = next[k];
+      next[k].prev[k] = prev[k];
+      bucket[k].size--;
+    }
+
+    /** To link this node back where its own links say it belongs.
+     */
+    void relink(Bucket<T> b)
+    {
+      final int k = b.position;
+      prev[k].next[k] = this;
+      next[k].prev[k] = this;
+      bucket[k] = b;
+      b.size++;
+    }
+  }
+
+  /** A bucket of the argument index of a {@link SetAndList}: the circular list
+   *  of all the nodes that have the same ground term at a given argument
+   *  position. The bucket itself is the sentinel of that list.
+   */
+  static class Bucket<T> extends Node<T>
+  {
+    /** The argument position this bucket is for.
+    */
+    final int position;
+
+    /** The ground term at that position, or <code>null</code> for the bucket
+     *  of the atoms that are not ground there.
+    */
+    final Term key;
+
+    /** The number of nodes in this bucket.
+    */
+    int size;
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    Bucket(int positionIn, Term keyIn)
+    {
+      super(null);
+      position = positionIn;
+      key = keyIn;
+      prev = new Node[positionIn + 1];
+      next = new Node[positionIn + 1];
+      prev[positionIn] = next[positionIn] = this;
+    }
+
+    /** To get the node that comes after a given node of this bucket, skipping
+     *  the nodes that have been deleted since.
+     *
+     *  @return
+     *          the next node, or <code>null</code> if there are none left.
+     */
+    Node<T> next(Node<T> n)
+    {
+      do
+        n = n.next[position];
+      while (n != this && !n.linked);
+
+      return (n == this) ? null : n;
+    }
+  }
+
+  /** The atoms with a given head in the current state of the world. This is
+   *  a set that keeps its elements in the order they were added, as a doubly
+   *  linked list, so that adding an element, deleting an element and putting a
+   *  deleted element back exactly where it was all take constant time.
+   *
+   *  A set may be shared by several states after a {@link State#fork()}, in
+   *  which case none of them may modify it: the first one to do so makes its
+   *  own copy first.
+   */
   public class SetAndList<T> implements Iterable<T>
   {
-    private final HashMap<T, Integer> map;
-    private final Vector<T> list;
+    private final HashMap<T, Node<T>> map;
+
+    /** The sentinel of the circular list of the elements of this set.
+    */
+    private final Node<T> head;
+
+    /** The number of elements in this set.
+    */
+    private int size;
+
+    /** The stamp to be given to the next element added to this set.
+    */
+    private int nextStamp;
+
+    /** The argument index of this set, indexed by argument position. For each
+     *  position that has been indexed, it maps the ground terms found at that
+     *  position to the buckets of atoms that have them there (the key
+     *  <code>null</code> being used for the atoms whose argument at that
+     *  position is not ground). It is <code>null</code> for positions that
+     *  have not been indexed (yet).
+    */
+    private final ArrayList<HashMap<Term, Bucket<T>>> index;
+
+    /** The write token of the state that may modify this set in place, see
+     *  {@link State#writable(int, boolean)}.
+    */
+    private Object owner;
     
     public SetAndList()
     {
-      this.map = new HashMap<T, Integer>();
-      this.list = new Vector<T>();
+      this.map = new HashMap<T, Node<T>>();
+      this.head = new Node<T>(null);
+      this.head.left = this.head.right = this.head;
+      this.index = new ArrayList<HashMap<Term, Bucket<T>>>();
     }
 
-    @SuppressWarnings("unchecked")
     public SetAndList(SetAndList<T> other)
     {
-      this.map = (HashMap<T, Integer>) other.map.clone();
-      this.list = (Vector<T>) other.list.clone();
+      this();
+
+      for (HashMap<Term, Bucket<T>> buckets : other.index)
+        index.add((buckets == null) ? null : new HashMap<Term, Bucket<T>>());
+
+      for (Node<T> n = other.next(other.head); n != null; n = other.next(n))
+        append(n.value, n.stamp);
+      nextStamp = other.nextStamp;
     }
 
     public boolean add(T e)
     {
       if (!map.containsKey(e))
       {
-        map.put(e, list.size());
-        list.add(e);
+        append(e, nextStamp);
+        nextStamp = (nextStamp + 1) & Integer.MAX_VALUE;
         return true;
       }
       return false;
     }
 
+    /** To add an element that is not in the set yet at the end of the list.
+     */
+    private void append(T e, int stamp)
+    {
+      final Node<T> n = new Node<T>(e);
+      n.set = this;
+      n.stamp = stamp;
+      n.left = head.left;
+      n.right = head;
+      map.put(e, n);
+      relink(n);
+
+      for (int k = 0; k < index.size(); k++)
+        if (index.get(k) != null && k < n.args().length)
+          n.linkLast(bucket(k, n.args()[k]));
+    }
+
+    public boolean contains(Object o)
+    {
+      return map.containsKey(o);
+    }
+
     public int remove(Object o)
     {
-      final Integer index = map.remove(o);
-      if (index != null)
-      {
-        // FIXME The indices in the map are not updated on removal. Can be solved
-        // by using a linked list with dancing links rather than a vector.
-        //final int i = index.intValue();
-        final int i = list.indexOf(o);
-        list.remove(i);
-        return i;
-      }
-      return -1;
+      final Node<T> n = removeNode(o);
+      return (n == null) ? -1 : n.stamp;
     }
 
+    /** To remove an element and return its node, so that the removal can be
+     *  undone later by {@link #restore(Node)}.
+     *
+     *  @return
+     *          the node of the element, or <code>null</code> if the element
+     *          was not in the set.
+     */
+    Node<T> removeNode(Object o)
+    {
+      final Node<T> n = map.remove(o);
+      if (n != null)
+        unlink(n);
+      return n;
+    }
+
+    /** To take a node out of the list and the argument index, keeping its own
+     *  links.
+     */
+    private void unlink(Node<T> n)
+    {
+      n.left.right = n.right;
+      n.right.left = n.left;
+      size--;
+
+      if (n.bucket != null)
+        for (int k = 0; k < n.bucket.length; k++)
+          if (n.bucket[k] != null)
+            n.unlink(k);
+
+      n.linked = false;
+    }
+
+    /** To link a node into the list where its own links say it belongs.
+     */
+    private void relink(Node<T> n)
+    {
+      n.left.right = n;
+      n.right.left = n;
+      size++;
+      n.linked = true;
+    }
+
+    /** To get the node that comes after a given node of this set, skipping the
+     *  nodes that have been deleted since.
+     *
+     *  @param n
+     *          the node, or the sentinel of this set to get the first node.
+     *  @return
+     *          the next node, or <code>null</code> if there are none left.
+     */
+    Node<T> next(Node<T> n)
+    {
+      do
+        n = n.right;
+      while (n != head && !n.linked);
+
+      return (n == head) ? null : n;
+    }
+
+    /** To get the sentinel of the list of elements of this set, from which
+     *  iterating with {@link #next(Node)} starts.
+     */
+    Node<T> first()
+    {
+      return head;
+    }
+
+    public int size()
+    {
+      return size;
+    }
+
+    /** @return A copy of the elements of this set, in order.
+     */
     public List<T> getList()
     {
-      return list;
+      return getVector();
     }
     
+    /** @return A copy of the elements of this set, in order.
+     */
     public Vector<T> getVector()
     {
-      if (list instanceof Vector)
-      {
-        return (Vector<T>) list;
-      }
-      return new Vector<T>(list);
+      final Vector<T> list = new Vector<T>(size);
+      for (Node<T> n = next(head); n != null; n = next(n))
+        list.add(n.value);
+      return list;
+    }
+
+    /** @return A view of the elements of this set, in order.
+     */
+    public Collection<T> values()
+    {
+      return new AbstractCollection<T>() {
+        @Override
+        public Iterator<T> iterator()
+        {
+          return SetAndList.this.iterator();
+        }
+
+        @Override
+        public int size()
+        {
+          return size;
+        }
+
+        @Override
+        public boolean contains(Object o)
+        {
+          return map.containsKey(o);
+        }
+      };
     }
 
     /**
@@ -324,76 +820,338 @@ public class State implements Serializable
     {
       return new Iterator<T>() {
 
-        private final Iterator<T> listIterator = list.iterator();
-        private T lastReturned;
+        private Node<T> lastReturned = head;
         
         public boolean hasNext()
         {
-          return listIterator.hasNext();
+          return SetAndList.this.next(lastReturned) != null;
         }
 
         public T next()
         {
-          lastReturned = listIterator.next();
-          return lastReturned;
+          final Node<T> n = SetAndList.this.next(lastReturned);
+          if (n == null)
+            throw new NoSuchElementException();
+          lastReturned = n;
+          return n.value;
         }
 
         public void remove()
         {
-          map.remove(lastReturned);
-          listIterator.remove();
+          if (lastReturned == head || !lastReturned.linked)
+            throw new IllegalStateException();
+          map.remove(lastReturned.value);
+          unlink(lastReturned);
         }
       };
     }
 
+    /** To put an element back into this set, given the number returned by
+     *  {@link #remove(Object)} when it was removed. Prefer
+     *  {@link #restore(Node)}, which takes constant time, whereas this takes
+     *  time linear in the size of the set.
+     */
     public void add(int i, T e)
     {
-      if (!map.containsKey(e))
+      if (map.containsKey(e))
+        throw new IllegalArgumentException(String.format("Element %s is already in the list.", e));
+
+      //-- Put it before the first element that was added after it.
+      Node<T> succ = next(head);
+      while (succ != null && succ.stamp < i)
+        succ = next(succ);
+      if (succ == null)
+        succ = head;
+
+      final Node<T> n = new Node<T>(e);
+      n.set = this;
+      n.stamp = i;
+      n.left = succ.left;
+      n.right = succ;
+      restore(n);
+    }
+
+    /** To put back an element that was removed by {@link #removeNode(Object)},
+     *  exactly where it was before.
+     */
+    void restore(Node<T> n)
+    {
+      if (map.containsKey(n.value))
+        throw new IllegalArgumentException(String.format("Element %s is already in the list.", n.value));
+
+      //-- If the node was removed from another copy of this set, make a node
+      //-- of this set that goes after the same element the other one did.
+      if (n.set != this)
+      {
+        Node<T> left = (n.left.value == null) ? head : map.get(n.left.value);
+        if (left == null)
+          left = head.left;
+
+        final Node<T> m = new Node<T>(n.value);
+        m.set = this;
+        m.stamp = n.stamp;
+        m.left = left;
+        m.right = left.right;
+        n = m;
+      }
+
+      map.put(n.value, n);
+      relink(n);
+
+      for (int k = 0; k < index.size(); k++)
+      {
+        if (index.get(k) == null || k >= n.args().length)
+          continue;
+
+        //-- If the node was in the bucket when it was removed, its own links
+        //-- still say where it was.
+        if (n.bucket != null && n.bucket[k] != null)
+        {
+          n.relink(n.bucket[k]);
+          continue;
+        }
+
+        //-- Otherwise, this position has been indexed since, and the node must
+        //-- be linked in before the first atom in the same bucket that comes
+        //-- after it in the list.
+        final Bucket<T> b = bucket(k, n.args()[k]);
+        Node<T> succ = next(n);
+        while (succ != null &&
+               (succ.bucket == null || k >= succ.bucket.length || succ.bucket[k] != b))
+          succ = next(succ);
+        n.linkBefore((succ == null) ? b : succ, b);
+      }
+    }
+    /** To get the bucket of the argument index at a given position for a
+     *  given term, creating it if it does not exist.
+     */
+    private Bucket<T> bucket(int k, Term t)
+    {
+      final HashMap<Term, Bucket<T>> buckets = index.get(k);
+      final Term key = t.isGround() ? t : null;
+      Bucket<T> b = buckets.get(key);
+      if (b == null)
+      {
+        b = new Bucket<T>(k, key);
+        buckets.put(key, b);
+      }
+      return b;
+    }
+
+    /** To get the bucket of the argument index at a given position for a
+     *  given ground term, without modifying this set unless it may be
+     *  modified in place by the given state.
+     *
+     *  @return
+     *          the bucket (an empty one not in the index if there is no such
+     *          bucket), or <code>null</code> if the position is not indexed and
+     *          this set can not be modified.
+     */
+    Bucket<T> findBucket(int k, Term t, Object token)
+    {
+      //-- A term with no atoms does not get a bucket in the index, or looking
+      //-- up terms that are not there would make the index grow without end.
+      if (owner == token)
+        buildIndex(k);
+      else if (k >= index.size() || index.get(k) == null)
+        return null;
+
+      final Bucket<T> b = index.get(k).get(t);
+      return (b != null) ? b : new Bucket<T>(k, t);
+    }
+
+    /** @return The number of buckets in the argument index of this set at a
+     *  given position.
+     */
+    int buckets(int k)
+    {
+      return (k < index.size() && index.get(k) != null) ? index.get(k).size() : 0;
+    }
+
+    /** To find where to carry on with an iteration over this set that was
+     *  started over another copy of it.
+     *
+     *  @param cursor
+     *          the last node considered by the iteration, in the other copy.
+     *  @param b
+     *          the bucket of this set the iteration is over, or
+     *          <code>null</code> if it is over the whole set.
+     *  @return
+     *          the node of this set that the iteration should go on after.
+     */
+    Node<T> resume(Node<T> cursor, Bucket<T> b)
+    {
+      final int k = (b == null) ? -1 : b.position;
+
+      //-- Find the first element at or after the cursor in the other copy that
+      //-- is also in this one.
+      for (Node<T> n = cursor; n.value != null; n = (k < 0) ? n.right : n.next[k])
+      {
+        final Node<T> m = map.get(n.value);
+        if (m != null)
+        {
+          if (n == cursor)
+            return m;
+          return (k < 0) ? m.left : m.prev[k];
+        }
+      }
+
+      //-- If there is none, the iteration is over.
+      return (k < 0) ? head.left : b.prev[k];
+    }
+
+    /** To build the argument index at a given position, if it has not been
+     *  built yet.
+     */
+    private void buildIndex(int k)
+    {
+      while (index.size() <= k)
+        index.add(null);
+
+      if (index.get(k) != null)
+        return;
+
+      index.set(k, new HashMap<Term, Bucket<T>>());
+
+      for (Node<T> n = next(head); n != null; n = next(n))
+      {
+        if (k < n.args().length)
+          n.linkLast(bucket(k, n.args()[k]));
+      }
+    }
+
+    /** To find the smallest bucket of the argument index that holds all the
+     *  atoms that could possibly unify with a given argument list. The
+     *  positions where the argument list has a ground term are indexed as
+     *  needed, if this set may be modified in place by the given state.
+     *
+     *  @param param
+     *          the argument list.
+     *  @param token
+     *          the write token of the state looking up the argument list.
+     *  @return
+     *          the bucket, or <code>null</code> if the whole set should be
+     *          scanned instead (i.e., when the set is too small to be worth
+     *          indexing, or there are no ground arguments to look up).
+     */
+    Bucket<T> select(Term param, Object token)
+    {
+      if (size < INDEX_THRESHOLD || !(param instanceof TermTuple))
+        return null;
+
+      Bucket<T> best = null;
+      final Term[] args = ((TermTuple)param).getArgs();
+
+      for (int k = 0; k < args.length; k++)
       {
-        map.put(e, i);
-        list.add(i, e);
-        return;
+        final Term t = args[k];
+
+        if (t.isGround())
+        {
+          final Bucket<T> b = findBucket(k, t, token);
+
+          //-- Atoms that are not ground at this position could unify with
+          //-- anything, so this position can not be used to narrow things down.
+          if (b != null)
+          {
+            final Bucket<T> wild = index.get(k).get(null);
+            if ((wild == null || wild.size == 0) &&
+                (best == null || b.size < best.size))
+              best = b;
+          }
+        }
       }
-      
-      throw new IllegalArgumentException(String.format("Element %s is already in the list.", e));
+
+      return best;
     }
  }
 
 
   private static final long serialVersionUID = 8760465415287827089L;
 
+  /** The number of atoms with the same head below which the argument index is
+   *  not used, since scanning them all is cheap enough.
+   */
+  private static final int INDEX_THRESHOLD = 8;
+
   /** The atoms in the current state of the world as an array of
    *  <code>Vector</code>s. The array is indexed by the possible heads (i.e.,
    *  the constant symbol that comes first) of the possible predicates.
    */
-  private final Map<Integer, SetAndList<Term>> atoms = 
+  private Map<Integer, SetAndList<Term>> atoms = 
     new HashMap<Integer, SetAndList<Term>>();
-  
-  /** Log of elements added during planning. 
+
+  /** Whether or not <code>atoms</code> is shared with other states, in which
+   *  case it must be copied before it is modified.
+   */
+  private boolean atomsShared = false;
+
+  /** The token that marks the sets of atoms this state may modify in place.
+   *  It is replaced whenever the state is forked, which makes all the sets
+   *  it had until then read-only.
    */
-  private final Map<Predicate, String> addedAtoms = new HashMap<Predicate, String>();
+  private Object writeToken = new Object();
 
-  /** Log of elements removed during planning. 
+  /** Counts how many times this state has replaced one of its sets of atoms
+   *  by another one, so that iterators can tell when to switch over.
    */
-  private final Map<Predicate, String> removedAtoms = new HashMap<Predicate, String>();
+  private int generation = 0;
+  
+  /** The journal of the changes made while logging is enabled. Nothing is
+   *  recorded unless another mode is chosen.
+   */
+  private ChangeJournal journal = ChangeJournal.create(ChangeJournal.Mode.NONE);
   
   /**
    * If true, we will log additions and removals.
    */
   private boolean logChanges = false;
 
+  /** The factory that interns the arguments of the atoms added to this
+   *  state, or <code>null</code> if they are stored as they are.
+   */
+  private TermFactory termFactory = null;
+
+  /** If true, atoms are looked up through the argument index whenever the
+   *  predicate to be satisfied has ground arguments.
+   */
+  private boolean argumentIndexing = true;
+
   /** The axioms in the domain description as a two-dimensional array. The
    *  array is indexed first by the head of the predicates each axiom can prove
    *  and second by the axioms themselves.
    */
   private final Axiom[][] axioms;
 
-  /** The protections in the current state of the world as an array of
-   *  <code>Vector</code>s. The array is indexed by the heads of protected
-   *  predicates.
+  /** If true, what the axioms prove is remembered until the atoms it depends
+   *  on change. See {@link AxiomTable}.
+   */
+  private boolean axiomTabling = false;
+
+  /** The table of what the axioms prove, made when it is first needed.
+   */
+  private transient AxiomTable axiomTable = null;
+
+  /** The heads whose atoms the axioms prove are kept in this state, or
+   *  <code>null</code> if there are none.
+   */
+  private MaterializedAxioms materialized = null;
+
+  /** Whether or not changes are being undone right now.
+   */
+  private boolean undoing = false;
+
+  /** The protections in the current state of the world, as a multiset: each
+   *  protected predicate is mapped to the predicate along with the number of
+   *  times it is protected.
+   */
+  private Map<Predicate, NumberedPredicate> protections = 
+    new HashMap<Predicate, NumberedPredicate>();
+
+  /** Whether or not <code>protections</code> is shared with other states, in
+   *  which case it must be copied before it is modified.
    */
-  private final Map<Integer, Vector<NumberedPredicate>> protections = 
-    new HashMap<Integer, Vector<NumberedPredicate>>();
+  private boolean protectionsShared = false;
 
   /** To initialize the state of the world.
    *
@@ -410,49 +1168,96 @@ public class State implements Serializable
     axioms = axiomsIn;
   }
 
+  /** To make a copy of this state of the world in constant time. The two
+   *  states share all their atoms and protections until one of them modifies
+   *  them: only then does it copy the atoms with the head it modifies (or the
+   *  protections), so that a copy only pays for what it changes.
+   *
+   *  The copy has its own, empty journal, in the same mode as this one.
+   *  Planning may go on with this state after it is forked, even if a backtrack
+   *  to before the fork is needed later. However, a state and its forks must
+   *  not be used by more than one thread at a time each.
+   *
+   *  @return
+   *          the copy.
+   */
+  public State fork()
+  {
+    State copy = new State(axioms);
+    copy.setJournalMode(journal.getMode());
+    copy.argumentIndexing = argumentIndexing;
+    copy.axiomTabling = axiomTabling;
+    copy.materialized = (materialized == null) ? null : materialized.copy();
+    copy.termFactory = termFactory;
+
+    copy.atoms = atoms;
+    copy.atomsShared = atomsShared = true;
+    copy.protections = protections;
+    copy.protectionsShared = protectionsShared = true;
+
+    //-- All the sets of atoms are shared from now on.
+    writeToken = new Object();
+
+    return copy;
+  }
+
   @Override
   public Object clone()
   {
-    State copy = new State(axioms);
+    return fork();
+  }
 
-    for (Entry<Integer, SetAndList<Term>> e : atoms.entrySet())
-    {
-      copy.atoms.put(e.getKey(), new SetAndList<Term>(e.getValue()));
-    }
+  /** To get the set of atoms with a given head, making sure this state may
+   *  modify it in place.
+   *
+   *  @param head
+   *          the head.
+   *  @param create
+   *          whether or not to create the set if there are no atoms with the
+   *          head yet.
+   *  @return
+   *          the set, or <code>null</code> if there is none and
+   *          <code>create</code> is <code>false</code>.
+   */
+  private SetAndList<Term> writable(int head, boolean create)
+  {
+    SetAndList<Term> tails = atoms.get(head);
+    if (tails != null && tails.owner == writeToken)
+      return tails;
+    if (tails == null && !create)
+      return null;
 
-    for (Entry<Integer, Vector<NumberedPredicate>> e : protections.entrySet())
+    if (atomsShared)
     {
-      copy.protections.put(e.getKey(), new Vector<NumberedPredicate>(e.getValue()));
+      atoms = new HashMap<Integer, SetAndList<Term>>(atoms);
+      atomsShared = false;
     }
 
-    return copy;
+    tails = (tails == null) ? new SetAndList<Term>() : new SetAndList<Term>(tails);
+    tails.owner = writeToken;
+    atoms.put(head, tails);
+    generation++;
+
+    return tails;
   }
-  
-  /**
-   * Get description of location of first caller outside of the given border class.
+
+  /** To make sure this state may modify its protections in place.
    */
-  private static String getCallLocation(Class<?> border)
+  private void writableProtections()
   {
-    StackTraceElement stack[] = new Throwable().getStackTrace();
-    final String borderName = border.getName();
-    
-    // Forward the pointer until we find the border.
-    int i;
-    for (i = 0; i < stack.length && 
-      !stack[i].getClassName().equals(borderName); ++i) {}
-
-    // Forward the pointer past the border.
-    for (i = 0; i < stack.length && 
-      stack[i].getClassName().equals(borderName); ++i) {}
-    
-    return i == stack.length ? "unknown position" :
-      String.format("%s.%s(%s:%d)", 
-          stack[i].getClassName(), 
-          stack[i].getMethodName(),
-          stack[i].getFileName(),
-          stack[i].getLineNumber());
+    if (protectionsShared)
+    {
+      final Map<Predicate, NumberedPredicate> copy = new HashMap<Predicate, NumberedPredicate>();
+      for (NumberedPredicate np : protections.values())
+      {
+        copy.put(np.getPredicate(), 
+            new NumberedPredicate(np.getPredicate(), np.getNumber()));
+      }
+      protections = copy;
+      protectionsShared = false;
+    }
   }
-
+  
   public boolean isLoggingEnabled()
   {
     return logChanges;
@@ -463,56 +1268,289 @@ public class State implements Serializable
     this.logChanges = logChanges;
   }
 
+  public TermFactory getTermFactory()
+  {
+    return termFactory;
+  }
+
+  /** To set the factory that interns the arguments of the atoms added to this
+   *  state from now on, so that they can be compared by reference with the
+   *  ones the same factory interns while planning. The atoms already in this
+   *  state are left as they are.
+   *
+   *  @param termFactory
+   *          the factory, usually {@link Domain#getTermFactory()}, or
+   *          <code>null</code> to store the arguments as they are.
+   */
+  public void setTermFactory(TermFactory termFactory)
+  {
+    this.termFactory = termFactory;
+  }
+
+  public boolean isArgumentIndexingEnabled()
+  {
+    return argumentIndexing;
+  }
+
+  /** To turn the argument index on or off. When it is off, the atoms with the
+   *  same head as the predicate to be satisfied are always scanned one by
+   *  one. The order in which satisfiers are found is the same either way.
+   */
+  public void setArgumentIndexingEnabled(boolean argumentIndexing)
+  {
+    this.argumentIndexing = argumentIndexing;
+  }
+
+  public boolean isAxiomTablingEnabled()
+  {
+    return axiomTabling;
+  }
+
+  /** To turn the tabling of axioms on or off. When it is on, what the axioms
+   *  prove about an atom is remembered until an atom it depends on is added
+   *  or deleted, and a recursive axiom that runs into an atom it is already
+   *  proving uses what it has proven about it so far instead of proving it
+   *  again. It is off by default.
+   *
+   *  <p>
+   *  The satisfiers are found in the same order either way, except that those
+   *  the axioms prove more than once are only found once, and that the axioms
+   *  are used to find all of them before the first one is returned, even for
+   *  a <code>:first</code> precondition.
+   *
+   *  <p>
+   *  What is proven while the atoms it depends on are only partly proven is
+   *  never taken back, so the atoms proven by recursive axioms that depend on
+   *  themselves through a negation, a <code>ForAll</code>, a
+   *  <code>:first</code> precondition or a branch that is only tried when the
+   *  branches before it fail are not tabled (see
+   *  {@link Axiom#getNegativeDependencies()}). They are proven by the axioms
+   *  each time, as when tabling is off, so they do not terminate on cyclic
+   *  data either.
+   */
+  public void setAxiomTablingEnabled(boolean axiomTabling)
+  {
+    this.axiomTabling = axiomTabling;
+    axiomTable = null;
+  }
+
+  /** To get the table of what the axioms prove, making it if needed.
+   */
+  private AxiomTable axiomTable()
+  {
+    if (axiomTable == null)
+      axiomTable = new AxiomTable(axioms);
+    return axiomTable;
+  }
+
+  /** To tell what depends on the atoms with a given head that one of them
+   *  has been added or deleted.
+   */
+  private void changed(int head)
+  {
+    if (axiomTable != null)
+      axiomTable.changed(head);
+
+    //-- Backtracking restores the materialized atoms along with the others.
+    if (materialized != null && !undoing)
+      materialized.changed(head);
+  }
+
+  /** To keep the atoms with a given head that the axioms prove in this state,
+   *  instead of proving them each time they are asked for. They are derived
+   *  again as the atoms they depend on are added and deleted. This pays off
+   *  when they are asked for much more often than the atoms they depend on
+   *  change. See {@link MaterializedAxioms}.
+   *
+   *  The axioms for the head must not be recursive nor have more than one
+   *  branch, and the atoms with the head must not be added or deleted
+   *  otherwise. An atom with the head is found if some axiom for the head
+   *  proves it, as if it had been asked for by itself, and the atoms are
+   *  found in the order they were derived in. Forks of this state keep the
+   *  atoms materialized. The atoms are derived the next time the atoms of
+   *  this state are looked at.
+   *
+   *  @param head
+   *          the head.
+   *  @throws IllegalArgumentException
+   *          if the axioms for the head are recursive, have more than one
+   *          branch, do not tell what they depend on, or prove atoms of
+   *          different lengths.
+   */
+  public void materialize(int head)
+  {
+    if (isMaterialized(head))
+      return;
+
+    final BitSet heads = new BitSet();
+    heads.set(head);
+    if (materialized != null)
+    {
+      for (int h : materialized.getHeads())
+        heads.set(h);
+    }
+    final MaterializedAxioms previous = materialized;
+    materialized = new MaterializedAxioms(axioms, heads);
+    if (previous != null)
+      materialized.keepDerived(previous);
+  }
+
+  /** Whether or not the atoms with a given head that the axioms prove are
+   *  kept in this state. See {@link #materialize(int)}.
+   */
+  public boolean isMaterialized(int head)
+  {
+    return materialized != null && materialized.contains(head);
+  }
+
+  /** To derive again the materialized atoms that have gone stale since the
+   *  last operator was applied, if any, before the atoms are looked at.
+   */
+  private void deriveMaterialized()
+  {
+    if (materialized != null && materialized.isStale())
+      materialized.update(this, null);
+  }
+
+  /** To derive again the materialized atoms whose axioms depend on atoms that
+   *  have been added or deleted, adding the changes to those of an operator
+   *  so that they are undone along with them. Called by
+   *  {@link Operator#apply(Term[], State, Vector[])}.
+   *
+   *  @param delAdd
+   *          the changes of the operator, or <code>null</code> if the changes
+   *          are not to be undone.
+   */
+  @SuppressWarnings("rawtypes")
+  void updateMaterialized(Vector[] delAdd)
+  {
+    if (materialized != null && materialized.isStale())
+      materialized.update(this, delAdd);
+  }
+
+  /** To get an iterator over the instances of the heads of the axioms that
+   *  unify with a given predicate, for the table of the axioms to prove it
+   *  with. See {@link MyIterator#nextAxiomInstance(Predicate)}.
+   */
+  MyIterator axiomIterator(Predicate p)
+  {
+    final MyIterator it = new MyIterator(p, null);
+    it.whichAxiom = 0;
+    return it;
+  }
+
+  /** To choose how the changes made while logging is enabled are recorded.
+   *  Any changes recorded so far are forgotten.
+   *
+   *  By default, the mode is {@link ChangeJournal.Mode#NONE}, so that the
+   *  planner does not record changes nobody looks at. {@link #reset()} and
+   *  {@link #getModifications(Domain)} need another mode.
+   */
+  public void setJournalMode(ChangeJournal.Mode mode)
+  {
+    journal = ChangeJournal.create(mode);
+  }
+
+  public ChangeJournal.Mode getJournalMode()
+  {
+    return journal.getMode();
+  }
+
+  /** To use a given journal to record the changes made while logging is
+   *  enabled.
+   */
+  public void setJournal(ChangeJournal journal)
+  {
+    this.journal = journal;
+  }
+
+  public ChangeJournal getJournal()
+  {
+    return journal;
+  }
+
   /**
-   * Reset to state just before logging was enabled.
+   * Reset to state just before logging was enabled. Does nothing if the
+   * journal mode is {@link ChangeJournal.Mode#NONE}.
    */
   public void reset()
   {
     // Avoid causing concurrent modifications.
     logChanges = false;
     
-    for (Predicate p : addedAtoms.keySet())
-    {
-      del(p);
-    }
-    addedAtoms.clear();
-    
-    for (Predicate p : removedAtoms.keySet())
-    {
-      add(p);
-    }
-    removedAtoms.clear();
+    journal.reset(this);
   }
   
   public ArrayList<String> getModifications(Domain domain)
   {
-    ArrayList<String> mods = new ArrayList<String>();
-    for (Entry<Predicate, String> e : addedAtoms.entrySet())
-    {
-      mods.add("+" + e.getKey().toString(domain, Namespace.LOGICAL_PREDICATE) + " at " + e.getValue());
-    }
-    for (Entry<Predicate, String> e : removedAtoms.entrySet())
-    {
-      mods.add("-" + e.getKey().toString(domain, Namespace.LOGICAL_PREDICATE) + " at " + e.getValue());
-    }
-    Collections.sort(mods, new Comparator<String>() {
-      public int compare(String o1, String o2)
-      {
-        return o1.substring(1).compareTo(o2.substring(1));
-      }
-    });
-    return mods;
+    return journal.getModifications(domain);
   }
   
   /**
-   * @return Argument lists of all predicates with the given head.
+   * @return Argument lists of all predicates with the given head, as list 
+   * terms, the way they were given to {@link #add(Predicate)}.
    */
   public Collection<Term> getArguments(int head)
+  {
+    deriveMaterialized();
+    final Collection<Term> args = arguments(head);
+    return new AbstractCollection<Term>() {
+      @Override
+      public Iterator<Term> iterator()
+      {
+        final Iterator<Term> it = args.iterator();
+        return new Iterator<Term>() {
+          public boolean hasNext()
+          {
+            return it.hasNext();
+          }
+
+          public Term next()
+          {
+            return TermList.of(it.next());
+          }
+
+          public void remove()
+          {
+            throw new UnsupportedOperationException();
+          }
+        };
+      }
+
+      @Override
+      public int size()
+      {
+        return args.size();
+      }
+
+      @Override
+      public boolean contains(Object o)
+      {
+        return args.contains(o);
+      }
+    };
+  }
+
+  /**
+   * @return The number of buckets in the argument index of the atoms with the
+   * given head at the given argument position.
+   */
+  int buckets(int head, int k)
+  {
+    final SetAndList<Term> tails = atoms.get(head);
+    return (tails == null) ? 0 : tails.buckets(k);
+  }
+
+  /**
+   * @return Argument lists of all predicates with the given head, as they are
+   * kept in this state (i.e., mostly as {@link TermTuple}s).
+   */
+  Collection<Term> arguments(int head)
   {
     final SetAndList<Term> tails = atoms.get(head);
     if (tails != null)
     {
-      return Collections.unmodifiableCollection(tails.getList());
+      return Collections.unmodifiableCollection(tails.values());
     }
     else
     {
@@ -539,22 +1577,26 @@ public class State implements Serializable
    */
   public boolean add(Predicate p)
   {
-    //-- Find the right Vector to add this predicate to.
-    SetAndList<Term> tails =  atoms.get(p.getHead());
-    if (tails == null)
-    {
-      tails = new SetAndList<Term>();
-      atoms.put(p.getHead(), tails);
-    }
-    
     //-- First look for the predicate in the Vector. If it is already there,
     //-- do nothing and return false.
-    //-- Otherwise: Add the predicate and return true.
-    final boolean result = tails.add(p.getParam());
+    SetAndList<Term> tails = atoms.get(p.getHead());
+    if (tails != null && tails.contains(p.getParam()))
+    {
+      return false;
+    }
+
+    //-- Otherwise: Add the predicate to the right Vector and return true.
+    final Term param = (termFactory == null) ? p.getParam() : termFactory.intern(p.getParam());
+    final boolean result = writable(p.getHead(), true).add(param);
+
+    if (result)
+    {
+      changed(p.getHead());
+    }
 
-    if (logChanges && result && removedAtoms.remove(p) == null)
+    if (logChanges && result)
     {
-      addedAtoms.put(p, getCallLocation(State.class));
+      journal.added(p);
     }
 
     return result;
@@ -569,26 +1611,20 @@ public class State implements Serializable
    */
   public boolean addProtection(Predicate p)
   {
-    // -- First, find the appropriate Vector to add the protection to.
-    Vector<NumberedPredicate> tails =  protections.get(p.getHead());
-    if (tails == null)
-    {
-      tails = new Vector<NumberedPredicate>();
-      protections.put(p.getHead(), tails);
-    }
+    writableProtections();
 
     // -- If the predicate is already protected, just increase the protection
     // -- counter.
-    for (NumberedPredicate np : tails) {
-      if (p.equals(np.getParam())) {
-        np.inc();
-        return true;
-      }
+    final NumberedPredicate np = protections.get(p);
+    if (np != null)
+    {
+      np.inc();
+      return true;
     }
 
     // -- If this is the first time this predicate is being protected, add it
-    //-- to the Vector.
-    tails.add(new NumberedPredicate(p));
+    //-- to the protections.
+    protections.put(p, new NumberedPredicate(p));
     return true;
   }
 
@@ -596,8 +1632,16 @@ public class State implements Serializable
    */
   public void clear()
   {
-    atoms.clear();
-    protections.clear();
+    atoms = new HashMap<Integer, SetAndList<Term>>();
+    atomsShared = false;
+    protections = new HashMap<Predicate, NumberedPredicate>();
+    protectionsShared = false;
+    generation++;
+
+    if (axiomTable != null)
+      axiomTable.clear();
+    if (materialized != null)
+      materialized.clear();
   }
 
   /** To delete a predicate from the current state of the world.
@@ -605,33 +1649,49 @@ public class State implements Serializable
    *  @param p
    *          the predicate to be deleted.
    *  @return
-   *          the index of the predicate that was deleted in the
-   *          <code>Vector</code> if the predicate was deleted (i.e., it
-   *          existed in the current state of the world), -1 otherwise. This
-   *          index is used in case of a backtrack to undo this deletion by
-   *          inserting the deleted predicate right back where it used to be.
+   *          a non-negative number that tells where the predicate was if it
+   *          was deleted (i.e., it existed in the current state of the world),
+   *          -1 otherwise. Use <code>delUndoable</code> instead to be able to
+   *          undo this deletion in constant time in case of a backtrack.
    */
   public int del(Predicate p)
   {
-    Term t;
+    final NumberedPredicate np = delUndoable(p);
+    return (np == null) ? -1 : np.getNumber();
+  }
 
-    //-- Find the right Vector to delete this predicate from.
+  /** To delete a predicate from the current state of the world so that the
+   *  deletion can be undone in case of a backtrack.
+   *
+   *  @param p
+   *          the predicate to be deleted.
+   *  @return
+   *          if the predicate was deleted (i.e., it existed in the current
+   *          state of the world), the deleted predicate along with where it
+   *          was deleted from, to be passed to <code>undo</code> as one of the
+   *          deleted atoms. <code>null</code> otherwise.
+   */
+  public NumberedPredicate delUndoable(Predicate p)
+  {
+    //-- Find the right Vector to delete this predicate from. If the predicate
+    //-- is not there, there is nothing to delete, so return null.
     SetAndList<Term> vec = atoms.get(p.getHead());
-    if (vec == null)
+    if (vec == null || !vec.contains(p.getParam()))
     {
-      return -1;
+      return null;
     }
     
-    //-- If predicate is found, delete it and return its index.
-    //-- Otherwise: There was nothing to delete, so return -1.
-    final int result = vec.remove(p.getParam());
+    //-- Otherwise: Delete it and return where it was.
+    final Node<Term> n = writable(p.getHead(), false).removeNode(p.getParam());
+
+    changed(p.getHead());
     
-    if (logChanges && result != -1 && addedAtoms.remove(p) == null)
+    if (logChanges)
     {
-      removedAtoms.put(p, getCallLocation(State.class));
+      journal.removed(p);
     }
 
-    return result;
+    return new NumberedPredicate(p, n);
   }
 
   /** To unprotect a given predicate.
@@ -645,36 +1705,21 @@ public class State implements Serializable
    */
   public boolean delProtection(Predicate p)
   {
-    NumberedPredicate np;
-
-    //-- First, find the appropriate Vector to delete the protection from.
-    Vector<NumberedPredicate> tails = protections.get(p.getHead());
-    if (tails == null)
-    {
+    //-- If the predicate is not protected, there is nothing to delete, so
+    //-- return false.
+    if (!protections.containsKey(p))
       return false;
-    }
-
-    Iterator<NumberedPredicate> e = tails.iterator();
 
     //-- Look for the protection.
-    while (e.hasNext())
-    {
-      np = e.next();
-
-      //-- If it is found,
-      if (p.equals(np.getParam()))
-      {
-        //-- Decrease the protection counter for this predicate.
-        if (!np.dec())
-          //-- If the counter drops to zero, remove the protection completely.
-          e.remove();
+    writableProtections();
+    final NumberedPredicate np = protections.get(p);
 
-        return true;
-      }
-    }
+    //-- Decrease the protection counter for this predicate.
+    if (!np.dec())
+      //-- If the counter drops to zero, remove the protection completely.
+      protections.remove(p);
 
-    //-- Nothing was there to delete, so return false.
-    return false;
+    return true;
   }
 
   /** To check if a predicate is protected.
@@ -687,21 +1732,7 @@ public class State implements Serializable
    */
   public boolean isProtected(Predicate p)
   {
-    //-- First, find the appropriate Vector to look for the protection.
-    Vector<NumberedPredicate> tails = protections.get(p.getHead());
-    if (tails == null)
-    {
-      return false;
-    }
-
-    //-- Iterate over the Vector to find the protection.
-    for (NumberedPredicate np : tails)
-    {
-      if (p.equals(np.getParam()))
-        return true;
-    }
-
-    return false;
+    return protections.containsKey(p);
   }
 
   /** To initialize and return the appropriate iterator when looking
@@ -716,14 +1747,42 @@ public class State implements Serializable
    */
   public MyIterator iterator(Predicate p)
   {
+    return iterator(p, null);
+  }
+
+  /** To initialize and return the appropriate iterator when looking
+   *  for ways to satisfy a given predicate, reusing an iterator that is no
+   *  longer needed if possible.
+   *
+   *  @param p
+   *          the predicate.
+   *  @param reuse
+   *          the iterator to be reused, or <code>null</code>. It is reused
+   *          only if it was made for this state of the world, and it must not
+   *          be used for anything else afterwards.
+   *  @return
+   *          the iterator to be used to find the satisfiers for this
+   *          predicate.
+   */
+  public MyIterator iterator(Predicate p, MyIterator reuse)
+  {
+    deriveMaterialized();
+
+    //-- A head with no atoms gets an empty set of its own, which is not put
+    //-- in the state, so that looking it up does not make a fork copy its
+    //-- atoms. If atoms with the head are added later, the iterator switches
+    //-- over to the set made for them (see MyIterator#rebase()).
     final int head = p.getHead();
     SetAndList<Term> tails = atoms.get(head);
     if (tails == null)
-    {
       tails = new SetAndList<Term>();
-      atoms.put(head, tails);
+
+    if (reuse != null && reuse.getState() == this)
+    {
+      reuse.init(p, tails);
+      return reuse;
     }
-    return new MyIterator(p, tails.getVector());
+    return new MyIterator(p, tails);
   }
 
   /** This function is used to print the current state of the world.
@@ -735,6 +1794,7 @@ public class State implements Serializable
 
   public String toString(Domain domain)
   {
+    deriveMaterialized();
     StringBuffer buf = new StringBuffer();
     for (Entry<Integer, SetAndList<Term>> e : atoms.entrySet())
     {
@@ -756,6 +1816,7 @@ public class State implements Serializable
    * @return - An ArrayList<String> representing the state
    */
   public ArrayList<String> getState(Domain domain) {
+    deriveMaterialized();
     ArrayList<String> retval = new ArrayList<String>();
     for (Entry<Integer, SetAndList<Term>> e : atoms.entrySet())
     {
@@ -779,6 +1840,23 @@ public class State implements Serializable
    *          protections and the added protections respectively.
    */
   public void undo(Vector[] delAdd)
+  {
+    undoing = true;
+    try
+    {
+      undoChanges(delAdd);
+    }
+    finally
+    {
+      undoing = false;
+    }
+  }
+
+  /** To undo the changes of a backtracked decision. See
+   *  {@link #undo(Vector[])}.
+   */
+  @SuppressWarnings("rawtypes")
+  private void undoChanges(Vector[] delAdd)
   {
     Iterator e;
 
@@ -789,23 +1867,25 @@ public class State implements Serializable
     //-- when that application is undone, first the added predicates should be
     //-- deleted and then the deleted predicates should be added.
 
-    //-- Deleting the added predicates.
-    e = delAdd[1].iterator();
-    while (e.hasNext())
-      del((Predicate)e.next());
+    //-- Deleting the added predicates, the last one first.
+    for (int i = delAdd[1].size() - 1; i >= 0; i--)
+      del((Predicate)delAdd[1].get(i));
 
     //-- Adding the deleted predicates, exactly where they were deleted from.
     for (int i = delAdd[0].size() - 1; i >= 0; i--)
     {
       np = (NumberedPredicate)delAdd[0].get(i);
 
-      // Currently, no vectors are deleted. so this is guaranteed 
-      // not to cause a NullPointerException.
-      atoms.get(np.getHead()).add(np.getNumber(), np.getParam());
+      if (np.getNode() != null)
+        writable(np.getHead(), true).restore(np.getNode());
+      else
+        writable(np.getHead(), true).add(np.getNumber(), np.getParam());
+
+      changed(np.getHead());
       
-      if (logChanges && removedAtoms.remove(np.getPredicate()) == null)
+      if (logChanges)
       {
-        addedAtoms.put(np.getPredicate(), getCallLocation(State.class));
+        journal.added(np.getPredicate());
       }
     }
 
@@ -146,7 +146,7 @@ class Member implements Calculate
   public Term call(List l)
   {
     Term t = l.getHead();
-    l = ((TermList)l.getRest().getHead()).getList();
+    l = ((TermList)TermList.of(l.getRest().getHead())).getList();
 
     while (l != null)
     {
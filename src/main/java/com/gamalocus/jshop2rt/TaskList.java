@@ -1,6 +1,7 @@
 package com.gamalocus.jshop2rt;
 
 import java.io.Serializable;
+import java.util.Collection;
 import java.util.LinkedList;
 import java.util.Vector;
 import java.util.ArrayList;
@@ -37,6 +38,18 @@ public class TaskList extends CompileTimeObject implements Serializable
   */
   private final TaskAtom task;
 
+  /** In case this task list is ordered and not atomic (or has been
+   *  decomposed), the number of its first subtasks that were known to be
+   *  empty when it was last looked at. Since the tasks of an ordered task
+   *  list are achieved in order, and the decompositions are undone in the
+   *  reverse order they were made, the subtask before them is the first to
+   *  become non-empty again when the planner backtracks, so checking it is
+   *  enough to know whether this number must be made smaller. This keeps the
+   *  achieved tasks of a long ordered task list from being looked at again
+   *  every time the next task is to be chosen.
+  */
+  private transient int skip = 0;
+
   /** To initialize this task list as an empty one (i.e., an ordered non-atomic
    *  task list of length 0). Note that this is a private function in order to
    *  minimize its use. In case an empty task list is needed,
@@ -155,11 +168,24 @@ public class TaskList extends CompileTimeObject implements Serializable
     return retVal;
   }
 
+  /** To do the same thing as {@link #getFirst()}, except that the task atoms
+   *  are put in a given collection, so that it can be used again instead of
+   *  making a new list every time.
+   *
+   *  @param res
+   *          the collection, which is emptied first.
+  */
+  public void getFirst(Collection<TaskList> res)
+  {
+    res.clear();
+    getFirstHelper(res);
+  }
+
   /** The helper function to calculate a <code>LinkedList</code> of the task
    *  atoms we have the option to achieve right now.
    *
    *  @param res
-   *          this <code>LinkedList</code> stores the task atoms we have
+   *          this collection stores the task atoms we have
    *          incrementally calculated so far.
    *  @return
    *          <code>true</code> if there can be no more task atoms we have the
@@ -168,7 +194,7 @@ public class TaskList extends CompileTimeObject implements Serializable
    *          sign for this function to stop calling itself recursively for
    *          more options in case an immediate task atom has been encountered.
   */
-  private boolean getFirstHelper(LinkedList<TaskList> res)
+  private boolean getFirstHelper(Collection<TaskList> res)
   {
     //-- If this is an atomic task:
     if (subtasks == null)
@@ -198,8 +224,9 @@ public class TaskList extends CompileTimeObject implements Serializable
       //-- changed.
       int listSize = res.size();
 
-      //-- For each task in the task list, Call the function recursively.
-      for (int i = 0; i < subtasks.length; i++)
+      //-- For each task in the task list, Call the function recursively,
+      //-- starting with the first one that has not been achieved yet.
+      for (int i = firstUnfinished(); i < subtasks.length; i++)
       {
         if (subtasks[i].getFirstHelper(res))
           //-- If an immediate task atom was found, just return true.
@@ -285,6 +312,10 @@ public class TaskList extends CompileTimeObject implements Serializable
     if (subtasks == null)
       return false;
 
+    //-- An ordered task list is empty if all its subtasks have been achieved.
+    if (ordered)
+      return firstUnfinished() == subtasks.length;
+
     //-- If any of the subtasks is not empty, then the task list is not empty.
     for (int i = 0; i < subtasks.length; i++)
       if (!subtasks[i].isEmpty())
@@ -295,6 +326,27 @@ public class TaskList extends CompileTimeObject implements Serializable
     return true;
   }
 
+  /** To find the first subtask of this ordered, non-atomic task list that
+   *  is not empty, first making sure the subtasks known to be empty still
+   *  are, and then skipping the ones that have become empty since.
+   *
+   *  @return
+   *          the index of the subtask, or the number of subtasks if they are
+   *          all empty.
+  */
+  private int firstUnfinished()
+  {
+    int i = skip;
+
+    while (i > 0 && !subtasks[i - 1].isEmpty())
+      i--;
+    while (i < subtasks.length && subtasks[i].isEmpty())
+      i++;
+
+    skip = i;
+    return i;
+  }
+
   /** This function is used to print this task list.
   */
   public void print(Domain domain)
@@ -307,10 +359,14 @@ public class TaskList extends CompileTimeObject implements Serializable
    *
    *  @param tasksIn
    *          the decomposition to replace the task atom.
+   *
+   *  Decompositions must be undone in the reverse order they were made, as
+   *  the planner does when it backtracks.
   */
   public void replace(TaskList tasksIn)
   {
     subtasks = tasksIn.subtasks;
+    skip = 0;
   }
 
   /** This function sets the number of variables for this task list. This
@@ -385,6 +441,7 @@ public class TaskList extends CompileTimeObject implements Serializable
   {
     //-- Get rid of the subtasks which are the result of the decomposition.
     subtasks = null;
+    skip = 0;
   }
 
   /**
@@ -406,6 +463,43 @@ public class TaskList extends CompileTimeObject implements Serializable
     return retval;
   }
 
+  /** To copy this task list, so that the copy can be decomposed without
+   *  changing this one. The task atoms are shared, since they are never
+   *  changed.
+   *
+   *  @param nodes
+   *          task lists in this one whose copies are needed. Each of them is
+   *          replaced by its copy.
+   *  @return
+   *          the copy.
+  */
+  public TaskList copy(TaskList[] nodes)
+  {
+    TaskList retVal;
+
+    if (task == null)
+      retVal = new TaskList(subtasks.length, ordered);
+    else
+    {
+      retVal = new TaskList(task);
+
+      //-- An atomic task list that has been decomposed has subtasks, too.
+      if (subtasks != null)
+        retVal.subtasks = new TaskList[subtasks.length];
+    }
+
+    if (subtasks != null)
+      for (int i = 0; i < subtasks.length; i++)
+        retVal.subtasks[i] = subtasks[i].copy(nodes);
+    retVal.skip = skip;
+
+    for (int i = 0; i < nodes.length; i++)
+      if (nodes[i] == this)
+        nodes[i] = retVal;
+
+    return retVal;
+  }
+
   /**
    * Returns whether or not this is an ordered task list
    * &lt;Added 5/14/06&gt;
@@ -48,6 +48,26 @@ public abstract class Term extends CompileTimeObject implements Serializable
   */
   public abstract boolean findUnifier(Term t, Term[] binding);
 
+  /** To find a unifier that binds this term to another given term, recording
+   *  the variable symbols it binds in a given frame. By default, this works
+   *  on the frame's terms directly without recording anything on the trail,
+   *  which is enough for terms that never bind a variable symbol themselves;
+   *  the terms that can bind one override this function. On failure, the caller is responsible
+   *  for undoing what was bound.
+   *
+   *  @param t
+   *          the term with which we are finding a unifier.
+   *  @param frame
+   *          the frame the unifier is recorded in.
+   *  @return
+   *          <code>false</code> if the two terms can not be unified,
+   *          <code>true</code> otherwise.
+  */
+  public boolean findUnifier(Term t, BindingFrame frame)
+  {
+    return findUnifier(t, frame.values());
+  }
+
   /** Is this term ground (i.e., has no variables)?
    *
    *  @return
@@ -74,6 +74,20 @@ public class TermCall extends Term
     return new TermCall(boundArgs, calculate, func);
   }
 
+  /** To get the argument list of the call term.
+  */
+  List getArgs()
+  {
+    return args;
+  }
+
+  /** To get the name of the function that is called in this call term.
+  */
+  String getFunc()
+  {
+    return func;
+  }
+
   /** Whether or not another term is equivalent to the result of this call
    *  term.
    */
@@ -96,6 +110,12 @@ public class TermCall extends Term
     return calculate.call(args).findUnifier(t, binding);
   }
 
+  @Override
+  public boolean findUnifier(Term t, BindingFrame frame)
+  {
+    return calculate.call(args).findUnifier(t, frame);
+  }
+
   /** Check the argument list of this call term for variables.
   */
   public boolean isGround()
@@ -0,0 +1,359 @@
+package com.gamalocus.jshop2rt;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+
+/** This class hash-conses ground lists, argument lists and numerical terms, so that there is
+ *  only one copy of each of them: two lists interned by the same factory are
+ *  equal if and only if they are the same object, and their hash codes are
+ *  computed only once. Each domain owns one such factory, see
+ *  {@link Domain#getTermFactory()}.
+ *
+ *  Lists created through {@link #list(Term, Term)} that are not ground
+ *  remember this factory, so that binding them interns the result as soon as
+ *  it is ground. Constant symbols need no interning, since the domain already
+ *  keeps only one copy of each of them.
+ *
+ *  The factory only keeps weak references to the terms it interns, so that
+ *  the terms bound while planning are dropped once nothing uses them any
+ *  more, and a domain shared by many planners for a long time does not keep
+ *  every term they ever made. Since a term is only dropped once there is no
+ *  other copy of it left, there is still only one copy of each term in use.
+ *
+ *  The factory may be used by several threads at the same time.
+ */
+public class TermFactory implements Serializable
+{
+  private static final long serialVersionUID = -3216598419218722052L;
+
+  /** The interned terms, each mapped to itself. This map is replaced rather
+   *  than emptied when the factory is cleared, and every interned list
+   *  remembers the map it was interned in, so that lists interned before and
+   *  after clearing are never mistaken for one another.
+   */
+  private transient volatile Pool pool = new Pool();
+
+  /** To return the only copy of a given numerical term.
+   *
+   *  @param number
+   *          the value of the numerical term.
+   *  @return
+   *          the interned numerical term.
+   */
+  public TermNumber number(double number)
+  {
+    return number(new TermNumber(number), pool);
+  }
+
+  /** To return a list term with the given head and tail. If both are ground,
+   *  the list is interned, otherwise a new list is returned which will be
+   *  interned once it is bound to something ground.
+   *
+   *  @param head
+   *          the head of the list.
+   *  @param tail
+   *          the tail of the list.
+   *  @return
+   *          the list term.
+   */
+  public TermList list(Term head, Term tail)
+  {
+    final Pool p = pool;
+    final Term h = canonical(head, p);
+    if (h != null)
+    {
+      final Term t = canonical(tail, p);
+      if (t != null)
+        return lookup(h, t, p);
+    }
+
+    return new TermList(head, tail, this);
+  }
+
+  /** To return an argument list with the given arguments. If they are all
+   *  ground, the argument list is interned, otherwise a new one is returned
+   *  which will be interned once it is bound to something ground.
+   *
+   *  @param args
+   *          the arguments, which must not be modified afterwards.
+   *  @return
+   *          the argument list.
+   */
+  public TermTuple tuple(Term... args)
+  {
+    final Pool p = pool;
+    final Term[] a = canonical(args, p);
+    if (a != null)
+      return lookup(a, p);
+
+    return new TermTuple(args, this);
+  }
+
+  /** To return the only copy of a given term if it is ground.
+   *
+   *  @param t
+   *          the term.
+   *  @return
+   *          the interned term if the term is a ground list, argument list or
+   *          number, the
+   *          term itself otherwise.
+   */
+  public Term intern(Term t)
+  {
+    final Term retVal = canonical(t, pool);
+    return (retVal == null) ? t : retVal;
+  }
+
+  /** To forget about all the interned terms. The terms interned so far stay
+   *  valid, but they will no longer be shared with the ones interned from now
+   *  on.
+   */
+  public void clear()
+  {
+    pool = new Pool();
+  }
+
+  /** To get the number of interned terms still in use.
+   *
+   *  @return
+   *          the number of interned terms.
+   */
+  public int size()
+  {
+    return pool.size();
+  }
+
+  /** To return the only copy of a given term in a given pool.
+   *
+   *  @return
+   *          the interned term, or <code>null</code> if the term is not
+   *          ground.
+   */
+  private Term canonical(Term t, Pool p)
+  {
+    if (t instanceof TermConstant)
+      return t;
+
+    if (t instanceof TermNumber)
+      return number((TermNumber)t, p);
+
+    if (t instanceof TermList)
+    {
+      final TermList l = (TermList)t;
+      if (l.getList() == null)
+        return TermList.NIL;
+      if (l.isInternedIn(p))
+        return l;
+
+      final Term h = canonical(l.getList().getHead(), p);
+      if (h == null)
+        return null;
+      final Term tail = canonical(l.getList().getTail(), p);
+      if (tail == null)
+        return null;
+
+      return lookup(h, tail, p);
+    }
+
+    if (t instanceof TermTuple)
+    {
+      final TermTuple l = (TermTuple)t;
+      if (l.isInternedIn(p))
+        return l;
+
+      final Term[] a = canonical(l.getArgs(), p);
+      if (a == null)
+        return null;
+
+      return lookup(a, p);
+    }
+
+    //-- Variable symbols and calls are never ground.
+    return null;
+  }
+
+  /** To return the only copies of the given terms in a given pool.
+   *
+   *  @return
+   *          the interned terms, in the same array if they are all interned
+   *          already, or <code>null</code> if not all of them are ground.
+   */
+  private Term[] canonical(Term[] args, Pool p)
+  {
+    Term[] retVal = args;
+    for (int i = 0; i < args.length; i++)
+    {
+      final Term t = canonical(args[i], p);
+      if (t == null)
+        return null;
+
+      if (t != args[i])
+      {
+        if (retVal == args)
+          retVal = args.clone();
+        retVal[i] = t;
+      }
+    }
+    return retVal;
+  }
+
+  /** To return the only copy of a given numerical term in a given pool.
+   */
+  private static TermNumber number(TermNumber n, Pool p)
+  {
+    Term found = p.get(n);
+    if (found == null && (found = p.putIfAbsent(n)) == null)
+      return n;
+    return (TermNumber)found;
+  }
+
+  /** To return the only copy of the list with a given interned head and tail
+   *  in a given pool.
+   */
+  private TermList lookup(Term head, Term tail, Pool p)
+  {
+    //-- Since the head and the tail are interned already, comparing the new
+    //-- list to the one in the pool does not need to go any deeper.
+    final TermList l = new TermList(head, tail, this);
+    final Term found = p.get(l);
+    if (found != null)
+      return (TermList)found;
+
+    l.intern(p);
+    final Term raced = p.putIfAbsent(l);
+    return (raced == null) ? l : (TermList)raced;
+  }
+
+  /** To return the only copy of the argument list with the given interned
+   *  arguments in a given pool.
+   */
+  private TermTuple lookup(Term[] args, Pool p)
+  {
+    final TermTuple l = new TermTuple(args, this);
+    final Term found = p.get(l);
+    if (found != null)
+      return (TermTuple)found;
+
+    l.intern(p);
+    final Term raced = p.putIfAbsent(l);
+    return (raced == null) ? l : (TermTuple)raced;
+  }
+
+  private void readObject(ObjectInputStream in)
+    throws IOException, ClassNotFoundException
+  {
+    in.defaultReadObject();
+    pool = new Pool();
+  }
+
+  /** A set of terms that only keeps weak references to them. A term is
+   *  looked up by another term equal to it.
+   */
+  private static final class Pool
+  {
+    /** Each weak reference in the pool, mapped to itself.
+     */
+    private final ConcurrentHashMap<Ref, Ref> refs = new ConcurrentHashMap<Ref, Ref>();
+
+    /** The weak references whose terms have been dropped.
+     */
+    private final ReferenceQueue<Term> dropped = new ReferenceQueue<Term>();
+
+    /** To return the term in the pool that is equal to a given term, or
+     *  <code>null</code> if there is none.
+     */
+    Term get(Term t)
+    {
+      final Ref found = refs.get(new Ref(t, null));
+      return (found == null) ? null : found.get();
+    }
+
+    /** To add a given term to the pool, unless there is already one equal to
+     *  it.
+     *
+     *  @return
+     *          the term already in the pool, or <code>null</code> if the given
+     *          term was added.
+     */
+    Term putIfAbsent(Term t)
+    {
+      expunge();
+
+      final Ref ref = new Ref(t, dropped);
+      while (true)
+      {
+        final Ref raced = refs.putIfAbsent(ref, ref);
+        if (raced == null)
+          return null;
+
+        final Term found = raced.get();
+        if (found != null)
+          return found;
+
+        //-- The term equal to this one was dropped, but its reference is
+        //-- still in the pool.
+        refs.remove(raced, raced);
+      }
+    }
+
+    /** To get the number of terms in the pool.
+     */
+    int size()
+    {
+      expunge();
+      return refs.size();
+    }
+
+    /** To take the references whose terms have been dropped out of the pool.
+     */
+    private void expunge()
+    {
+      Object ref;
+      while ((ref = dropped.poll()) != null)
+        refs.remove(ref, ref);
+    }
+  }
+
+  /** A weak reference to a term, equal to another one if their terms are
+   *  equal.
+   */
+  private static final class Ref extends WeakReference<Term>
+  {
+    /** The hash code of the term.
+     */
+    private final int hash;
+
+    Ref(Term t, ReferenceQueue<Term> queue)
+    {
+      super(t, queue);
+      hash = t.hashCode();
+    }
+
+    @Override
+    public int hashCode()
+    {
+      return hash;
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+      if (o == this)
+        return true;
+      if (!(o instanceof Ref) || ((Ref)o).hash != hash)
+        return false;
+
+      //-- A reference whose term has been dropped is only equal to itself. A
+      //-- list and an argument list with the same elements are equal, but
+      //-- they are interned separately.
+      final Term t = get();
+      final Term other = ((Ref)o).get();
+      return t != null && other != null && t.getClass() == other.getClass() && t.equals(other);
+    }
+  }
+}
+
@@ -17,6 +17,20 @@ public class TermList extends Term implements Iterable<Term>
   */
   private final List list;
 
+  /** The factory that interns this list once it is bound to something
+   *  ground, or <code>null</code> if this list is not to be interned.
+   */
+  private final TermFactory factory;
+
+  /** The pool of the factory this list is interned in, or <code>null</code>
+   *  if this list is not interned.
+   */
+  private transient Object pool;
+
+  /** The hash code of this list, if it is interned.
+   */
+  private transient int hash;
+
   /** The <code>NIL</code> term.
   */
   public static TermList NIL = new TermList(null);
@@ -29,6 +43,7 @@ public class TermList extends Term implements Iterable<Term>
   public TermList(List listIn)
   {
     list = listIn;
+    factory = null;
   }
 
   /** To initialize this list term.
@@ -39,28 +54,90 @@ public class TermList extends Term implements Iterable<Term>
    *          the tail of the list this term represents.
   */
   public TermList(Term headIn, Term tailIn)
+  {
+    this(headIn, tailIn, null);
+  }
+
+  /** To initialize this list term, see {@link TermFactory#list(Term, Term)}.
+   *
+   *  @param headIn
+   *          the head of the list this term represents.
+   *  @param tailIn
+   *          the tail of the list this term represents.
+   *  @param factoryIn
+   *          the factory that interns the result of binding this list.
+  */
+  TermList(Term headIn, Term tailIn, TermFactory factoryIn)
   {
     list = new List(headIn, tailIn);
+    factory = factoryIn;
+  }
+
+  /** To mark this list as interned in a given pool. This must be done before
+   *  the list is added to the pool.
+  */
+  void intern(Object poolIn)
+  {
+    hash = list.hashCode();
+    pool = poolIn;
+  }
+
+  /** Whether or not this list is interned in a given pool.
+  */
+  boolean isInternedIn(Object poolIn)
+  {
+    return pool == poolIn;
+  }
+
+  /** To turn an argument list into the equivalent list term, for the code
+   *  that takes a term apart as a list.
+   *
+   *  @param t
+   *          the term to be turned into a list term.
+   *  @return
+   *          the list term, or the term itself if it is not an argument list.
+  */
+  public static Term of(Term t)
+  {
+    return (t instanceof TermTuple) ? ((TermTuple)t).toList() : t;
   }
 
   /** To apply a given binding to the list this term represents.
   */
   public Term bind(Term[] binding)
   {
-    if (list != null)
-      return new TermList(list.bindList(binding));
-    else
+    if (list == null)
       return NIL;
+
+    //-- An interned list is ground, so binding does not change it.
+    if (pool != null)
+      return this;
+
+    if (factory != null)
+      return factory.list(list.getHead().bind(binding), list.getTail().bind(binding));
+
+    return new TermList(list.bindList(binding));
   }
 
   /** Whether or not another term is equivalent to this list term.
   */
   public boolean equals(Object t)
   {
+    if (this == t)
+      return true;
+
+    //-- An argument list is equal to the list with the same elements.
+    if (t instanceof TermTuple)
+      return t.equals(this);
+
     //-- 't' is not a list.
     if (!(t instanceof TermList))
       return false;
 
+    //-- There is only one copy of each list interned in a pool.
+    if (pool != null && pool == ((TermList)t).pool)
+      return false;
+
     //-- Both terms are representing NIL, so they are equal.
     if (list == null && ((TermList)t).list == null)
       return true;
@@ -76,7 +153,10 @@ public class TermList extends Term implements Iterable<Term>
   @Override
   public int hashCode()
   {
-	return list != null ? list.hashCode() : 0;
+    if (pool != null)
+      return hash;
+
+    return list != null ? list.hashCode() : 0;
   }
 
 /** Find a unifier between this list and another given term.
@@ -87,6 +167,10 @@ public class TermList extends Term implements Iterable<Term>
     if (t instanceof TermVariable)
       return true;
 
+    //-- If 't' is an argument list, compare it as a list.
+    if (t instanceof TermTuple)
+      t = ((TermTuple)t).toList();
+
     //-- If 't' is not a list, it can not be unified with this term.
     if (!(t instanceof TermList))
       return false;
@@ -100,6 +184,33 @@ public class TermList extends Term implements Iterable<Term>
     return list.findUnifierList(((TermList)t).list, binding);
   }
 
+  /** Find a unifier between this list and another given term, recording the
+   *  binding in a given frame.
+  */
+  @Override
+  public boolean findUnifier(Term t, BindingFrame frame)
+  {
+    //-- If 't' is a variable symbol, ignore it.
+    if (t instanceof TermVariable)
+      return true;
+
+    //-- If 't' is an argument list, compare it as a list.
+    if (t instanceof TermTuple)
+      t = ((TermTuple)t).toList();
+
+    //-- If 't' is not a list, it can not be unified with this term.
+    if (!(t instanceof TermList))
+      return false;
+
+    //-- If this list represents NIL, the only way to unify 't' with it would
+    //-- be for 't' to represent NIL too.
+    if (list == null)
+      return (((TermList)t).list == null);
+
+    //-- Unify the lists.
+    return list.findUnifierList(((TermList)t).list, frame);
+  }
+
   /** To get the list this term represents.
    *
    *  @return
@@ -124,7 +235,7 @@ public class TermList extends Term implements Iterable<Term>
   */
   public boolean isGround()
   {
-    return (list == null || list.isGroundList());
+    return (list == null || pool != null || list.isGroundList());
   }
 
   /** This function produces Java code to create this list term.
@@ -134,7 +245,7 @@ public class TermList extends Term implements Iterable<Term>
     if (list == null)
       return "TermList.NIL";
 
-    return "new TermList(" + list.getHead().toCode(label) + ", " +
+    return "owner.getTermFactory().list(" + list.getHead().toCode(label) + ", " +
            list.getTail().toCode(label) + ")";
   }
 
@@ -113,7 +113,7 @@ public boolean equals(Object obj)
   */
   public String toCode(String label)
   {
-    return "new TermNumber(" + number + ")";
+    return "owner.getTermFactory().number(" + number + ")";
   }
 
   /** This function returns the <code>String</code> representation of the value
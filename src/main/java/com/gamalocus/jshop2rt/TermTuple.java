@@ -0,0 +1,363 @@
+package com.gamalocus.jshop2rt;
+
+import java.util.Arrays;
+import java.util.Iterator;
+
+/** The argument list of a predicate with a fixed number of arguments is an
+ *  instance of this class at run time. It holds the arguments in an array
+ *  rather than in a chain of <code>CONS</code> cells, so that unifying,
+ *  binding and comparing argument lists needs no recursion and binding
+ *  allocates one array instead of two objects per argument. Arguments that
+ *  are lists themselves, such as <code>(?x . ?rest)</code>, are still
+ *  represented as list terms.
+ *
+ *  See {@link Predicate#Predicate(int, int, Term)}, which turns every
+ *  argument list that ends in <code>NIL</code> into one of these. An argument
+ *  list is equal to the list term with the same elements, and has the same
+ *  hash code, so either of them can be used to look up the other.
+*/
+public class TermTuple extends Term implements Iterable<Term>
+{
+  private static final long serialVersionUID = -2092810802538567421L;
+
+  /** The empty argument list.
+  */
+  public static final TermTuple EMPTY = new TermTuple(new Term[0], null);
+
+  /** The arguments. This array is never modified.
+  */
+  private final Term[] args;
+
+  /** Whether or not all the arguments are ground.
+  */
+  private final boolean ground;
+
+  /** The factory that interns this argument list once it is bound to
+   *  something ground, or <code>null</code> if it is not to be interned.
+  */
+  private final TermFactory factory;
+
+  /** The pool of the factory this argument list is interned in, or
+   *  <code>null</code> if it is not interned.
+  */
+  private transient Object pool;
+
+  /** The hash code of this argument list, or 0 if it has not been computed
+   *  yet.
+  */
+  private transient int hash;
+
+  /** To initialize this argument list.
+   *
+   *  @param argsIn
+   *          the arguments, which must not be modified afterwards.
+  */
+  public TermTuple(Term... argsIn)
+  {
+    this(argsIn, null);
+  }
+
+  /** To initialize this argument list, see {@link TermFactory#tuple(Term[])}.
+   *
+   *  @param argsIn
+   *          the arguments, which must not be modified afterwards.
+   *  @param factoryIn
+   *          the factory that interns the result of binding this argument
+   *          list.
+  */
+  TermTuple(Term[] argsIn, TermFactory factoryIn)
+  {
+    args = argsIn;
+    factory = factoryIn;
+
+    boolean g = true;
+    for (int i = 0; g && i < args.length; i++)
+      g = args[i].isGround();
+    ground = g;
+  }
+
+  /** To turn a list that ends in <code>NIL</code> into an argument list.
+   *
+   *  @param t
+   *          the term to be turned into an argument list.
+   *  @return
+   *          the argument list, or the term itself if it is not a list that
+   *          ends in <code>NIL</code>.
+  */
+  public static Term of(Term t)
+  {
+    if (!(t instanceof TermList))
+      return t;
+
+    int n = 0;
+    Term rest = t;
+    while (rest instanceof TermList && !rest.isNil())
+    {
+      n++;
+      rest = ((TermList)rest).getList().getTail();
+    }
+
+    //-- The list has a tail that is not a list, e.g., (?x . ?rest).
+    if (!rest.isNil())
+      return t;
+
+    if (n == 0)
+      return EMPTY;
+
+    final Term[] a = new Term[n];
+    List l = ((TermList)t).getList();
+    for (int i = 0; i < n; i++, l = l.getRest())
+      a[i] = l.getHead();
+
+    return new TermTuple(a);
+  }
+
+  /** To mark this argument list as interned in a given pool. This must be
+   *  done before it is added to the pool.
+  */
+  void intern(Object poolIn)
+  {
+    hashCode();
+    pool = poolIn;
+  }
+
+  /** Whether or not this argument list is interned in a given pool.
+  */
+  boolean isInternedIn(Object poolIn)
+  {
+    return pool == poolIn;
+  }
+
+  /** To apply a given binding to this argument list.
+  */
+  public Term bind(Term[] binding)
+  {
+    if (ground)
+      return this;
+
+    final Term[] bound = new Term[args.length];
+    for (int i = 0; i < args.length; i++)
+      bound[i] = args[i].bind(binding);
+
+    if (factory != null)
+      return factory.tuple(bound);
+
+    return new TermTuple(bound);
+  }
+
+  /** Whether or not another term is equivalent to this argument list.
+  */
+  public boolean equals(Object t)
+  {
+    if (this == t)
+      return true;
+
+    if (t instanceof TermList)
+      return equalsList((TermList)t);
+
+    if (!(t instanceof TermTuple))
+      return false;
+
+    final TermTuple other = (TermTuple)t;
+
+    //-- There is only one copy of each argument list interned in a pool.
+    if (pool != null && pool == other.pool)
+      return false;
+
+    if (args.length != other.args.length || hashCode() != other.hashCode())
+      return false;
+
+    for (int i = 0; i < args.length; i++)
+      if (!args[i].equals(other.args[i]))
+        return false;
+
+    return true;
+  }
+
+  /** Whether or not the elements of a given list term are the arguments of
+   *  this argument list.
+  */
+  private boolean equalsList(TermList t)
+  {
+    if (hashCode() != t.hashCode())
+      return false;
+
+    Term rest = t;
+    for (int i = 0; i < args.length; i++)
+    {
+      //-- The rest of the list may be an argument list itself.
+      if (rest instanceof TermTuple)
+      {
+        final Term[] o = ((TermTuple)rest).args;
+        if (o.length != args.length - i)
+          return false;
+
+        for (int j = 0; j < o.length; j++)
+          if (!args[i + j].equals(o[j]))
+            return false;
+
+        return true;
+      }
+
+      if (!(rest instanceof TermList) || rest.isNil())
+        return false;
+
+      final List l = ((TermList)rest).getList();
+      if (!args[i].equals(l.getHead()))
+        return false;
+      rest = l.getTail();
+    }
+
+    return rest.isNil() || (rest instanceof TermTuple && ((TermTuple)rest).args.length == 0);
+  }
+
+  /** The hash code of an argument list is that of the list term with the same
+   *  elements.
+  */
+  @Override
+  public int hashCode()
+  {
+    int h = hash;
+    if (h == 0)
+    {
+      for (int i = args.length - 1; i >= 0; i--)
+        h = 31 * (31 + args[i].hashCode()) + h;
+      hash = h;
+    }
+    return h;
+  }
+
+  /** Find a unifier between this argument list and another given term.
+  */
+  public boolean findUnifier(Term t, Term[] binding)
+  {
+    //-- If 't' is a variable symbol, ignore it.
+    if (t instanceof TermVariable)
+      return true;
+
+    if (t instanceof TermTuple)
+    {
+      final Term[] o = ((TermTuple)t).args;
+      if (o.length != args.length)
+        return false;
+
+      for (int i = 0; i < args.length; i++)
+        if (!args[i].findUnifier(o[i], binding))
+          return false;
+
+      return true;
+    }
+
+    //-- 't' is a list that does not end in NIL, compare it as a list.
+    if (t instanceof TermList)
+      return toList().findUnifier(t, binding);
+
+    return false;
+  }
+
+  /** Find a unifier between this argument list and another given term,
+   *  recording the binding in a given frame.
+  */
+  @Override
+  public boolean findUnifier(Term t, BindingFrame frame)
+  {
+    //-- If 't' is a variable symbol, ignore it.
+    if (t instanceof TermVariable)
+      return true;
+
+    if (t instanceof TermTuple)
+    {
+      final Term[] o = ((TermTuple)t).args;
+      if (o.length != args.length)
+        return false;
+
+      for (int i = 0; i < args.length; i++)
+        if (!args[i].findUnifier(o[i], frame))
+          return false;
+
+      return true;
+    }
+
+    //-- 't' is a list that does not end in NIL, compare it as a list.
+    if (t instanceof TermList)
+      return toList().findUnifier(t, frame);
+
+    return false;
+  }
+
+  /** To get the argument at a given position.
+   *
+   *  @param i
+   *          the position.
+   *  @return
+   *          the argument.
+  */
+  public Term get(int i)
+  {
+    return args[i];
+  }
+
+  /** To get the arguments. The array returned must not be modified.
+   *
+   *  @return
+   *          the arguments.
+  */
+  public Term[] getArgs()
+  {
+    return args;
+  }
+
+  public int size()
+  {
+    return args.length;
+  }
+
+  public Iterator<Term> iterator()
+  {
+    return Arrays.asList(args).iterator();
+  }
+
+  /** Whether or not there are any variables in this argument list.
+  */
+  public boolean isGround()
+  {
+    return ground;
+  }
+
+  /** To convert this argument list to the equivalent list term.
+   *
+   *  @return
+   *          the list term.
+  */
+  public TermList toList()
+  {
+    TermList l = TermList.NIL;
+    for (int i = args.length - 1; i >= 0; i--)
+      l = new TermList(args[i], l);
+    return l;
+  }
+
+  /** This function produces Java code to create this argument list.
+  */
+  public String toCode(String label)
+  {
+    String s = "owner.getTermFactory().tuple(";
+    for (int i = 0; i < args.length; i++)
+      s += ((i == 0) ? "" : ", ") + args[i].toCode(label);
+    return s + ")";
+  }
+
+  /** This function is used to print this argument list.
+  */
+  @Override
+  public String toString()
+  {
+    if (args.length == 0)
+      return "NIL";
+
+    String s = "(" + args[0];
+    for (int i = 1; i < args.length; i++)
+      s += " " + args[i];
+    return s + ")";
+  }
+}
@@ -79,6 +79,29 @@ public class TermVariable extends Term
     return t.equals(binding[index]);
   }
 
+  /** Find a unifier between this variable symbol and another given term,
+   *  recording the binding in a given frame.
+  */
+  @Override
+  public boolean findUnifier(Term t, BindingFrame frame)
+  {
+    //-- If 't' is a variable symbol, skip it.
+    if (t instanceof TermVariable)
+      return true;
+
+    //-- If the variable has not already been mapped to something, map it:
+    final Term b = frame.get(index);
+    if (b == null)
+    {
+      frame.bind(index, t);
+      return true;
+    }
+
+    //-- If the variable has already been mapped to something, check if it is
+    //-- unified with the same thing again.
+    return t.equals(b);
+  }
+
   /** To get the index for this variable symbol.
    *
    *  @return
@@ -20,6 +20,7 @@ public class CompileJSHOP2Domain extends Task
   private File srcdir;
   private Class<?> domainClass;
   private File destdir;
+  private boolean reorderConjuncts;
 
   public void setSrcdir(File srcdir)
   {
@@ -35,13 +36,18 @@ public class CompileJSHOP2Domain extends Task
   {
     this.destdir = destdir;
   }
+
+  public void setReorderConjuncts(boolean reorderConjuncts)
+  {
+    this.reorderConjuncts = reorderConjuncts;
+  }
   
   @Override
   public void execute() throws BuildException
   {
     try
     {
-      DomainCompiler.generateJavaSource(srcdir, domainClass, destdir);
+      DomainCompiler.generateJavaSource(srcdir, domainClass, destdir, reorderConjuncts);
     }
     catch (RecognitionException e)
     {
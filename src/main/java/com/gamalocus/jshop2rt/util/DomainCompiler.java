@@ -1,17 +1,36 @@
 package com.gamalocus.jshop2rt.util;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.lang.reflect.InvocationTargetException;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.logging.Logger;
 
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
 import antlr.RecognitionException;
 import antlr.TokenStreamException;
 
 import com.gamalocus.jshop2rt.Domain;
 import com.gamalocus.jshop2rt.InternalDomain;
+import com.gamalocus.jshop2rt.InterpretedDomain;
 
 /**
  * Helper for generating java code from domain description and then compiling that java code.
@@ -24,6 +43,29 @@ public class DomainCompiler
 {
   private final static Logger logger = Logger.getLogger(DomainCompiler.class.getName());
 
+  /**
+   * How many domain classes compiled in memory are kept, so that loading a
+   * domain whose description has not changed does not compile it again.
+   */
+  private final static int CACHE_SIZE = 16;
+
+  /**
+   * Domain classes compiled in memory, keyed by class name, whether the 
+   * conjuncts were reordered and the hash of the domain description. The 
+   * least recently used ones are dropped first.
+   */
+  private final static Map<String, Class<? extends Domain>> compiledDomains = 
+    new LinkedHashMap<String, Class<? extends Domain>>(CACHE_SIZE, 0.75f, true)
+    {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Class<? extends Domain>> eldest)
+      {
+        return size() > CACHE_SIZE;
+      }
+    };
+
   private DomainCompiler() {}
 
   /**
@@ -81,6 +123,18 @@ public class DomainCompiler
 
   public static <T> File generateJavaSource(File inputPath,
       Class<T> domainClass, File outputPath) throws IOException, RecognitionException, TokenStreamException
+  {
+    return generateJavaSource(inputPath, domainClass, outputPath, false);
+  }
+
+  /**
+   * Generate the Java code for a domain description.
+   * @param reorderConjuncts Whether to reorder the conjuncts in the preconditions 
+   * so that the cheaper ones are evaluated first. See {@link InternalDomain#setReorderConjuncts(boolean)}.
+   */
+  public static <T> File generateJavaSource(File inputPath,
+      Class<T> domainClass, File outputPath, boolean reorderConjuncts) 
+      throws IOException, RecognitionException, TokenStreamException
   {
     logger.info(String.format("Source output: %s.", outputPath.getAbsolutePath()));
 
@@ -90,12 +144,8 @@ public class DomainCompiler
     logger.info(String.format("Compiling JSHOP2 source: %s...", 
         domainSource.getAbsolutePath()));
 
-    // TODO Emit java code as string, and use a SimpleJavaFileObject subclass
-    // to wrap it. 
-    InternalDomain generator = new InternalDomain(domainSource, javaSource, 
-        domainClass.getPackage().getName());
-
-    generator.getParser().domain();
+    final String code = generateJavaCode(domainSource, javaSource, 
+        domainClass.getPackage().getName(), reorderConjuncts);
 
     FileWriter out = null;
     try
@@ -103,7 +153,7 @@ public class DomainCompiler
       // Make sure the output path exists.
       javaSource.getParentFile().mkdirs();
       out = new FileWriter(javaSource);
-      out.write(generator.getOutput());
+      out.write(code);
     }
     finally
     {
@@ -117,4 +167,307 @@ public class DomainCompiler
 
     return javaSource;
   }
+
+  /**
+   * Run the domain description through the code generator.
+   * @param javaSource The file the code would be written to. May be 
+   * <code>null</code>.
+   */
+  private static String generateJavaCode(File domainSource, File javaSource, 
+      String outputPackage, boolean reorderConjuncts) 
+      throws IOException, RecognitionException, TokenStreamException
+  {
+    InternalDomain generator = new InternalDomain(domainSource, javaSource, 
+        outputPackage);
+    generator.setReorderConjuncts(reorderConjuncts);
+
+    generator.getParser().domain();
+
+    return generator.getOutput();
+  }
+
+  public static <T extends Domain> Class<? extends Domain> compileDomainClass(File inputPath,
+      Class<T> domainClass) throws Exception
+  {
+    return compileDomainClass(inputPath, domainClass, false);
+  }
+
+  /**
+   * Generate the Java code for a domain description and compile it in memory, 
+   * without writing anything to disk, into a class loaded by a class loader of 
+   * its own. This is suitable for reloading a domain at runtime: the class 
+   * loader of <code>domainClass</code> is the parent of the new one, but the 
+   * domain classes themselves are always taken from the new one.
+   * <p>
+   * The compiled classes are cached by the hash of the domain description (see
+   * {@link InternalDomain#getSourceHash(File, String)}), so compiling a domain
+   * again after its description has been saved without changes returns the 
+   * same class.
+   * <p>
+   * NOTE: This requires Java 6 and a JDK, since the compiler is taken from 
+   * {@link ToolProvider#getSystemJavaCompiler()}. The generated code is 
+   * compiled against the class path of the running VM.
+   * 
+   * @param inputPath Base of location for the JSHOP2 source code.
+   * @param domainClass The domain class to be compiled again. Only its name is
+   * used.
+   * @param reorderConjuncts Whether to reorder the conjuncts in the 
+   * preconditions so that the cheaper ones are evaluated first. See 
+   * {@link InternalDomain#setReorderConjuncts(boolean)}.
+   * @return The new domain class, not a subclass of <code>domainClass</code>.
+   * @throws IOException If there is no compiler, or the generated code does not
+   * compile.
+   */
+  public static <T extends Domain> Class<? extends Domain> compileDomainClass(File inputPath,
+      Class<T> domainClass, boolean reorderConjuncts) throws Exception
+  {
+    final String className = domainClass.getName();
+    final File domainSource = new File(inputPath, className.replace(".", "/"));
+
+    final String key = String.format("%s:%b:%d", className, reorderConjuncts, 
+        InternalDomain.getSourceHash(domainSource, "SHA"));
+    synchronized (compiledDomains)
+    {
+      final Class<? extends Domain> cached = compiledDomains.get(key);
+      if (cached != null)
+      {
+        logger.info(String.format("Domain %s has not changed.", className));
+        return cached;
+      }
+    }
+
+    final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+    if (compiler == null)
+    {
+      throw new IOException(String.format("Cannot recompile domain %s: No Java compiler available. " +
+          "Hint: Run on a JDK rather than a JRE.", className));
+    }
+
+    logger.info(String.format("Compiling JSHOP2 source: %s...", 
+        domainSource.getAbsolutePath()));
+
+    final String code = generateJavaCode(domainSource, null, 
+        domainClass.getPackage().getName(), reorderConjuncts);
+
+    logger.info(String.format("Compiling Java source for %s in memory...", className));
+
+    final DiagnosticCollector<JavaFileObject> diagnostics = 
+      new DiagnosticCollector<JavaFileObject>();
+    final MemoryFileManager fileManager = new MemoryFileManager(
+        compiler.getStandardFileManager(diagnostics, null, null));
+    try
+    {
+      final boolean ok = compiler.getTask(null, fileManager, diagnostics, 
+          Arrays.asList("-g"), null, 
+          Arrays.asList(new SourceObject(className, code))).call();
+      if (!ok)
+      {
+        final StringWriter compilerMessages = new StringWriter();
+        final PrintWriter messages = new PrintWriter(compilerMessages);
+        for (Diagnostic<? extends JavaFileObject> d : diagnostics.getDiagnostics())
+        {
+          messages.println(String.format("%s:%d: %s", className, 
+              d.getLineNumber(), d.getMessage(null)));
+        }
+        messages.flush();
+        throw new IOException(compilerMessages.toString());
+      }
+    }
+    finally
+    {
+      fileManager.close();
+    }
+
+    final ClassLoader loader = new MemoryClassLoader(domainClass.getClassLoader(), 
+        fileManager.getClasses());
+    final Class<? extends Domain> compiled = 
+      Class.forName(className, true, loader).asSubclass(Domain.class);
+
+    synchronized (compiledDomains)
+    {
+      compiledDomains.put(key, compiled);
+    }
+
+    return compiled;
+  }
+
+  /**
+   * Compile a domain description in memory and make an instance of it. See 
+   * {@link #compileDomainClass(File, Class, boolean)}.
+   */
+  public static <T extends Domain> Domain loadDomain(File inputPath,
+      Class<T> domainClass, boolean reorderConjuncts) throws Exception
+  {
+    try
+    {
+      return compileDomainClass(inputPath, domainClass, reorderConjuncts)
+        .getDeclaredConstructor().newInstance();
+    }
+    catch (InvocationTargetException e)
+    {
+      //-- Throw what the constructor of the domain threw, as it is.
+      final Throwable cause = e.getCause();
+      if (cause instanceof Exception)
+        throw (Exception)cause;
+      if (cause instanceof Error)
+        throw (Error)cause;
+      throw e;
+    }
+  }
+
+  /**
+   * Make a domain straight from its description, without generating or
+   * compiling any Java code. The domain finds the same plans as the compiled
+   * one, and takes a fraction of the time to load, so this is suitable for
+   * reloading a domain while it is being written, and where there is no Java
+   * compiler. See {@link InterpretedDomain}.
+   *
+   * @param inputPath Base of location for the JSHOP2 source code.
+   * @param domainClass The domain class the description is for. Only its name
+   * is used, and its class loader to find the classes of the user-defined
+   * external code calls and <code>:sort-by</code> functions.
+   * @param reorderConjuncts Whether to reorder the conjuncts in the
+   * preconditions so that the cheaper ones are evaluated first. See
+   * {@link InternalDomain#setReorderConjuncts(boolean)}.
+   */
+  public static <T extends Domain> Domain interpretDomain(File inputPath,
+      Class<T> domainClass, boolean reorderConjuncts)
+      throws IOException, RecognitionException, TokenStreamException
+  {
+    final String className = domainClass.getName();
+    final File domainSource = new File(inputPath, className.replace(".", "/"));
+
+    logger.info(String.format("Interpreting JSHOP2 source: %s...",
+        domainSource.getAbsolutePath()));
+
+    InternalDomain parsed = new InternalDomain(domainSource, null,
+        domainClass.getPackage().getName());
+    parsed.setReorderConjuncts(reorderConjuncts);
+    parsed.setGenerateCode(false);
+
+    parsed.getParser().domain();
+
+    return new InterpretedDomain(parsed, domainClass.getClassLoader());
+  }
+
+  /**
+   * Generated Java source code held in memory.
+   */
+  private static class SourceObject extends SimpleJavaFileObject
+  {
+    private final String code;
+
+    SourceObject(String className, String code)
+    {
+      super(URI.create("string:///" + className.replace(".", "/") + Kind.SOURCE.extension), 
+          Kind.SOURCE);
+      this.code = code;
+    }
+
+    @Override
+    public CharSequence getCharContent(boolean ignoreEncodingErrors)
+    {
+      return code;
+    }
+  }
+
+  /**
+   * A class file written by the compiler to memory.
+   */
+  private static class ClassObject extends SimpleJavaFileObject
+  {
+    private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+    ClassObject(String className)
+    {
+      super(URI.create("bytes:///" + className.replace(".", "/") + Kind.CLASS.extension), 
+          Kind.CLASS);
+    }
+
+    @Override
+    public OutputStream openOutputStream()
+    {
+      return bytes;
+    }
+
+    byte[] getBytes()
+    {
+      return bytes.toByteArray();
+    }
+  }
+
+  /**
+   * File manager that keeps the class files written by the compiler in memory,
+   * and leaves everything else to the standard one.
+   */
+  private static class MemoryFileManager extends ForwardingJavaFileManager<StandardJavaFileManager>
+  {
+    private final Map<String, ClassObject> classes = new HashMap<String, ClassObject>();
+
+    MemoryFileManager(StandardJavaFileManager fileManager)
+    {
+      super(fileManager);
+    }
+
+    @Override
+    public JavaFileObject getJavaFileForOutput(Location location, String className, 
+        JavaFileObject.Kind kind, FileObject sibling)
+    {
+      final ClassObject classObject = new ClassObject(className);
+      classes.put(className, classObject);
+      return classObject;
+    }
+
+    /**
+     * @return The byte code of the compiled classes, the nested ones 
+     * included, by class name.
+     */
+    Map<String, byte[]> getClasses()
+    {
+      final Map<String, byte[]> result = new HashMap<String, byte[]>();
+      for (Map.Entry<String, ClassObject> e : classes.entrySet())
+      {
+        result.put(e.getKey(), e.getValue().getBytes());
+      }
+      return result;
+    }
+  }
+
+  /**
+   * Class loader for classes compiled in memory. It defines those classes 
+   * itself rather than asking its parent first, since the parent may well 
+   * have loaded an older version of them.
+   */
+  private static class MemoryClassLoader extends ClassLoader
+  {
+    private final Map<String, byte[]> classes;
+
+    MemoryClassLoader(ClassLoader parent, Map<String, byte[]> classes)
+    {
+      super(parent);
+      this.classes = classes;
+    }
+
+    @Override
+    protected synchronized Class<?> loadClass(String name, boolean resolve) 
+      throws ClassNotFoundException
+    {
+      if (!classes.containsKey(name))
+      {
+        return super.loadClass(name, resolve);
+      }
+
+      Class<?> c = findLoadedClass(name);
+      if (c == null)
+      {
+        final byte[] b = classes.get(name);
+        c = defineClass(name, b, 0, b.length);
+      }
+      if (resolve)
+      {
+        resolveClass(c);
+      }
+      return c;
+    }
+  }
 }
@@ -0,0 +1,218 @@
+package com.gamalocus.jshop2rt;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Vector;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/** Tests that the satisfiers the tabled axioms find are those the axioms find
+ *  without the table, in the same order, with the duplicates left out, both
+ *  before and after the atoms they depend on change, and that the axioms that
+ *  depend on themselves through a negation are not tabled. The domain is
+ *  described in the file <code>path</code>.
+ */
+public class AxiomTablingTest
+{
+  /** The nodes of the graph.
+  */
+  private static final String[] NODES = { "a", "b", "c", "d", "e", "f" };
+
+  private Domain domain;
+
+  /** The state whose axioms are tabled.
+  */
+  private State tabled;
+
+  /** The state whose axioms are not.
+  */
+  private State plain;
+
+  @Before
+  public void setUp() throws Exception
+  {
+    domain = SampleDomains.interpret("path");
+    tabled = newState(true);
+    plain = newState(false);
+
+    //-- There are two ways from a to d, so the untabled axioms prove that
+    //-- everything after d can be reached from a twice. The nodes with no
+    //-- edges out of them only lead on through their aliases.
+    for (State state : Arrays.asList(tabled, plain))
+    {
+      edge(state, "a", "b");
+      edge(state, "a", "c");
+      edge(state, "b", "d");
+      edge(state, "c", "d");
+      edge(state, "d", "e");
+      SampleDomains.add(domain, state, "alias", "e", "a");
+      SampleDomains.add(domain, state, "alias", "f", "c");
+    }
+  }
+
+  @Test
+  public void tabledMatchesUntabled()
+  {
+    final int found = compareQueries();
+    assertTrue("The queries find nothing to compare.", found > 0);
+  }
+
+  @Test
+  public void tabledMatchesUntabledAfterChanges()
+  {
+    compareQueries();
+
+    //-- Once e has an edge out of it, its alias is no longer used.
+    edge(tabled, "e", "f");
+    edge(plain, "e", "f");
+    compareQueries();
+
+    //-- Once b has no edges out of it, it leads nowhere.
+    final Predicate p = new Predicate(domain.addConstant("edge"), 0,
+        domain.getTermFactory().tuple(constant("b"), constant("d")));
+    final Vector<?>[] tabledDelAdd = delete(tabled, p);
+    final Vector<?>[] plainDelAdd = delete(plain, p);
+    compareQueries();
+
+    //-- Until the deletion is backtracked over.
+    tabled.undo(tabledDelAdd);
+    plain.undo(plainDelAdd);
+    compareQueries();
+  }
+
+  @Test
+  public void tabledPlansMatchUntabled()
+  {
+    for (String s : NODES)
+    {
+      final TaskList tasks = SampleDomains.task(domain, "visit-from", false, constant(s));
+      final List<String> expected = withoutDuplicates(SampleDomains.plans(domain, plain, tasks));
+      assertEquals(s, expected, SampleDomains.plans(domain, tabled, tasks));
+    }
+  }
+
+  @Test
+  public void negativeCyclesAreNotTabled()
+  {
+    //-- From g, the only good move is to j, since h can move on to i, where
+    //-- there is no move. Moving back from h to g is not good either, but
+    //-- that is found while the good moves from g are still being looked for.
+    //-- Tabled, the move would be kept although no good move from g was
+    //-- known yet.
+    for (State state : Arrays.asList(tabled, plain))
+    {
+      edge(state, "g", "h");
+      edge(state, "g", "j");
+      edge(state, "h", "i");
+      edge(state, "h", "g");
+    }
+
+    //-- The atoms are asked for the way the axiom asks for them, with the
+    //-- variable it uses for ?c, so that they are the atoms it has proven.
+    final String[][] moves = { { "g", "j" }, { "h", "i" } };
+    for (String[] move : moves)
+    {
+      final Predicate query = reply(constant(move[0]), domain.getTermVariable(2), 3);
+      final List<List<Term>> expected = satisfiers(plain, query);
+      assertEquals(move[0], 1, expected.size());
+      assertEquals(move[0], constant(move[1]), expected.get(0).get(2));
+      assertEquals(move[0], expected, satisfiers(tabled, query));
+    }
+  }
+
+  /** To make a state of the world for the domain.
+  */
+  private State newState(boolean tabling)
+  {
+    final State state = new State(domain.getAxioms());
+    state.setTermFactory(domain.getTermFactory());
+    state.setAxiomTablingEnabled(tabling);
+    return state;
+  }
+
+  private void edge(State state, String from, String to)
+  {
+    SampleDomains.add(domain, state, "edge", from, to);
+  }
+
+  /** To delete an atom that is in a state, the way an operator does it.
+  */
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  private static Vector<?>[] delete(State state, Predicate p)
+  {
+    final Vector<Object>[] delAdd = new Vector[4];
+    for (int i = 0; i < 4; i++)
+      delAdd[i] = new Vector<Object>();
+
+    final NumberedPredicate np = state.delUndoable(p);
+    assertTrue(np != null);
+    delAdd[0].add(np);
+    return delAdd;
+  }
+
+  private Term constant(String name)
+  {
+    return domain.getTermConstant(domain.addConstant(name));
+  }
+
+  /** To compare the satisfiers of the paths out of and into each node, and of
+   *  all the paths, found with and without the table.
+   *
+   *  @return
+   *          the number of satisfiers found.
+  */
+  private int compareQueries()
+  {
+    final List<Predicate> queries = new ArrayList<Predicate>();
+    queries.add(path(new TermVariable(0), new TermVariable(1), 2));
+    for (String s : NODES)
+    {
+      queries.add(path(constant(s), new TermVariable(0), 1));
+      queries.add(path(new TermVariable(0), constant(s), 1));
+    }
+
+    int found = 0;
+    for (Predicate query : queries)
+    {
+      final List<List<Term>> expected = withoutDuplicates(satisfiers(plain, query));
+      assertEquals(query.toString(domain, Predicate.Namespace.LOGICAL_PREDICATE), expected, satisfiers(tabled, query));
+      found += expected.size();
+    }
+    return found;
+  }
+
+  private Predicate path(Term from, Term to, int vars)
+  {
+    return new Predicate(domain.addConstant("path"), vars, domain.getTermFactory().tuple(from, to));
+  }
+
+  private Predicate reply(Term from, Term to, int vars)
+  {
+    return new Predicate(domain.addConstant("reply"), vars, domain.getTermFactory().tuple(from, to));
+  }
+
+  /** To find all the satisfiers of a query, in order.
+  */
+  private static List<List<Term>> satisfiers(State state, Predicate query)
+  {
+    final List<List<Term>> retVal = new ArrayList<List<Term>>();
+    final State.MyIterator it = state.iterator(query);
+    Term[] binding;
+    while ((binding = it.nextBinding()) != null)
+      retVal.add(Arrays.asList(binding.clone()));
+    return retVal;
+  }
+
+  /** To leave out all but the first of each of the equal elements of a list.
+  */
+  private static <T> List<T> withoutDuplicates(List<T> list)
+  {
+    return new ArrayList<T>(new LinkedHashSet<T>(list));
+  }
+}
@@ -0,0 +1,117 @@
+package com.gamalocus.jshop2rt;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.gamalocus.jshop2rt.util.DomainCompiler;
+
+/** Tests that an interpreted domain finds the same plans, in the same order,
+ *  as the same domain compiled, with and without reordering the conjuncts of
+ *  the preconditions. The domain is described in the file <code>haul</code>.
+ */
+public class InterpretedDomainTest
+{
+  @Test
+  public void samePlans() throws Exception
+  {
+    comparePlans(false);
+  }
+
+  @Test
+  public void samePlansReordered() throws Exception
+  {
+    comparePlans(true);
+  }
+
+  private void comparePlans(boolean reorderConjuncts) throws Exception
+  {
+    final File root = classPathRoot();
+    final Domain interpreted = DomainCompiler.interpretDomain(root, haul.class, reorderConjuncts);
+    final Domain compiled = DomainCompiler.loadDomain(root, haul.class, reorderConjuncts);
+
+    int found = 0;
+    for (String[] task : new String[][] {
+        { "deliver", "l3", "p1" },
+        { "deliver", "l3", "p3" },
+        { "deliver", "l4", "p4" },
+        { "deliver", "l5", "p4" },
+        { "deliver-all", "l3", "p3", "p2" } })
+    {
+      final List<String> expected = plans(compiled, task);
+      assertEquals(Arrays.toString(task), expected, plans(interpreted, task));
+      found += expected.size();
+    }
+    assertFalse("The tasks have no plans to compare.", found == 0);
+  }
+
+  /** To find where on the class path the description of the domain is.
+  */
+  private static File classPathRoot() throws Exception
+  {
+    File retVal = new File(haul.class.getResource("haul").toURI()).getParentFile();
+    for (int i = haul.class.getPackage().getName().split("\\.").length; i > 0; i--)
+      retVal = retVal.getParentFile();
+    return retVal;
+  }
+
+  /** To find all the plans for a task in the problem every test starts from.
+   *
+   *  @param task
+   *          the name of the task, where the packages are to be delivered
+   *          to, and the packages.
+  */
+  private static List<String> plans(Domain domain, String[] task)
+  {
+    final State state = new State(domain.getAxioms());
+    state.setTermFactory(domain.getTermFactory());
+
+    //-- The roads only go one way, but a truck may drive back along them.
+    SampleDomains.add(domain, state, "road", "l1", "l2");
+    SampleDomains.add(domain, state, "road", "l2", "l3");
+    SampleDomains.add(domain, state, "road", "l3", "l4");
+    SampleDomains.add(domain, state, "road", "l4", "l5");
+    SampleDomains.add(domain, state, "road", "l1", "l3");
+    SampleDomains.add(domain, state, "closed", "l5");
+    SampleDomains.add(domain, state, "truck-at", "t1", "l1");
+    SampleDomains.add(domain, state, "truck-at", "t2", "l1");
+    SampleDomains.add(domain, state, "truck-at", "t3", "l2");
+    room(domain, state, "t1", 2);
+    room(domain, state, "t2", 1);
+    room(domain, state, "t3", 1);
+    SampleDomains.add(domain, state, "at", "p1", "l1");
+    SampleDomains.add(domain, state, "at", "p2", "l2");
+    SampleDomains.add(domain, state, "at", "p3", "l3");
+    SampleDomains.add(domain, state, "at", "p4", "l3");
+    SampleDomains.add(domain, state, "waiting", "t1", "p1");
+    SampleDomains.add(domain, state, "waiting", "t1", "p2");
+
+    //-- A single package is delivered on its own, and several of them in any
+    //-- order.
+    final Term to = constant(domain, task[1]);
+    Term packages = constant(domain, task[2]);
+    if (task[0].equals("deliver-all"))
+    {
+      packages = TermList.NIL;
+      for (int i = task.length - 1; i >= 2; i--)
+        packages = domain.getTermFactory().list(constant(domain, task[i]), packages);
+    }
+    return SampleDomains.plans(domain, state, SampleDomains.task(domain, task[0], false, packages, to));
+  }
+
+  private static void room(Domain domain, State state, String truck, int n)
+  {
+    state.add(new Predicate(domain.addConstant("room"), 0, domain.getTermFactory().tuple(
+        constant(domain, truck), domain.getTermFactory().number(n))));
+  }
+
+  private static Term constant(Domain domain, String name)
+  {
+    return domain.getTermConstant(domain.addConstant(name));
+  }
+}
@@ -0,0 +1,118 @@
+package com.gamalocus.jshop2rt;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/** Tests that the planner finds the same plans whether the atoms the axioms
+ *  prove are materialized in the state of the world or proven each time they
+ *  are asked for, and that backtracking over the operators that change the
+ *  atoms they depend on restores them exactly. The materialized atoms are
+ *  found once each, in the order they were derived in, so the plans are
+ *  compared in no particular order. The domain is described in the file
+ *  <code>derived</code>.
+ */
+public class MaterializedAxiomsTest
+{
+  private Domain domain;
+
+  @Before
+  public void setUp() throws Exception
+  {
+    domain = SampleDomains.interpret("derived");
+  }
+
+  @Test
+  public void samePlans()
+  {
+    final Set<String> expected = new TreeSet<String>(plans());
+    assertFalse("There are no plans to compare.", expected.isEmpty());
+    for (String[] heads : new String[][] { { "adjacent" }, { "hop2" }, { "adjacent", "hop2" } })
+      assertEquals(Arrays.toString(heads), expected, new TreeSet<String>(plans(heads)));
+  }
+
+  @Test
+  public void backtrackOverOperators()
+  {
+    final State state = newState("adjacent", "hop2");
+    final List<Object> before = snapshot(state);
+    assertEquals(new HashSet<Object>(before), new HashSet<Object>(snapshot(newState())));
+
+    //-- Each plan burns edges, and the search backtracks over all of them.
+    SampleDomains.plans(domain, state, tour(3));
+    assertEquals(before, snapshot(state));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void moreThanOneBranch()
+  {
+    newState().materialize(domain.addConstant("cost"));
+  }
+
+  /** To find all the plans for a tour, with given heads materialized.
+  */
+  private List<String> plans(String... heads)
+  {
+    return SampleDomains.plans(domain, newState(heads), tour(3));
+  }
+
+  private TaskList tour(int n)
+  {
+    return SampleDomains.task(domain, "tour", false, domain.getTermFactory().number(n));
+  }
+
+  /** To make the state of the world every test starts from, a ring of nodes
+   *  with a few more edges across it, with given heads materialized.
+  */
+  private State newState(String... heads)
+  {
+    final State state = new State(domain.getAxioms());
+    state.setTermFactory(domain.getTermFactory());
+    for (String head : heads)
+      state.materialize(domain.addConstant(head));
+
+    for (int i = 0; i < 6; i++)
+      SampleDomains.add(domain, state, "edge", "n" + i, "n" + (i + 1) % 6);
+    SampleDomains.add(domain, state, "edge", "n0", "n3");
+    SampleDomains.add(domain, state, "edge", "n4", "n1");
+    SampleDomains.add(domain, state, "at", "n0");
+    SampleDomains.add(domain, state, "special", "n1");
+    SampleDomains.add(domain, state, "item", "n1");
+    SampleDomains.add(domain, state, "item", "n2");
+    return state;
+  }
+
+  /** To take down the atoms of a state and those the axioms prove in it,
+   *  in the order they are found, each once.
+  */
+  private List<Object> snapshot(State state)
+  {
+    final List<Object> retVal = new ArrayList<Object>();
+    for (String head : new String[] { "at", "edge", "adjacent", "hop2" })
+    {
+      final int arity = head.equals("at") ? 1 : 2;
+      final Term[] vars = new Term[arity];
+      for (int i = 0; i < arity; i++)
+        vars[i] = new TermVariable(i);
+      final Predicate p = new Predicate(domain.addConstant(head), arity, new TermTuple(vars));
+
+      final Set<String> atoms = new LinkedHashSet<String>();
+      final State.MyIterator it = state.iterator(p);
+      Term[] binding;
+      while ((binding = it.nextBinding()) != null)
+        atoms.add(head + Arrays.toString(binding));
+      retVal.addAll(atoms);
+    }
+    return retVal;
+  }
+}
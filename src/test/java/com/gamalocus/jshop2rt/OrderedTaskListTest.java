@@ -0,0 +1,132 @@
+package com.gamalocus.jshop2rt;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.TreeSet;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/** Tests that the tasks of ordered task lists are achieved in order, however
+ *  much the planner backtracks over them, on their own and inside unordered
+ *  task lists. The domain is described in the file <code>ordered</code>.
+ */
+public class OrderedTaskListTest
+{
+  private Domain domain;
+
+  private State state;
+
+  @Before
+  public void setUp() throws Exception
+  {
+    domain = SampleDomains.interpret("ordered");
+    state = new State(domain.getAxioms());
+    state.setTermFactory(domain.getTermFactory());
+  }
+
+  @Test
+  public void backtrackOverOrderedTasks()
+  {
+    free("a", "b", "c");
+    ok("b", "c");
+
+    final String before = atoms();
+    final List<String> plans = SampleDomains.plans(domain, state,
+        SampleDomains.task(domain, "move-two", false));
+    assertEquals(Arrays.asList(
+        "(!pick b)\n(!check b)\n(!put b)\n(!pick c)\n(!check c)\n(!put c)\n",
+        "(!pick c)\n(!check c)\n(!put c)\n(!pick b)\n(!check b)\n(!put b)\n"), plans);
+    assertEquals(before, atoms());
+  }
+
+  @Test
+  public void interleaveOrderedTasks()
+  {
+    free("a", "b");
+
+    final String before = atoms();
+    final List<String> plans = SampleDomains.plans(domain, state,
+        SampleDomains.task(domain, "move-both", false, constant("a"), constant("b")));
+    assertEquals(Arrays.asList(
+        "(!pick a)\n(!put a)\n(!pick b)\n(!put b)\n",
+        "(!pick a)\n(!pick b)\n(!put a)\n(!put b)\n",
+        "(!pick a)\n(!pick b)\n(!put b)\n(!put a)\n",
+        "(!pick b)\n(!pick a)\n(!put a)\n(!put b)\n",
+        "(!pick b)\n(!pick a)\n(!put b)\n(!put a)\n",
+        "(!pick b)\n(!put b)\n(!pick a)\n(!put a)\n"), plans);
+    assertEquals(before, atoms());
+  }
+
+  @Test
+  public void backtrackUntilTheOtherTasksAreDone()
+  {
+    free("a", "b");
+
+    //-- The first object can only be put once the second one is placed, so
+    //-- only the interleavings that place the second one first are plans.
+    final String before = atoms();
+    final List<String> plans = SampleDomains.plans(domain, state,
+        SampleDomains.task(domain, "move-after", false, constant("a"), constant("b")));
+    assertEquals(Arrays.asList(
+        "(!pick a)\n(!pick b)\n(!put b)\n(!wait a)\n(!put a)\n",
+        "(!pick b)\n(!pick a)\n(!put b)\n(!wait a)\n(!put a)\n",
+        "(!pick b)\n(!put b)\n(!pick a)\n(!wait a)\n(!put a)\n"), plans);
+    assertEquals(before, atoms());
+  }
+
+  @Test
+  public void backtrackOverInterleavings()
+  {
+    free("a", "b");
+
+    //-- The first object does not get through, whichever way the tasks are
+    //-- interleaved.
+    final String before = atoms();
+    final TaskList tasks = SampleDomains.task(domain, "move-checked", false, constant("a"), constant("b"));
+    assertTrue(SampleDomains.plans(domain, state, tasks).isEmpty());
+    assertEquals(before, atoms());
+
+    //-- Once it does, each of the ways is a plan.
+    ok("a");
+    final List<String> plans = SampleDomains.plans(domain, state,
+        SampleDomains.task(domain, "move-checked", false, constant("a"), constant("b")));
+    assertEquals(10, plans.size());
+    assertEquals(plans.size(), new HashSet<String>(plans).size());
+    for (String plan : plans)
+    {
+      assertTrue(plan, plan.indexOf("(!pick a)") < plan.indexOf("(!check a)"));
+      assertTrue(plan, plan.indexOf("(!check a)") < plan.indexOf("(!put a)"));
+      assertTrue(plan, plan.indexOf("(!pick b)") < plan.indexOf("(!put b)"));
+    }
+  }
+
+  private Term constant(String name)
+  {
+    return domain.getTermConstant(domain.addConstant(name));
+  }
+
+  private void free(String... objects)
+  {
+    for (String x : objects)
+      SampleDomains.add(domain, state, "free", x);
+  }
+
+  private void ok(String... objects)
+  {
+    for (String x : objects)
+      SampleDomains.add(domain, state, "ok", x);
+  }
+
+  /** To take down the atoms in the state of the world, in no particular
+   *  order.
+  */
+  private String atoms()
+  {
+    return new TreeSet<String>(state.getState(domain)).toString();
+  }
+}
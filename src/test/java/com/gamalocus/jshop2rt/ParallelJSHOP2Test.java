@@ -0,0 +1,127 @@
+package com.gamalocus.jshop2rt;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+/** Tests that searching with several threads finds the plans {@link JSHOP2}
+ *  finds: in depth-first order, the first of them, and otherwise one of them,
+ *  however many threads there are and however finely the search space is
+ *  split. The domains are described in the files <code>ordered</code> and
+ *  <code>derived</code>.
+ */
+public class ParallelJSHOP2Test
+{
+  /** The numbers of threads the search is run with.
+  */
+  private static final int[] THREADS = { 1, 2, 4, 8 };
+
+  /** The maximum numbers of times the search space is split on the way to a
+   *  part of it.
+  */
+  private static final int[] SPLIT_DEPTHS = { 2, Integer.MAX_VALUE };
+
+  /** How many times each search is run, since which thread searches which
+   *  part of the search space changes from one run to the next.
+  */
+  private static final int RUNS = 3;
+
+  @Test
+  public void orderedTasks() throws Exception
+  {
+    final Domain domain = SampleDomains.interpret("ordered");
+    final State state = new State(domain.getAxioms());
+    state.setTermFactory(domain.getTermFactory());
+    for (String x : new String[] { "a", "b", "c" })
+      SampleDomains.add(domain, state, "free", x);
+    SampleDomains.add(domain, state, "ok", "b");
+    SampleDomains.add(domain, state, "ok", "c");
+
+    //-- a is not ok, so it can not be moved with a check.
+    int found = 0;
+    found += compare(domain, state, "move-two");
+    for (String task : new String[] { "move-both", "move-after", "move-checked" })
+    {
+      found += compare(domain, state, task, constant(domain, "a"), constant(domain, "b"));
+      found += compare(domain, state, task, constant(domain, "b"), constant(domain, "c"));
+    }
+    assertTrue("The tasks have no plans to compare.", found > 0);
+  }
+
+  @Test
+  public void tour() throws Exception
+  {
+    final Domain domain = SampleDomains.interpret("derived");
+    final State state = new State(domain.getAxioms());
+    state.setTermFactory(domain.getTermFactory());
+    for (int i = 0; i < 6; i++)
+      SampleDomains.add(domain, state, "edge", "n" + i, "n" + (i + 1) % 6);
+    SampleDomains.add(domain, state, "edge", "n0", "n3");
+    SampleDomains.add(domain, state, "edge", "n4", "n1");
+    SampleDomains.add(domain, state, "at", "n0");
+
+    int found = 0;
+    for (int n = 1; n <= 4; n++)
+      found += compare(domain, state, "tour", domain.getTermFactory().number(n));
+    assertTrue("The tours have no plans to compare.", found > 0);
+  }
+
+  /** To compare the plans found for a task with and without threads.
+   *
+   *  @return
+   *          the number of plans <code>JSHOP2</code> finds for the task.
+  */
+  private static int compare(Domain domain, State state, String task, Term... args)
+    throws InterruptedException
+  {
+    final List<String> expected = SampleDomains.plans(domain, state,
+        SampleDomains.task(domain, task, false, args));
+    final String first = expected.isEmpty() ? null : expected.get(0);
+
+    for (int threads : THREADS)
+    {
+      for (int maxSplitDepth : SPLIT_DEPTHS)
+      {
+        for (int run = 0; run < RUNS; run++)
+        {
+          final String label = task + " with " + threads + " threads, split " + maxSplitDepth
+              + " times";
+          assertEquals(label, first, search(domain, state, task, args, threads, maxSplitDepth,
+              ParallelJSHOP2.SearchOrder.DEPTH_FIRST));
+
+          final String any = search(domain, state, task, args, threads, maxSplitDepth,
+              ParallelJSHOP2.SearchOrder.FIRST_FOUND);
+          if (first == null)
+            assertEquals(label, null, any);
+          else
+            assertTrue(label + ": " + any, expected.contains(any));
+        }
+      }
+    }
+    return expected.size();
+  }
+
+  /** To search for a plan with threads.
+   *
+   *  @return
+   *          the plan, written down the way <code>SampleDomains</code> does,
+   *          or <code>null</code> if there is none.
+  */
+  private static String search(Domain domain, State state, String task, Term[] args, int threads,
+      int maxSplitDepth, ParallelJSHOP2.SearchOrder order) throws InterruptedException
+  {
+    final ParallelJSHOP2 planner = new ParallelJSHOP2(SampleDomains.task(domain, task, false, args),
+        1000, new DoubleCost(0), domain, state);
+    planner.setSearchOrder(order);
+    planner.setSplitting(threads, maxSplitDepth);
+    return SampleDomains.toString(domain, planner.findPlan());
+  }
+
+  private static Term constant(Domain domain, String name)
+  {
+    return domain.getTermConstant(domain.addConstant(name));
+  }
+}
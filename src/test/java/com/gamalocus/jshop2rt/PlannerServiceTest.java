@@ -0,0 +1,279 @@
+package com.gamalocus.jshop2rt;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/** Tests the order in which a planner service runs its requests, and how they
+ *  are given up on, cancelled and shut down. The planners look for plans that
+ *  do not exist, as described in the file <code>wander</code>, for as long
+ *  as the number of items they are given makes them. The service has one
+ *  thread, which is kept busy by a request whose callback waits until the
+ *  requests to be compared are all in line.
+ */
+public class PlannerServiceTest
+{
+  /** The longest a test waits for a request, in seconds.
+  */
+  private static final long TIMEOUT = 30;
+
+  private Domain domain;
+
+  private PlannerService service;
+
+  /** Counted down once the thread of the service is kept busy.
+  */
+  private CountDownLatch busy;
+
+  /** Counted down to let the thread of the service go on.
+  */
+  private CountDownLatch release;
+
+  /** The requests in the order they were done.
+  */
+  private final List<PlannerService.Request> done = new ArrayList<PlannerService.Request>();
+
+  /** Released once for each request in <code>done</code>, since a request is
+   *  done before its callback is called.
+  */
+  private final Semaphore recorded = new Semaphore(0);
+
+  private final PlannerService.Callback record = new PlannerService.Callback() {
+    public void planningDone(PlannerService.Request request)
+    {
+      synchronized (done)
+      {
+        done.add(request);
+      }
+      recorded.release();
+    }
+  };
+
+  @Before
+  public void setUp() throws Exception
+  {
+    domain = SampleDomains.interpret("wander");
+    service = new PlannerService(domain, 1, TimeUnit.MILLISECONDS.toNanos(1));
+  }
+
+  @After
+  public void tearDown()
+  {
+    service.shutdown();
+  }
+
+  @Test
+  public void higherPriorityFirst() throws Exception
+  {
+    hold();
+    final PlannerService.Request low = service.submit(wanderer(30), 0, -1, 10, record);
+    final PlannerService.Request high = service.submit(wanderer(30), 2, -1, 10, record);
+    final PlannerService.Request middle = service.submit(wanderer(30), 1, -1, 10, record);
+    release.countDown();
+
+    for (PlannerService.Request r : Arrays.asList(low, high, middle))
+    {
+      assertEquals(null, r.get(TIMEOUT, TimeUnit.SECONDS));
+      assertEquals(JSHOP2.StopReason.BUDGET_EXHAUSTED, r.getStopReason());
+    }
+    assertEquals(Arrays.asList(high, middle, low), done(3));
+  }
+
+  @Test
+  public void higherPriorityRunsToTheEnd() throws Exception
+  {
+    assertEquals(0, expansionsOfSecond(1, 0));
+  }
+
+  @Test
+  public void samePriorityShared() throws Exception
+  {
+    //-- Each request takes many slices, which are taken in turns, so the one
+    //-- put in line second has been run by the time the first one is done.
+    final long expansions = expansionsOfSecond(0, 0);
+    assertTrue(String.valueOf(expansions), expansions > 0);
+  }
+
+  @Test
+  public void givenUpAtTheDeadline() throws Exception
+  {
+    final long budget = TimeUnit.MILLISECONDS.toNanos(50);
+    final long start = System.nanoTime();
+    final PlannerService.Request r = service.submit(wanderer(200), 0, budget,
+        Long.MAX_VALUE, null);
+    assertEquals(null, r.get(TIMEOUT, TimeUnit.SECONDS));
+    assertTrue(System.nanoTime() - start >= budget);
+    assertEquals(JSHOP2.StopReason.BUDGET_EXHAUSTED, r.getStopReason());
+  }
+
+  @Test
+  public void largeBudgetsDoNotOverflow() throws Exception
+  {
+    //-- The planner has made some expansions already, so the expansion budget
+    //-- added to them does not fit in a long.
+    final JSHOP2 planner = wanderer(2);
+    assertEquals(JSHOP2.StopReason.BUDGET_EXHAUSTED, planner.runSlice(-1, 10, true));
+
+    final PlannerService.Request r = service.submit(planner, 0, Long.MAX_VALUE,
+        Long.MAX_VALUE - 1, null);
+    assertEquals(null, r.get(TIMEOUT, TimeUnit.SECONDS));
+    assertEquals(JSHOP2.StopReason.SEARCH_EXHAUSTED, r.getStopReason());
+  }
+
+  @Test
+  public void cancelWhileWaiting() throws Exception
+  {
+    hold();
+    final JSHOP2 planner = wanderer(2);
+    final PlannerService.Request r = service.submit(planner, 0, -1, Long.MAX_VALUE, null);
+    assertTrue(r.cancel(false));
+    release.countDown();
+    assertCancelled(r);
+
+    //-- The planner was never run, and is not left interrupted.
+    assertEquals(0, planner.getExpansions());
+    final PlannerService.Request again = service.submit(planner, 0, -1, Long.MAX_VALUE, null);
+    assertEquals(null, again.get(TIMEOUT, TimeUnit.SECONDS));
+    assertEquals(JSHOP2.StopReason.SEARCH_EXHAUSTED, again.getStopReason());
+  }
+
+  @Test
+  public void cancelWhileRunning() throws Exception
+  {
+    final JSHOP2 planner = wanderer(200);
+    final PlannerService.Request r = service.submit(planner, 0, -1, Long.MAX_VALUE, null);
+    Thread.sleep(20);
+    assertTrue(r.cancel(false));
+    assertCancelled(r);
+    assertFalse(r.cancel(false));
+
+    //-- The planner is not left interrupted either.
+    final PlannerService.Request again = service.submit(planner, 0, -1, 10, null);
+    assertEquals(null, again.get(TIMEOUT, TimeUnit.SECONDS));
+    assertEquals(JSHOP2.StopReason.BUDGET_EXHAUSTED, again.getStopReason());
+  }
+
+  @Test
+  public void shutdownCancelsWaitingRequests() throws Exception
+  {
+    hold();
+    final PlannerService.Request r = service.submit(wanderer(2), 0, -1, Long.MAX_VALUE, record);
+    service.shutdown();
+    assertCancelled(r);
+    assertEquals(Arrays.asList(r), done(1));
+
+    final PlannerService.Request late = service.submit(wanderer(2), 0, -1, Long.MAX_VALUE, null);
+    assertCancelled(late);
+    assertEquals(0, late.getPlanner().getExpansions());
+  }
+
+  /** To put two requests that take many slices in line, and run them.
+   *
+   *  @return
+   *          the number of search nodes the second request had expanded when
+   *          the first one was done.
+  */
+  private long expansionsOfSecond(int firstPriority, int secondPriority) throws Exception
+  {
+    final long[] expansions = new long[1];
+    final PlannerService.Request[] second = new PlannerService.Request[1];
+    hold();
+    final PlannerService.Request first = service.submit(wanderer(30), firstPriority, -1, 20000,
+        new PlannerService.Callback() {
+          public void planningDone(PlannerService.Request request)
+          {
+            //-- Called on the thread that runs the other request too.
+            expansions[0] = second[0].getPlanner().getExpansions();
+          }
+        });
+    second[0] = service.submit(wanderer(30), secondPriority, -1, 20000, null);
+    release.countDown();
+
+    for (PlannerService.Request r : Arrays.asList(first, second[0]))
+    {
+      assertEquals(null, r.get(TIMEOUT, TimeUnit.SECONDS));
+      assertEquals(JSHOP2.StopReason.BUDGET_EXHAUSTED, r.getStopReason());
+      assertEquals(20000, r.getPlanner().getExpansions());
+    }
+    return expansions[0];
+  }
+
+  /** To make a planner that goes through every way of picking three of a
+   *  number of items.
+  */
+  private JSHOP2 wanderer(int items)
+  {
+    final State state = new State(domain.getAxioms());
+    state.setTermFactory(domain.getTermFactory());
+    for (int i = 0; i < items; i++)
+      SampleDomains.add(domain, state, "item", "i" + i);
+    return new JSHOP2(SampleDomains.task(domain, "wander", false), 100, new DoubleCost(0),
+        domain, state);
+  }
+
+  /** To keep the thread of the service busy until <code>release</code> is
+   *  counted down, or the service is shut down.
+  */
+  private void hold() throws InterruptedException
+  {
+    busy = new CountDownLatch(1);
+    release = new CountDownLatch(1);
+    service.submit(wanderer(2), Integer.MAX_VALUE, -1, 1, new PlannerService.Callback() {
+      public void planningDone(PlannerService.Request request)
+      {
+        busy.countDown();
+        try
+        {
+          release.await();
+        }
+        catch (InterruptedException e)
+        {
+          Thread.currentThread().interrupt();
+        }
+      }
+    });
+    assertTrue(busy.await(TIMEOUT, TimeUnit.SECONDS));
+  }
+
+  /** To wait for the callbacks of a number of requests to be called.
+   *
+   *  @return
+   *          the requests in the order they were done.
+  */
+  private List<PlannerService.Request> done(int count) throws InterruptedException
+  {
+    assertTrue(recorded.tryAcquire(count, TIMEOUT, TimeUnit.SECONDS));
+    synchronized (done)
+    {
+      return new ArrayList<PlannerService.Request>(done);
+    }
+  }
+
+  private static void assertCancelled(PlannerService.Request r) throws Exception
+  {
+    try
+    {
+      r.get(TIMEOUT, TimeUnit.SECONDS);
+      fail("The request was not cancelled.");
+    }
+    catch (CancellationException e)
+    {
+    }
+    assertTrue(r.isDone());
+    assertTrue(r.isCancelled());
+    assertEquals(null, r.getStopReason());
+  }
+}
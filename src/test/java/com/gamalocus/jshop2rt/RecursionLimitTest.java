@@ -0,0 +1,75 @@
+package com.gamalocus.jshop2rt;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/** Tests that a search that exceeds the recursion limit leaves the state of
+ *  the world the way it was when the search started, whether or not its
+ *  changes are recorded. The domain is described in the file
+ *  <code>climb</code>.
+ */
+public class RecursionLimitTest
+{
+  private Domain domain;
+
+  @Before
+  public void setUp() throws Exception
+  {
+    domain = SampleDomains.interpret("climb");
+  }
+
+  @Test
+  public void stateRestoredWithoutJournal()
+  {
+    climb(ChangeJournal.Mode.NONE);
+  }
+
+  @Test
+  public void stateRestoredWithJournal()
+  {
+    climb(ChangeJournal.Mode.COMPACT);
+  }
+
+  private void climb(ChangeJournal.Mode mode)
+  {
+    final State state = new State(domain.getAxioms());
+    state.setTermFactory(domain.getTermFactory());
+    state.setJournalMode(mode);
+    for (int i = 0; i < 3; i++)
+      number(state, "top", i);
+    number(state, "count", 0);
+    number(state, "seen", -1);
+    final List<Object> before = snapshot(state);
+
+    final JSHOP2 planner = new JSHOP2(SampleDomains.task(domain, "climb", false), 50,
+        new DoubleCost(0), domain, state);
+    assertEquals(JSHOP2.StopReason.RECURSION_LIMIT, planner.run(Integer.MAX_VALUE));
+    assertEquals(before, snapshot(state));
+
+    //-- The search is over.
+    assertEquals(JSHOP2.StopReason.SEARCH_EXHAUSTED, planner.run(Integer.MAX_VALUE));
+    assertEquals(0, planner.getPlans().size());
+    assertEquals(before, snapshot(state));
+  }
+
+  private void number(State state, String head, int n)
+  {
+    state.add(new Predicate(domain.addConstant(head), 0,
+        domain.getTermFactory().tuple(domain.getTermFactory().number(n))));
+  }
+
+  /** To take down the atoms of the state, in order.
+  */
+  private List<Object> snapshot(State state)
+  {
+    final List<Object> retVal = new ArrayList<Object>();
+    for (String head : new String[] { "count", "seen", "top" })
+      retVal.add(new ArrayList<Term>(state.getArguments(domain.addConstant(head))));
+    return retVal;
+  }
+}
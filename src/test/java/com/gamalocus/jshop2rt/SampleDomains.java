@@ -0,0 +1,93 @@
+package com.gamalocus.jshop2rt;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/** This class makes the domains described in the files next to it on the
+ *  class path, and finds the plans for them, for the tests.
+ */
+final class SampleDomains
+{
+  private SampleDomains()
+  {
+  }
+
+  /** To make a domain from its description, without compiling it.
+   *
+   *  @param name
+   *          the name of the file the domain is described in.
+  */
+  static Domain interpret(String name) throws Exception
+  {
+    final File file = new File(SampleDomains.class.getResource(name).toURI());
+    final InternalDomain parsed = new InternalDomain(file, null,
+        SampleDomains.class.getPackage().getName());
+    parsed.setGenerateCode(false);
+    parsed.getParser().domain();
+    return new InterpretedDomain(parsed, SampleDomains.class.getClassLoader());
+  }
+
+  /** To make the task list that consists of a single task.
+   *
+   *  @param primitive
+   *          whether or not the task is primitive.
+  */
+  static TaskList task(Domain domain, String name, boolean primitive, Term... args)
+  {
+    final int head = primitive ? domain.getPrimitiveTaskIndex(name) : domain.getCompoundTaskIndex(name);
+    return new TaskList(new TaskAtom(new Predicate(head, 0, domain.getTermFactory().tuple(args)),
+        false, primitive));
+  }
+
+  /** To add an atom to a state of the world.
+  */
+  static void add(Domain domain, State state, String head, String... args)
+  {
+    final Term[] terms = new Term[args.length];
+    for (int i = 0; i < args.length; i++)
+      terms[i] = domain.getTermConstant(domain.addConstant(args[i]));
+    state.add(new Predicate(domain.addConstant(head), 0, domain.getTermFactory().tuple(terms)));
+  }
+
+  /** To find all the plans for a task list.
+   *
+   *  @return
+   *          the plans, in the order they are found, each as the operator
+   *          instances it consists of, one per line, without the indices of
+   *          the constants.
+  */
+  static List<String> plans(Domain domain, State state, TaskList tasks)
+  {
+    final JSHOP2 planner = new JSHOP2(tasks, 1000, new DoubleCost(0), domain, state);
+    JSHOP2.StopReason reason;
+    while ((reason = planner.run(Integer.MAX_VALUE)) != JSHOP2.StopReason.SEARCH_EXHAUSTED)
+    {
+      if (reason == JSHOP2.StopReason.RECURSION_LIMIT)
+        throw new IllegalStateException("Recursion limit exceeded.");
+    }
+
+    final List<String> retVal = new ArrayList<String>();
+    for (Plan plan : planner.getPlans())
+      retVal.add(toString(domain, plan));
+    return retVal;
+  }
+
+  /** To write a plan down the way <code>plans</code> does.
+   *
+   *  @return
+   *          the operator instances the plan consists of, one per line,
+   *          without the indices of the constants, or <code>null</code> if
+   *          there is no plan.
+  */
+  static String toString(Domain domain, Plan plan)
+  {
+    if (plan == null)
+      return null;
+
+    final StringBuilder buf = new StringBuilder();
+    for (Predicate op : plan.toArray())
+      buf.append(op.toString(domain, Predicate.Namespace.PRIMITIVE_TASK_ATOM)).append('\n');
+    return buf.toString().replaceAll("#[0-9]+", "");
+  }
+}
@@ -0,0 +1,172 @@
+package com.gamalocus.jshop2rt;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/** Tests that branch and bound finds the cheapest plan there is, and that
+ *  iterative deepening finds the shorter plans first, each of them once. The
+ *  domain is described in the file <code>route</code>. The first road out of
+ *  each place leads back the way it came, so depth-first search goes round in
+ *  circles without end.
+ */
+public class SearchStrategyTest
+{
+  /** The longest plans looked for where all of them must be.
+  */
+  private static final int MAX_LENGTH = 6;
+
+  private Domain domain;
+
+  private State state;
+
+  @Before
+  public void setUp() throws Exception
+  {
+    domain = SampleDomains.interpret("route");
+    state = new State(domain.getAxioms());
+    state.setTermFactory(domain.getTermFactory());
+
+    //-- The shortest route costs 20, the one through a 11, and the cheapest
+    //-- one 6.
+    SampleDomains.add(domain, state, "at", "s");
+    road("s", "a", 1);
+    road("s", "b", 2);
+    road("s", "t", 20);
+    road("a", "s", 1);
+    road("a", "t", 10);
+    road("b", "c", 2);
+    road("c", "t", 2);
+  }
+
+  @Test
+  public void branchAndBoundFindsTheCheapestPlan()
+  {
+    final JSHOP2 all = planner(JSHOP2.SearchStrategy.DEPTH_BOUNDED, MAX_LENGTH, 0);
+    exhaust(all);
+    Plan cheapest = null;
+    for (Plan plan : all.getPlans())
+    {
+      if (cheapest == null || cost(plan) < cost(cheapest))
+        cheapest = plan;
+    }
+    assertEquals(6.0, cost(cheapest), 0);
+
+    final JSHOP2 bounded = planner(JSHOP2.SearchStrategy.DEPTH_BOUNDED, MAX_LENGTH, 0);
+    bounded.setBranchAndBound(true, null);
+    exhaust(bounded);
+    assertEquals(SampleDomains.toString(domain, cheapest),
+        SampleDomains.toString(domain, bounded.getBestPlan()));
+    assertTrue(bounded.getExpansions() < all.getExpansions());
+
+    //-- Each plan it finds is cheaper than the one before.
+    final List<Plan> plans = bounded.getPlans();
+    for (int i = 1; i < plans.size(); i++)
+      assertTrue(cost(plans.get(i)) < cost(plans.get(i - 1)));
+  }
+
+  @Test
+  public void iterativeDeepeningFindsTheShallowPlan()
+  {
+    final JSHOP2 deep = planner(JSHOP2.SearchStrategy.DEPTH_FIRST, 0, 0);
+    assertEquals(JSHOP2.StopReason.RECURSION_LIMIT, deep.run(Integer.MAX_VALUE));
+    assertEquals(0, deep.getPlansFound());
+
+    final JSHOP2 deepening = planner(JSHOP2.SearchStrategy.ITERATIVE_DEEPENING_LENGTH, 1, 1);
+    assertEquals(JSHOP2.StopReason.PLAN_FOUND, deepening.run(Integer.MAX_VALUE));
+    assertEquals("(!drive s t)\n", SampleDomains.toString(domain, deepening.getPlans().getLast()));
+  }
+
+  @Test
+  public void iterativeDeepeningOnCostFindsTheCheapestPlanFirst()
+  {
+    final JSHOP2 deepening = planner(JSHOP2.SearchStrategy.ITERATIVE_DEEPENING_COST, 0, 0);
+    assertEquals(JSHOP2.StopReason.PLAN_FOUND, deepening.run(Integer.MAX_VALUE));
+    assertEquals("(!drive s b)\n(!drive b c)\n(!drive c t)\n",
+        SampleDomains.toString(domain, deepening.getPlans().getLast()));
+  }
+
+  @Test
+  public void iterativeDeepeningFindsEachPlanOnce()
+  {
+    final JSHOP2 bounded = planner(JSHOP2.SearchStrategy.DEPTH_BOUNDED, MAX_LENGTH, 0);
+    exhaust(bounded);
+    final Set<String> expected = new HashSet<String>(toStrings(bounded.getPlans()));
+    assertEquals(bounded.getPlans().size(), expected.size());
+
+    //-- The search never ends, so it is stopped once all the plans up to the
+    //-- length have been found, along with a few longer ones.
+    final JSHOP2 deepening = planner(JSHOP2.SearchStrategy.ITERATIVE_DEEPENING_LENGTH, 1, 1);
+    while (deepening.getSearchBound() <= MAX_LENGTH)
+      assertEquals(JSHOP2.StopReason.PLAN_FOUND, deepening.run(Integer.MAX_VALUE));
+
+    final List<String> plans = toStrings(deepening.getPlans());
+    assertEquals(plans.size(), new HashSet<String>(plans).size());
+    final Set<String> shortPlans = new HashSet<String>();
+    for (int i = 0; i < plans.size(); i++)
+    {
+      if (length(plans.get(i)) <= MAX_LENGTH)
+        shortPlans.add(plans.get(i));
+      if (i > 0)
+        assertTrue(plans.toString(), length(plans.get(i - 1)) <= length(plans.get(i)));
+    }
+    assertEquals(expected, shortPlans);
+  }
+
+  /** To make a planner that drives from s to t.
+  */
+  private JSHOP2 planner(JSHOP2.SearchStrategy strategy, double bound, double increment)
+  {
+    final JSHOP2 retVal = new JSHOP2(SampleDomains.task(domain, "go", false, constant("t")), 100,
+        new DoubleCost(0), domain, state);
+    retVal.setSearchStrategy(strategy, bound, increment);
+    return retVal;
+  }
+
+  /** To run a planner until it has searched all of the search space.
+  */
+  private static void exhaust(JSHOP2 planner)
+  {
+    JSHOP2.StopReason reason;
+    while ((reason = planner.run(Integer.MAX_VALUE)) != JSHOP2.StopReason.SEARCH_EXHAUSTED)
+      assertEquals(JSHOP2.StopReason.PLAN_FOUND, reason);
+  }
+
+  private List<String> toStrings(List<Plan> plans)
+  {
+    final List<String> retVal = new ArrayList<String>();
+    for (Plan plan : plans)
+      retVal.add(SampleDomains.toString(domain, plan));
+    return retVal;
+  }
+
+  /** To count the steps of a plan written down by <code>SampleDomains</code>.
+  */
+  private static int length(String plan)
+  {
+    return plan.split("\n").length;
+  }
+
+  private static double cost(Plan plan)
+  {
+    return ((NumericCost)plan.getCost()).getValue();
+  }
+
+  private void road(String from, String to, int cost)
+  {
+    state.add(new Predicate(domain.addConstant("road"), 0, domain.getTermFactory().tuple(
+        constant(from), constant(to), domain.getTermFactory().number(cost))));
+  }
+
+  private Term constant(String name)
+  {
+    return domain.getTermConstant(domain.addConstant(name));
+  }
+}
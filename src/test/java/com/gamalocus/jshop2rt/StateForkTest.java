@@ -0,0 +1,187 @@
+package com.gamalocus.jshop2rt;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Vector;
+
+import org.junit.Test;
+
+/** Tests that a {@link State} and its forks do not see each other's changes,
+ *  and that either of them can backtrack over changes made before the fork.
+ */
+public class StateForkTest
+{
+  /** The number of heads of the atoms. The last one has no atoms until a
+   *  test adds some.
+  */
+  private static final int HEADS = 3;
+
+  /** The constants the arguments of the atoms are made of.
+  */
+  private final Term[] constants = {
+      new TermConstant(0, "a"),
+      new TermConstant(1, "b"),
+      new TermConstant(2, "c"),
+      new TermConstant(3, "d") };
+
+  @Test
+  public void forkDoesNotSeeChanges()
+  {
+    final Random random = new Random(1);
+    final State state = randomState(random);
+    final State fork = state.fork();
+    final List<Object> original = snapshot(state);
+
+    //-- Change the state, including a head neither of them has atoms with.
+    changeAtoms(state, random);
+    assertTrue(state.add(new Predicate(HEADS - 1, 0, new TermTuple(constants[0]))));
+    assertEquals(original, snapshot(fork));
+
+    //-- Change the fork.
+    final List<Object> changed = snapshot(state);
+    changeAtoms(fork, random);
+    assertEquals(changed, snapshot(state));
+  }
+
+  @Test
+  public void lookupInForkDoesNotChangeState()
+  {
+    final Random random = new Random(2);
+    final State state = randomState(random);
+    final State fork = state.fork();
+
+    //-- Look up a head the state has no atoms with, then add one to it.
+    final Predicate p = new Predicate(HEADS - 1, 1, new TermTuple(new TermVariable(0)));
+    final State.MyIterator it = fork.iterator(p);
+    assertTrue(fork.add(new Predicate(HEADS - 1, 0, new TermTuple(constants[1]))));
+    assertTrue(it.nextBinding() != null);
+    assertTrue(state.getArguments(HEADS - 1).isEmpty());
+    assertFalse(state.iterator(p).nextBinding() != null);
+  }
+
+  @Test
+  public void undoBeforeFork()
+  {
+    final Random random = new Random(3);
+    final State state = randomState(random);
+    final List<Object> before = snapshot(state);
+
+    //-- Change the state, fork it, and change both of them some more.
+    final Vector<?>[] delAdd = changeAtoms(state, random);
+    final List<Object> after = snapshot(state);
+    final State fork = state.fork();
+    final Vector<?>[] stateDelAdd = changeAtoms(state, random);
+    final Vector<?>[] forkDelAdd = changeAtoms(fork, random);
+
+    //-- Each of them backtracks to before the fork, and then to before the
+    //-- first change, without the other one noticing.
+    final List<Object> forkChanged = snapshot(fork);
+    state.undo(stateDelAdd);
+    assertEquals(after, snapshot(state));
+    state.undo(delAdd);
+    assertEquals(before, snapshot(state));
+    assertEquals(forkChanged, snapshot(fork));
+
+    fork.undo(forkDelAdd);
+    assertEquals(after, snapshot(fork));
+    fork.undo(delAdd);
+    assertEquals(before, snapshot(fork));
+    assertEquals(before, snapshot(state));
+  }
+
+  @Test
+  public void forkOfFork()
+  {
+    final Random random = new Random(4);
+    final State state = randomState(random);
+    final State fork = state.fork();
+    changeAtoms(fork, random);
+    final List<Object> forkBefore = snapshot(fork);
+    final State forkOfFork = fork.fork();
+    final List<Object> before = snapshot(state);
+
+    final Vector<?>[] delAdd = changeAtoms(forkOfFork, random);
+    assertEquals(before, snapshot(state));
+    assertEquals(forkBefore, snapshot(fork));
+
+    forkOfFork.undo(delAdd);
+    assertEquals(forkBefore, snapshot(forkOfFork));
+  }
+
+  /** To make a state of the world with random atoms, but none with the last
+   *  head.
+  */
+  private State randomState(Random random)
+  {
+    final State state = new State(new Axiom[HEADS][0]);
+    for (int i = 0; i < 40; i++)
+      state.add(atom(random, HEADS - 1));
+    return state;
+  }
+
+  /** To make a random ground atom with one of the first heads.
+  */
+  private Predicate atom(Random random, int heads)
+  {
+    return new Predicate(random.nextInt(heads), 0, new TermTuple(
+        constants[random.nextInt(constants.length)], constants[random.nextInt(constants.length)]));
+  }
+
+  /** To delete atoms that are in the state, add random ones, and protect
+   *  random ones, in the order an operator does it.
+  */
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  private Vector<?>[] changeAtoms(State state, Random random)
+  {
+    final Vector<Object>[] delAdd = new Vector[4];
+    for (int i = 0; i < 4; i++)
+      delAdd[i] = new Vector<Object>();
+
+    for (int i = 0; i < 5; i++)
+    {
+      final int head = random.nextInt(HEADS);
+      final List<Term> args = new ArrayList<Term>(state.getArguments(head));
+      if (!args.isEmpty())
+      {
+        final NumberedPredicate np = state.delUndoable(
+            new Predicate(head, 0, args.get(random.nextInt(args.size()))));
+        if (np != null)
+          delAdd[0].add(np);
+      }
+    }
+
+    for (int i = 0; i < 5; i++)
+    {
+      final Predicate p = atom(random, HEADS);
+      if (state.add(p))
+        delAdd[1].add(p);
+    }
+
+    final Predicate p = atom(random, HEADS);
+    if (state.addProtection(p))
+      delAdd[3].add(p);
+
+    return delAdd;
+  }
+
+  /** To take down the atoms of a state, in order, and which of the atoms
+   *  that may be made are protected.
+  */
+  private List<Object> snapshot(State state)
+  {
+    final List<Object> retVal = new ArrayList<Object>();
+    for (int head = 0; head < HEADS; head++)
+      retVal.add(new ArrayList<Term>(state.getArguments(head)));
+
+    for (int head = 0; head < HEADS; head++)
+      for (Term x : constants)
+        for (Term y : constants)
+          retVal.add(state.isProtected(new Predicate(head, 0, new TermTuple(x, y))));
+    return retVal;
+  }
+}
@@ -0,0 +1,191 @@
+package com.gamalocus.jshop2rt;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.Vector;
+
+import org.junit.Test;
+
+/** Tests that looking the atoms up through the argument index of a
+ *  {@link State} finds the same satisfiers, in the same order, as scanning
+ *  all the atoms with the same head.
+ */
+public class StateIndexTest
+{
+  /** The head of the atoms.
+  */
+  private static final int HEAD = 0;
+
+  /** The number of arguments of the atoms.
+  */
+  private static final int ARITY = 3;
+
+  /** The terms the arguments of the atoms are made of.
+  */
+  private final Term[] terms = {
+      new TermConstant(0, "a"),
+      new TermConstant(1, "b"),
+      new TermConstant(2, "c"),
+      new TermConstant(3, "d"),
+      new TermConstant(4, "e"),
+      new TermNumber(1),
+      new TermNumber(2.5),
+      new TermList(new TermConstant(0, "a"), TermList.NIL),
+      new TermTuple(new TermConstant(1, "b"), new TermConstant(2, "c")) };
+
+  @Test
+  public void lookupMatchesScan()
+  {
+    final Random random = new Random(1);
+    final State state = new State(new Axiom[1][0]);
+    for (int i = 0; i < 300; i++)
+      state.add(atom(random));
+
+    final int found = compareQueries(state, random);
+    assertTrue("The queries find nothing to compare.", found > 0);
+  }
+
+  @Test
+  public void lookupMatchesScanAfterChanges()
+  {
+    final Random random = new Random(2);
+    final State state = new State(new Axiom[1][0]);
+    for (int i = 0; i < 200; i++)
+      state.add(atom(random));
+
+    //-- Build the index before the atoms are changed.
+    compareQueries(state, random);
+
+    final Vector<?>[] delAdd = changeAtoms(state, random);
+    compareQueries(state, random);
+
+    state.undo(delAdd);
+    compareQueries(state, random);
+  }
+
+  @Test
+  public void lookupMatchesScanInFork()
+  {
+    final Random random = new Random(3);
+    final State state = new State(new Axiom[1][0]);
+    for (int i = 0; i < 200; i++)
+      state.add(atom(random));
+    compareQueries(state, random);
+
+    final State fork = state.fork();
+    changeAtoms(fork, random);
+    compareQueries(fork, random);
+    compareQueries(state, random);
+  }
+
+  @Test
+  public void absentTermsDoNotGrowTheIndex()
+  {
+    final Random random = new Random(4);
+    final State state = new State(new Axiom[1][0]);
+    for (int i = 0; i < 200; i++)
+      state.add(atom(random));
+    compareQueries(state, random);
+    final int buckets = state.buckets(HEAD, 0);
+
+    for (int i = 0; i < 100; i++)
+      assertTrue(satisfiers(state, startingWith(new TermConstant(terms.length + i, "x" + i))).isEmpty());
+    assertEquals(buckets, state.buckets(HEAD, 0));
+
+    //-- Atoms with such a term are found once they are added.
+    final Term absent = new TermConstant(terms.length, "x0");
+    state.add(new Predicate(HEAD, 0, new TermTuple(absent, terms[0], terms[1])));
+    assertEquals(buckets + 1, state.buckets(HEAD, 0));
+    assertEquals(Arrays.asList(Arrays.asList(terms[0], terms[1])),
+        satisfiers(state, startingWith(absent)));
+  }
+
+  /** To make a query for the atoms with a given first argument.
+  */
+  private static Predicate startingWith(Term t)
+  {
+    return new Predicate(HEAD, 2, new TermTuple(t, new TermVariable(0), new TermVariable(1)));
+  }
+
+  /** To make a random ground atom.
+  */
+  private Predicate atom(Random random)
+  {
+    final Term[] args = new Term[ARITY];
+    for (int i = 0; i < ARITY; i++)
+      args[i] = terms[random.nextInt(terms.length)];
+    return new Predicate(HEAD, 0, new TermTuple(args));
+  }
+
+  /** To delete and then add random atoms, recording the changes the way an
+   *  operator does, so that they can be undone.
+  */
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  private Vector<?>[] changeAtoms(State state, Random random)
+  {
+    final Vector<Object>[] delAdd = new Vector[4];
+    for (int i = 0; i < 4; i++)
+      delAdd[i] = new Vector<Object>();
+
+    for (int i = 0; i < 50; i++)
+    {
+      final NumberedPredicate np = state.delUndoable(atom(random));
+      if (np != null)
+        delAdd[0].add(np);
+    }
+    for (int i = 0; i < 50; i++)
+    {
+      final Predicate p = atom(random);
+      if (state.add(p))
+        delAdd[1].add(p);
+    }
+
+    return delAdd;
+  }
+
+  /** To compare the satisfiers of random queries found with and without the
+   *  argument index.
+   *
+   *  @return
+   *          the number of satisfiers found.
+  */
+  private int compareQueries(State state, Random random)
+  {
+    int found = 0;
+    for (int i = 0; i < 200; i++)
+    {
+      //-- Each argument is either ground or a variable of its own.
+      final Term[] args = new Term[ARITY];
+      int vars = 0;
+      for (int j = 0; j < ARITY; j++)
+        args[j] = random.nextInt(3) == 0 ? new TermVariable(vars++) : terms[random.nextInt(terms.length)];
+      final Predicate query = new Predicate(HEAD, vars, new TermTuple(args));
+
+      state.setArgumentIndexingEnabled(false);
+      final List<List<Term>> scanned = satisfiers(state, query);
+      state.setArgumentIndexingEnabled(true);
+      final List<List<Term>> indexed = satisfiers(state, query);
+
+      assertEquals(query.toString(), scanned, indexed);
+      found += indexed.size();
+    }
+    return found;
+  }
+
+  /** To find all the satisfiers of a query, in order.
+  */
+  private static List<List<Term>> satisfiers(State state, Predicate query)
+  {
+    final List<List<Term>> retVal = new ArrayList<List<Term>>();
+    final State.MyIterator it = state.iterator(query);
+    Term[] binding;
+    while ((binding = it.nextBinding()) != null)
+      retVal.add(Arrays.asList(binding.clone()));
+    return retVal;
+  }
+}
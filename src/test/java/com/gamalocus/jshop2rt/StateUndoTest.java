@@ -0,0 +1,187 @@
+package com.gamalocus.jshop2rt;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.Vector;
+
+import org.junit.Test;
+
+/** Tests that undoing the changes made to a {@link State} the way an operator
+ *  makes them restores the atoms exactly, in the order they were in, and the
+ *  protections.
+ */
+public class StateUndoTest
+{
+  /** The number of heads of the atoms.
+  */
+  private static final int HEADS = 3;
+
+  /** The constants the arguments of the atoms are made of.
+  */
+  private final Term[] constants = {
+      new TermConstant(0, "a"),
+      new TermConstant(1, "b"),
+      new TermConstant(2, "c"),
+      new TermConstant(3, "d"),
+      new TermConstant(4, "e"),
+      new TermConstant(5, "f") };
+
+  @Test
+  public void undoRestoresAtomsInOrder()
+  {
+    final Random random = new Random(1);
+    final State state = randomState(random);
+
+    //-- Apply a sequence of changes, as a plan does, then backtrack over all
+    //-- of them.
+    final List<List<Object>> before = new ArrayList<List<Object>>();
+    final List<Vector<?>[]> changes = new ArrayList<Vector<?>[]>();
+    for (int i = 0; i < 20; i++)
+    {
+      before.add(snapshot(state));
+      changes.add(changeAtoms(state, random));
+    }
+
+    for (int i = changes.size() - 1; i >= 0; i--)
+    {
+      state.undo(changes.get(i));
+      assertEquals("After undoing change " + i + ".", before.get(i), snapshot(state));
+    }
+  }
+
+  @Test
+  public void undoRestoresDeletedHead()
+  {
+    final Random random = new Random(2);
+    final State state = randomState(random);
+    final List<Object> before = snapshot(state);
+
+    //-- Delete all the atoms with a head, in a random order.
+    final Vector<?>[] delAdd = newDelAdd();
+    final List<Term> args = new ArrayList<Term>(state.getArguments(0));
+    Collections.shuffle(args, random);
+    for (Term t : args)
+      record(delAdd, 0, state.delUndoable(new Predicate(0, 0, t)));
+    assertTrue(state.getArguments(0).isEmpty());
+
+    //-- Then add some of them back, in another order.
+    Collections.shuffle(args, random);
+    for (Term t : args.subList(0, args.size() / 2))
+    {
+      final Predicate p = new Predicate(0, 0, t);
+      if (state.add(p))
+        record(delAdd, 1, p);
+    }
+
+    state.undo(delAdd);
+    assertEquals(before, snapshot(state));
+  }
+
+  /** To make a state of the world with random atoms.
+  */
+  private State randomState(Random random)
+  {
+    final State state = new State(new Axiom[HEADS][0]);
+    for (int i = 0; i < 60; i++)
+      state.add(atom(random));
+    return state;
+  }
+
+  /** To make a random ground atom.
+  */
+  private Predicate atom(Random random)
+  {
+    final Term[] args = new Term[1 + random.nextInt(2)];
+    for (int i = 0; i < args.length; i++)
+      args[i] = constants[random.nextInt(constants.length)];
+    return new Predicate(random.nextInt(HEADS), 0, new TermTuple(args));
+  }
+
+  /** To make an empty set of changes.
+  */
+  @SuppressWarnings("rawtypes")
+  private static Vector<?>[] newDelAdd()
+  {
+    final Vector<?>[] delAdd = new Vector[4];
+    for (int i = 0; i < 4; i++)
+      delAdd[i] = new Vector<Object>();
+    return delAdd;
+  }
+
+  /** To record a change in a given list of a set of changes.
+  */
+  @SuppressWarnings("unchecked")
+  private static void record(Vector<?>[] delAdd, int which, Object change)
+  {
+    if (change != null)
+      ((Vector<Object>)delAdd[which]).add(change);
+  }
+
+  /** To delete atoms that are in the state and add random ones, and to
+   *  protect and unprotect random atoms, in the order an operator does it.
+  */
+  private Vector<?>[] changeAtoms(State state, Random random)
+  {
+    final Vector<?>[] delAdd = newDelAdd();
+
+    for (int i = 0; i < 5; i++)
+    {
+      final int head = random.nextInt(HEADS);
+      final List<Term> args = new ArrayList<Term>(state.getArguments(head));
+      if (!args.isEmpty())
+      {
+        final Term t = args.get(random.nextInt(args.size()));
+        record(delAdd, 0, state.delUndoable(new Predicate(head, 0, t)));
+      }
+    }
+
+    for (int i = 0; i < 5; i++)
+    {
+      final Predicate p = atom(random);
+      if (state.add(p))
+        record(delAdd, 1, p);
+    }
+
+    for (int i = 0; i < 2; i++)
+    {
+      final Predicate p = atom(random);
+      if (state.isProtected(p) && state.delProtection(p))
+        record(delAdd, 2, p);
+    }
+
+    for (int i = 0; i < 2; i++)
+    {
+      final Predicate p = atom(random);
+      if (state.addProtection(p))
+        record(delAdd, 3, p);
+    }
+
+    return delAdd;
+  }
+
+  /** To take down the atoms of a state, in order, and which of the atoms
+   *  that may be made are protected.
+  */
+  private List<Object> snapshot(State state)
+  {
+    final List<Object> retVal = new ArrayList<Object>();
+    for (int head = 0; head < HEADS; head++)
+      retVal.add(new ArrayList<Term>(state.getArguments(head)));
+
+    for (int head = 0; head < HEADS; head++)
+    {
+      for (Term x : constants)
+      {
+        retVal.add(state.isProtected(new Predicate(head, 0, new TermTuple(x))));
+        for (Term y : constants)
+          retVal.add(state.isProtected(new Predicate(head, 0, new TermTuple(x, y))));
+      }
+    }
+    return retVal;
+  }
+}
@@ -0,0 +1,8 @@
+package com.gamalocus.jshop2rt;
+
+/** The domain described in the file <code>haul</code> next to this class,
+ *  which {@link InterpretedDomainTest} interprets and compiles by this name.
+ */
+abstract class haul extends Domain
+{
+}